@@ -0,0 +1,108 @@
+package cn.afternode.commons.benchmarks;
+
+import cn.afternode.commons.binary.WrappedByteBuffer;
+import cn.afternode.commons.bukkit.messaging.NBukkitByteBuf;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read/write throughput of WrappedByteBuffer and NBukkitByteBuf with a typical plugin message layout
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BufferBenchmark {
+    private static final UUID ID = new UUID(114514, 1919810);
+    private static final String NAME = "H3xadecimal";
+    private static final String WORLD = "world_nether";
+
+    private WrappedByteBuffer wrapped;
+    private WrappedByteBuffer direct;
+    private byte[] nettyPayload;
+
+    @Setup
+    public void setup() {
+        wrapped = WrappedByteBuffer.growable();
+        direct = WrappedByteBuffer.direct(256, WrappedByteBuffer.MAX_CAPACITY);
+        write(wrapped);
+        write(direct);
+
+        NBukkitByteBuf netty = new NBukkitByteBuf();
+        write(netty);
+        nettyPayload = netty.toArray();
+    }
+
+    private static void write(WrappedByteBuffer bb) {
+        bb.writeUUID(ID);
+        bb.writeUtf(NAME);
+        bb.writeUtf(WORLD);
+        bb.writeInt(20);
+        bb.writeLong(1919810L);
+        bb.writeVarInt(300);
+    }
+
+    private static void write(NBukkitByteBuf bb) {
+        bb.writeUUID(ID);
+        bb.writeString(NAME);
+        bb.writeString(WORLD);
+        bb.writeInt(20);
+        bb.writeLong(1919810L);
+        bb.writeVarInt(300);
+    }
+
+    @Benchmark
+    public int wrappedWrite() {
+        wrapped.clear();
+        write(wrapped);
+        return wrapped.writeOffset();
+    }
+
+    @Benchmark
+    public void wrappedRead(Blackhole bh) {
+        wrapped.resetReader();
+        read(wrapped, bh);
+    }
+
+    @Benchmark
+    public int directWrite() {
+        direct.clear();
+        write(direct);
+        return direct.writeOffset();
+    }
+
+    @Benchmark
+    public void directRead(Blackhole bh) {
+        direct.resetReader();
+        read(direct, bh);
+    }
+
+    @Benchmark
+    public byte[] nettyWrite() {
+        NBukkitByteBuf bb = new NBukkitByteBuf();
+        write(bb);
+        return bb.toArray();
+    }
+
+    @Benchmark
+    public void nettyRead(Blackhole bh) {
+        NBukkitByteBuf bb = new NBukkitByteBuf(nettyPayload);
+        bh.consume(bb.readUUID());
+        bh.consume(bb.readString());
+        bh.consume(bb.readString());
+        bh.consume(bb.readInt());
+        bh.consume(bb.readLong());
+        bh.consume(bb.readVarInt());
+    }
+
+    private static void read(WrappedByteBuffer bb, Blackhole bh) {
+        bh.consume(bb.readUUID());
+        bh.consume(bb.readUtf());
+        bh.consume(bb.readUtf());
+        bh.consume(bb.readInt());
+        bh.consume(bb.readLong());
+        bh.consume(bb.readVarInt());
+    }
+}
@@ -0,0 +1,50 @@
+package cn.afternode.commons.benchmarks;
+
+import cn.afternode.commons.bukkit.message.MessageBuilder;
+import cn.afternode.commons.localizations.ILocalizations;
+import cn.afternode.commons.localizations.SimpleLocalization;
+import net.kyori.adventure.text.TextComponent;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Localization lookups with placeholders and message building
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LocalizationBenchmark {
+    private ILocalizations localizations;
+    private Map<String, Object> placeholders;
+
+    @Setup
+    public void setup() {
+        localizations = new SimpleLocalization(Map.of(
+                "join", "%player% joined %server%, %online% players online",
+                "balance", "Balance of %s: %s"
+        ));
+        placeholders = Map.of("player", "H3xadecimal", "server", "lobby-1", "online", 128);
+    }
+
+    @Benchmark
+    public String getPlaceholders() {
+        return localizations.get("join", placeholders);
+    }
+
+    @Benchmark
+    public String getFormatted() {
+        return localizations.get("balance", "H3xadecimal", "1919810");
+    }
+
+    @Benchmark
+    public TextComponent build() {
+        return new MessageBuilder(localizations)
+                .text("[Lobby] ")
+                .localize("join", placeholders)
+                .line()
+                .localize("balance", "H3xadecimal", "1919810")
+                .build();
+    }
+}
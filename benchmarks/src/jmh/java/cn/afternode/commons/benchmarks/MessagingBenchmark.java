@@ -0,0 +1,47 @@
+package cn.afternode.commons.benchmarks;
+
+import cn.afternode.commons.bukkit.messaging.BukkitMessagingHelper;
+import cn.afternode.commons.bukkit.messaging.NBukkitByteBuf;
+import org.openjdk.jmh.annotations.*;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signing and validating plugin messages with BukkitMessagingHelper
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessagingBenchmark {
+    @Param({"64", "1024", "16384"})
+    public int size;
+
+    private BukkitMessagingHelper helper;
+    private NBukkitByteBuf body;
+    private byte[] combined;
+
+    @Setup
+    public void setup() throws NoSuchAlgorithmException, InvalidKeyException {
+        // Plugin is only used in channel registration
+        helper = new BukkitMessagingHelper(null);
+        helper.setKey("0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef");
+        // The same frame is validated repeatedly
+        helper.setReplayFilter(null);
+
+        body = new NBukkitByteBuf();
+        body.write(new byte[size]);
+        combined = helper.combineSign(body);
+    }
+
+    @Benchmark
+    public byte[] combineSign() throws NoSuchAlgorithmException, InvalidKeyException {
+        return helper.combineSign(body);
+    }
+
+    @Benchmark
+    public NBukkitByteBuf validateCombined() throws NoSuchAlgorithmException, InvalidKeyException {
+        return helper.validateCombined(new NBukkitByteBuf(combined));
+    }
+}
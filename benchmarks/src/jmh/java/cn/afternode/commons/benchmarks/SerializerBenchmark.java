@@ -0,0 +1,77 @@
+package cn.afternode.commons.benchmarks;
+
+import cn.afternode.commons.binary.BinarySerialize;
+import cn.afternode.commons.binary.BinarySerializer;
+import cn.afternode.commons.binary.WrappedByteBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BinarySerializer round trips of a player profile, in fixed-size and compact encoding
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializerBenchmark {
+    public record Position(String world, double x, double y, double z) {}
+
+    @BinarySerialize(version = 1)
+    public static class Profile {
+        UUID id;
+        String name;
+        int level;
+        long lastSeen;
+        boolean online;
+        Position position;
+        List<String> friends;
+        Map<String, Integer> stats;
+    }
+
+    @Param({"false", "true"})
+    public boolean compact;
+
+    private BinarySerializer serializer;
+    private Profile profile;
+    private WrappedByteBuffer out;
+    private WrappedByteBuffer serialized;
+
+    @Setup
+    public void setup() {
+        serializer = new BinarySerializer(compact);
+
+        profile = new Profile();
+        profile.id = new UUID(114514, 1919810);
+        profile.name = "H3xadecimal";
+        profile.level = 42;
+        profile.lastSeen = 1700000000000L;
+        profile.online = true;
+        profile.position = new Position("world", 128.5, 64, -32.25);
+        profile.friends = new ArrayList<>(List.of("Notch", "jeb_", "Dinnerbone"));
+        profile.stats = new HashMap<>(Map.of("kills", 12, "deaths", 3, "blocks", 4096));
+
+        out = WrappedByteBuffer.growable();
+        serialized = serializer.serialize(profile);
+    }
+
+    @Benchmark
+    public int serialize() {
+        out.clear();
+        serializer.serialize(profile, out);
+        return out.writeOffset();
+    }
+
+    @Benchmark
+    public Profile deserialize() {
+        serialized.resetReader();
+        return serializer.deserialize(Profile.class, serialized);
+    }
+
+    @Benchmark
+    public Profile roundTrip() {
+        out.clear();
+        serializer.serialize(profile, out);
+        return serializer.deserialize(Profile.class, out);
+    }
+}
@@ -5,9 +5,10 @@ import cn.afternode.commons.bukkit.messaging.NBukkitByteBuf
 import org.bukkit.entity.Player
 
 fun MessageChannelContext.send(player: Player, data: NBukkitByteBuf.() -> Unit) {
-    val buf = NBukkitByteBuf()
-    data(buf)
-    this.send(player, buf)
+    NBukkitByteBuf.pooled().use { buf ->
+        data(buf)
+        this.send(player, buf)
+    }
 }
 
 fun Player.sendPluginMessage(channel: MessageChannelContext, data: NBukkitByteBuf.() -> Unit) {
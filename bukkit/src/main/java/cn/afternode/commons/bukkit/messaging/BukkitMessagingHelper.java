@@ -1,23 +1,24 @@
 package cn.afternode.commons.bukkit.messaging;
 
+import cn.afternode.commons.messaging.MessagingHelper;
+import cn.afternode.commons.messaging.NByteBuf;
+import cn.afternode.commons.messaging.PacketRegistry;
+import cn.afternode.commons.messaging.RpcEndpoint;
 import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.messaging.Messenger;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-import java.nio.charset.StandardCharsets;
+
 import java.security.InvalidKeyException;
-import java.security.Key;
 import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
 
 /**
  * Messaging helper with signing support
+ * @see MessagingHelper
  */
-public class BukkitMessagingHelper {
+public class BukkitMessagingHelper extends MessagingHelper {
     private final Plugin plugin;
-    private SecretKeySpec key;
 
     /**
      * Primary constructor
@@ -34,82 +35,45 @@ public class BukkitMessagingHelper {
      * @return Channel context
      */
     public MessageChannelContext register(String channel, IMessageListener listener) {
-        MessageChannelContext context = new MessageChannelContext(channel, this, listener);
-        Messenger messenger = Bukkit.getMessenger();
-        messenger.registerOutgoingPluginChannel(plugin, channel);
-        messenger.registerIncomingPluginChannel(plugin, channel, context);
-        return context;
-    }
-
-    /**
-     * Check if signing is available
-     * @return Is signing available
-     */
-    public boolean signingAvailable() {
-        return key != null && !key.isDestroyed();
+        return register(channel, listener, null, null);
     }
 
     /**
-     * Set signing key (HmacSHA256)
-     * @param key HmacSHA256 key, the recommended size is 64 bytes
+     * Register an incoming and outgoing channel carrying typed packets
+     * <br>
+     * Incoming packets are dispatched to handlers registered in packets
+     * @param channel Channel name
+     * @param packets Packet registry
+     * @return Channel context
+     * @see MessageChannelContext#sendPacket(Player, Object)
      */
-    public void setKey(String key) {
-        this.key = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+    public MessageChannelContext register(String channel, PacketRegistry<Player> packets) {
+        return register(channel, null, packets, null);
     }
 
     /**
-     * Generate data sign
-     * @param data Data
-     * @return Sign
-     * @throws NoSuchAlgorithmException Mac.getInstance error
-     * @throws InvalidKeyException If the given key is inappropriate for initializing this MAC
-     * @throws IllegalStateException Signing not available
-     * @see #setKey(String)
-     * @see Mac#getInstance(String)
-     * @see Mac#init(Key)
+     * Register an incoming and outgoing channel for request/response calls
+     * <br>
+     * Both sides of the channel must register it as an RPC channel
+     * @param channel Channel name
+     * @param rpc RPC endpoint
+     * @return Channel context
+     * @see MessageChannelContext#request(Player, Object, Class, java.time.Duration)
      */
-    public byte[] sign(byte[] data) throws NoSuchAlgorithmException, InvalidKeyException {
-        if (!signingAvailable())
-            throw new IllegalStateException("Signing not available");
-
-        Mac mac = Mac.getInstance("HmacSHA256");
-        mac.init(key);
-        return mac.doFinal(data);
+    public MessageChannelContext register(String channel, RpcEndpoint<Player> rpc) {
+        return register(channel, null, null, rpc);
     }
 
-    /**
-     * Sign data and combine to a byte array
-     * @param buf Data
-     * @return Combined sign and data
-     * @throws NoSuchAlgorithmException Mac.getInstance error
-     * @throws InvalidKeyException If the given key is inappropriate for initializing this MAC
-     * @see #sign(byte[])
-     * @see #validateCombined(NBukkitByteBuf)
-     */
-    public byte[] combineSign(NBukkitByteBuf buf) throws NoSuchAlgorithmException, InvalidKeyException {
-        NBukkitByteBuf nBuf = new NBukkitByteBuf();
-
-        byte[] data = buf.toArray();
-        nBuf.writeBlock(sign(data));
-        nBuf.writeBlock(data);
-        return nBuf.toArray();
+    private MessageChannelContext register(String channel, IMessageListener listener, PacketRegistry<Player> packets, RpcEndpoint<Player> rpc) {
+        MessageChannelContext context = new MessageChannelContext(channel, this, listener, packets, rpc, this.createMetrics(channel));
+        Messenger messenger = Bukkit.getMessenger();
+        messenger.registerOutgoingPluginChannel(plugin, channel);
+        messenger.registerIncomingPluginChannel(plugin, channel, context);
+        return context;
     }
 
-    /**
-     * Validate a sign
-     * @param sign Sign
-     * @param data Data
-     * @return If sign is valid
-     * @throws NoSuchAlgorithmException Mac.getInstance error
-     * @throws InvalidKeyException If the given key is inappropriate for initializing this MAC
-     */
-    public boolean validate(byte[] sign, byte[] data) throws InvalidKeyException, NoSuchAlgorithmException {
-        if (!signingAvailable())
-            throw new IllegalStateException("Signing not available");
-
-        Mac mac = Mac.getInstance("HmacSHA256");
-        mac.init(key);
-        return Arrays.equals(sign, mac.doFinal(data));
+    void unregister(MessageChannelContext context) {
+        this.removeMetrics(context.getMetrics());
     }
 
     /**
@@ -118,15 +82,10 @@ public class BukkitMessagingHelper {
      * @return Data body, or null if sign is invalid
      * @throws NoSuchAlgorithmException Mac.getInstance error
      * @throws InvalidKeyException If the given key is inappropriate for initializing this MAC
-     * @see #combineSign(NBukkitByteBuf)
-     * @see #validate(byte[], byte[])
+     * @see MessagingHelper#validateCombined(NByteBuf)
      */
     public NBukkitByteBuf validateCombined(NBukkitByteBuf buf) throws NoSuchAlgorithmException, InvalidKeyException {
-        byte[] sign = buf.readBlock();
-        byte[] data = buf.readBlock();
-        if (!validate(sign, data))
-            return null;
-        return new NBukkitByteBuf(data);
+        return (NBukkitByteBuf) super.validateCombined(buf);
     }
 
     /**
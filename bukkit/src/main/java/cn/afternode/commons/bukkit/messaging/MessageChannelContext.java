@@ -1,15 +1,32 @@
 package cn.afternode.commons.bukkit.messaging;
 
+import cn.afternode.commons.messaging.ChannelMetrics;
+import cn.afternode.commons.messaging.ChunkAssembler;
+import cn.afternode.commons.messaging.ChunkStreamer;
+import cn.afternode.commons.messaging.DecodePipeline;
+import cn.afternode.commons.messaging.LoopbackTransport;
+import cn.afternode.commons.messaging.MessageBatcher;
+import cn.afternode.commons.messaging.MessageTransport;
+import cn.afternode.commons.messaging.NByteBuf;
+import cn.afternode.commons.messaging.PacketRegistry;
+import cn.afternode.commons.messaging.RpcEndpoint;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.messaging.Messenger;
 import org.bukkit.plugin.messaging.PluginMessageListener;
+import org.bukkit.scheduler.BukkitTask;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
 
 /**
  * Channel context and message listener
@@ -18,52 +35,408 @@ public class MessageChannelContext implements PluginMessageListener, Closeable {
     private final String channel;
     private final BukkitMessagingHelper helper;
     private final IMessageListener listener;
+    private final PacketRegistry<Player> packets;
+    private final RpcEndpoint<Player> rpc;
+    private final ChannelMetrics metrics;
+
+    private volatile MessageTransport<Player> transport;
+
+    private volatile MessageBatcher<Player> batcher = null;
+    private long flushDelay;
+
+    private volatile DecodePipeline pipeline = null;
+    private BukkitTask drainTask = null;
+
+    private volatile ChunkStreamer<Player> streamer = null;
+    private volatile ChunkAssembler<Player> assembler = null;
+    private BukkitTask streamTask = null;
 
     private boolean closed = false;
 
-    MessageChannelContext(String channel, BukkitMessagingHelper helper, IMessageListener listener) {
+    MessageChannelContext(String channel, BukkitMessagingHelper helper, IMessageListener listener, PacketRegistry<Player> packets, RpcEndpoint<Player> rpc, ChannelMetrics metrics) {
         this.channel = channel;
         this.helper = helper;
         this.listener = listener;
+        this.packets = packets;
+        this.rpc = rpc;
+        this.metrics = metrics;
+        this.setTransport(null);
     }
 
     @Override
     public void onPluginMessageReceived(@NotNull String channel, @NotNull Player player, @NotNull byte[] message) {
-        if (!this.channel.equals(channel))
-            return;
+        if (this.channel.equals(channel))
+            this.receive(player, message);
+    }
+
+    /**
+     * Handle a plugin message of this channel
+     * @param player Player
+     * @param message Plugin message
+     * @throws RuntimeException Error in validating, decoding or handling, with cause
+     * @see LoopbackTransport
+     */
+    public void receive(Player player, byte[] message) {
         if (closed)
             return;
+        metrics.recordReceived(message.length);
 
-        try {
-            NBukkitByteBuf buf = new NBukkitByteBuf(message);
-            if (helper.signingAvailable())
-                buf = helper.validateCombined(buf);
+        DecodePipeline pipeline = this.pipeline;
+        if (pipeline != null) {
+            pipeline.submit(() -> {
+                Runnable delivery = this.decode(player, message);
+                return () -> this.handle(delivery);
+            });
+            return;
+        }
 
-            listener.onMessage(channel, player, buf);
+        try {
+            this.handle(this.decode(player, message));
         } catch (Throwable t) {
-            throw new RuntimeException("(%s) Error handling plugin message from %s".formatted(channel, player.getName()));
+            metrics.recordError();
+            throw new RuntimeException("(%s) Error handling plugin message from %s".formatted(channel, player.getName()), t);
+        }
+    }
+
+    private void handle(Runnable delivery) {
+        long start = System.nanoTime();
+        try {
+            delivery.run();
+        } finally {
+            metrics.recordHandled(System.nanoTime() - start);
+        }
+    }
+
+    // Validate and decode message, listener or handlers are called by the returned delivery
+    private Runnable decode(Player player, byte[] message) throws NoSuchAlgorithmException, InvalidKeyException {
+        NBukkitByteBuf buf = NBukkitByteBuf.wrap(message);
+        if (helper.signingAvailable()) {
+            buf = helper.validateCombined(buf);
+            if (buf == null)
+                metrics.recordRejected();
+        }
+
+        NBukkitByteBuf body = buf;
+        if (packets != null) {
+            if (body == null)
+                return () -> {};
+            List<PacketRegistry.Decoded<Player>> decoded = new ArrayList<>(1);
+            if (batcher == null) {
+                this.decodePacket(player, body, decoded);
+            } else {
+                MessageBatcher.forEach(body, data -> this.decodePacket(player, data, decoded));
+            }
+            return () -> {
+                for (PacketRegistry.Decoded<Player> packet : decoded)
+                    packet.dispatch(player);
+            };
+        }
+
+        if (batcher == null || body == null)
+            return () -> this.deliver(player, body);
+        return () -> MessageBatcher.forEach(body, data -> this.deliver(player, data));
+    }
+
+    private void decodePacket(Player player, NBukkitByteBuf data, List<PacketRegistry.Decoded<Player>> decoded) {
+        ChunkAssembler<Player> assembler = this.assembler;
+        if (assembler != null && data != null) {
+            data = assembler.accept(player, data);
+            if (data == null)
+                return;
+        }
+        decoded.add(packets.decode(data));
+    }
+
+    private void deliver(Player player, NBukkitByteBuf data) {
+        ChunkAssembler<Player> assembler = this.assembler;
+        if (assembler != null && data != null) {
+            data = assembler.accept(player, data);
+            if (data == null)
+                return;
+        }
+        if (rpc == null) {
+            listener.onMessage(channel, player, data);
+        } else if (data != null) {
+            rpc.receive(player, data, this::write);
         }
     }
 
     /**
      * Send message to channel through specified player
+     * <br>
+     * With batching enabled, the message is copied and queued until next flush
      * @param player Player
      * @param buf Data
      * @throws NoSuchAlgorithmException Signing error
      * @throws InvalidKeyException Signing error
      * @throws IOException Using a closed channel
+     * @see #enableBatching(long, int)
      */
     public void send(Player player, NBukkitByteBuf buf) throws NoSuchAlgorithmException, InvalidKeyException, IOException {
         if (closed)
             throw new IOException("Using a closed channel");
 
+        this.write(player, buf);
+    }
+
+    private void write(Player player, NByteBuf buf) throws NoSuchAlgorithmException, InvalidKeyException {
+        if (streamer == null) {
+            this.writeFrame(player, buf);
+            return;
+        }
+        try (NByteBuf framed = ChunkStreamer.single(buf)) {
+            this.writeFrame(player, framed);
+        }
+    }
+
+    private void writeFrame(Player player, NByteBuf buf) throws NoSuchAlgorithmException, InvalidKeyException {
+        MessageBatcher<Player> batcher = this.batcher;
+        if (batcher == null) {
+            this.sendNow(player, buf);
+        } else if (batcher.add(player, buf)) {
+            Bukkit.getScheduler().runTaskLater(helper.getPlugin(), this::flush, flushDelay);
+        }
+    }
+
+    private void sendNow(Player player, NByteBuf buf) throws NoSuchAlgorithmException, InvalidKeyException {
         byte[] data;
         if (helper.signingAvailable()) {
             data = helper.combineSign(buf);
         } else {
             data = buf.toArray();
         }
-        player.sendPluginMessage(helper.getPlugin(), channel, data);
+        transport.send(player, data);
+        metrics.recordSent(data.length);
+    }
+
+    /**
+     * Replace output of this channel, such as with a {@link LoopbackTransport} in tests and load simulation
+     * @param transport Transport, or null for platform plugin messaging
+     */
+    public void setTransport(MessageTransport<Player> transport) {
+        if (transport == null)
+            transport = (player, data) -> player.sendPluginMessage(helper.getPlugin(), channel, data);
+        this.transport = transport;
+    }
+
+    /**
+     * Coalesce messages sent within flush delay into one plugin message per player
+     * <br>
+     * Batches are signed as a whole, and both sides of the channel must enable batching
+     * <br>
+     * A rejected batch is passed to raw listeners once as null, same as a rejected message without batching
+     * @param flushDelay Delay in ticks from the first queued message to flush, 1 for next tick
+     * @param maxSize Max batch size in bytes, larger batches are split
+     * @throws IllegalArgumentException flushDelay is less than 1
+     * @see MessageBatcher
+     */
+    public void enableBatching(long flushDelay, int maxSize) {
+        if (flushDelay < 1)
+            throw new IllegalArgumentException("Flush delay %s is less than 1 tick".formatted(flushDelay));
+        this.flush();
+        this.flushDelay = flushDelay;
+        this.batcher = new MessageBatcher<>(maxSize, this::sendNow);
+    }
+
+    /**
+     * Coalesce messages sent within a tick into one plugin message per player
+     * @see #enableBatching(long, int)
+     */
+    public void enableBatching() {
+        this.enableBatching(1, MessageBatcher.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Send queued batches immediately, no-op if batching is disabled
+     * @throws RuntimeException Error in signing or sending, with cause
+     */
+    public void flush() {
+        MessageBatcher<Player> batcher = this.batcher;
+        if (batcher == null)
+            return;
+        try {
+            batcher.flush();
+        } catch (Exception ex) {
+            throw new RuntimeException("(%s) Error flushing batched messages".formatted(channel), ex);
+        }
+    }
+
+    /**
+     * Copy, validate and decode incoming messages on async scheduler, and deliver them on main thread
+     * <br>
+     * Deliveries are drained every tick in order of arrival, at most maxPerTick in a tick
+     * @param capacity Max messages decoding or waiting for delivery
+     * @param maxPerTick Max deliveries in a tick
+     * @param policy Policy when capacity is reached
+     * @see DecodePipeline
+     */
+    public void enableDecodePipeline(int capacity, int maxPerTick, DecodePipeline.DropPolicy policy) {
+        Plugin plugin = helper.getPlugin();
+        DecodePipeline pipeline = new DecodePipeline(
+                task -> Bukkit.getScheduler().runTaskAsynchronously(plugin, task),
+                capacity,
+                maxPerTick,
+                policy,
+                t -> {
+                    metrics.recordError();
+                    plugin.getLogger().log(Level.WARNING, "(%s) Error handling plugin message".formatted(channel), t);
+                }
+        );
+        this.disableDecodePipeline();
+        this.drainTask = Bukkit.getScheduler().runTaskTimer(plugin, pipeline::drain, 1, 1);
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Handle incoming messages on main thread directly, messages still in pipeline are dropped
+     */
+    public void disableDecodePipeline() {
+        this.pipeline = null;
+        if (drainTask != null) {
+            drainTask.cancel();
+            drainTask = null;
+        }
+    }
+
+    /**
+     * Get decode pipeline of this channel
+     * @return Pipeline, or null if disabled
+     */
+    public DecodePipeline getDecodePipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Allow sending payloads larger than a plugin message with {@link #sendLarge(Player, NBukkitByteBuf)}
+     * <br>
+     * All messages get a frame header, so both sides of the channel must enable chunking
+     * @param chunkSize Max data size of a chunk
+     * @param chunksPerTick Max chunks sent by this channel in a tick
+     * @param assembler Reassembly of incoming payloads, with its memory limits and timeout
+     * @see ChunkStreamer
+     */
+    public void enableChunking(int chunkSize, int chunksPerTick, ChunkAssembler<Player> assembler) {
+        ChunkStreamer<Player> streamer = new ChunkStreamer<>(chunkSize, chunksPerTick, this::writeFrame);
+        this.disableChunking();
+        this.assembler = assembler;
+        this.streamTask = Bukkit.getScheduler().runTaskTimer(helper.getPlugin(), streamer::tick, 1, 1);
+        this.streamer = streamer;
+    }
+
+    /**
+     * Allow sending payloads larger than a plugin message with default chunk size and limits
+     * @see #enableChunking(int, int, ChunkAssembler)
+     */
+    public void enableChunking() {
+        this.enableChunking(ChunkStreamer.DEFAULT_CHUNK_SIZE, ChunkStreamer.DEFAULT_CHUNKS_PER_TICK, new ChunkAssembler<>());
+    }
+
+    /**
+     * Stop chunking, payloads still sending fail and incoming transfers are dropped
+     */
+    public void disableChunking() {
+        ChunkStreamer<Player> streamer = this.streamer;
+        this.streamer = null;
+        if (streamTask != null) {
+            streamTask.cancel();
+            streamTask = null;
+        }
+        if (streamer != null)
+            streamer.failAll(new IOException("Chunking of channel %s disabled".formatted(channel)));
+        if (assembler != null) {
+            assembler.clear();
+            assembler = null;
+        }
+    }
+
+    /**
+     * Send a payload of any size through specified player, split into chunks sent over next ticks
+     * @param player Player
+     * @param buf Data, copied before returning
+     * @return Future completed when the last chunk is sent, or exceptionally on signing, sending error or closed channel
+     * @throws IllegalStateException Chunking is not enabled
+     * @see #enableChunking(int, int, ChunkAssembler)
+     */
+    public CompletableFuture<Void> sendLarge(Player player, NBukkitByteBuf buf) {
+        ChunkStreamer<Player> streamer = this.streamer;
+        if (streamer == null)
+            throw new IllegalStateException("Channel %s has no chunking enabled".formatted(channel));
+        if (closed)
+            return CompletableFuture.failedFuture(new IOException("Using a closed channel"));
+        return streamer.submit(player, buf);
+    }
+
+    /**
+     * Send a typed packet to channel through specified player
+     * @param player Player
+     * @param packet Packet
+     * @throws NoSuchAlgorithmException Signing error
+     * @throws InvalidKeyException Signing error
+     * @throws IOException Using a closed channel
+     * @throws IllegalStateException Channel is not registered with a packet registry
+     * @see PacketRegistry#write(Object, NByteBuf)
+     */
+    public void sendPacket(Player player, Object packet) throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+        try (NBukkitByteBuf buf = this.encodePacket(packet)) {
+            this.send(player, buf);
+        }
+    }
+
+    private NBukkitByteBuf encodePacket(Object packet) {
+        if (packets == null)
+            throw new IllegalStateException("Channel %s has no packet registry".formatted(channel));
+        NBukkitByteBuf buf = NBukkitByteBuf.pooled();
+        try {
+            packets.write(packet, buf);
+        } catch (RuntimeException ex) {
+            buf.close();
+            throw ex;
+        }
+        return buf;
+    }
+
+    /**
+     * Send a request through specified player
+     * @param player Player
+     * @param request Request packet
+     * @param responseType Expected response type
+     * @param timeout Time to wait for response
+     * @return Future of response, completed exceptionally on timeout, remote error or closed channel
+     * @param <R> Response type
+     * @throws IllegalStateException Channel is not registered with an RPC endpoint
+     * @see RpcEndpoint#request(Object, Object, Class, Duration, cn.afternode.commons.messaging.MessageSink)
+     */
+    public <R> CompletableFuture<R> request(Player player, Object request, Class<R> responseType, Duration timeout) {
+        if (rpc == null)
+            throw new IllegalStateException("Channel %s has no RPC endpoint".formatted(channel));
+        if (closed)
+            return CompletableFuture.failedFuture(new IOException("Using a closed channel"));
+        return rpc.request(player, request, responseType, timeout, this::write);
+    }
+
+    /**
+     * Get packet registry of this channel
+     * @return Packet registry, or null if registered with a raw listener
+     */
+    public PacketRegistry<Player> getPackets() {
+        return packets;
+    }
+
+    /**
+     * Get RPC endpoint of this channel
+     * @return RPC endpoint, or null if not registered as an RPC channel
+     */
+    public RpcEndpoint<Player> getRpc() {
+        return rpc;
+    }
+
+    /**
+     * Get traffic metrics of this channel
+     * @return Metrics
+     * @see BukkitMessagingHelper#snapshotMetrics()
+     */
+    public ChannelMetrics getMetrics() {
+        return metrics;
     }
 
     @Override
@@ -71,9 +444,15 @@ public class MessageChannelContext implements PluginMessageListener, Closeable {
         if (closed)
             return;
 
+        this.disableDecodePipeline();
+        this.disableChunking();
+        this.flush();
+        if (rpc != null)
+            rpc.failAll(new IOException("Channel %s closed".formatted(channel)));
         Messenger m = Bukkit.getMessenger();
         m.unregisterIncomingPluginChannel(helper.getPlugin(), this.channel);
         m.unregisterOutgoingPluginChannel(helper.getPlugin());
+        helper.unregister(this);
         closed = true;
     }
 }
@@ -1,6 +1,10 @@
 package cn.afternode.commons.bukkit.messaging;
 
+import cn.afternode.commons.binary.compression.Compression;
+import cn.afternode.commons.messaging.NByteBuf;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
@@ -12,205 +16,98 @@ import org.bukkit.util.io.BukkitObjectOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.util.UUID;
 
 /**
- * Netty version of BukkitByteBuffer
+ * Netty version of BukkitByteBuffer, with Bukkit player and item stack helpers over {@link NByteBuf}
  * <br>
  * No need to shade netty, it's provided by server
  */
-public class NBukkitByteBuf {
-    private final ByteBuf src;
-
+public class NBukkitByteBuf extends NByteBuf {
     public NBukkitByteBuf(byte[] data) {
-        this.src = Unpooled.copiedBuffer(data);
+        super(data);
     }
 
     public NBukkitByteBuf() {
-        this.src = Unpooled.buffer();
-    }
-
-    // Bytes start
-
-    /**
-     * Read byte array
-     * @param dest Destination
-     */
-    public void read(byte[] dest) {
-        src.writeBytes(dest);
-    }
-
-    /**
-     * Write byte array
-     * @param data Data
-     */
-    public void write(byte[] data) {
-        src.writeBytes(data);
-    }
-
-    /**
-     * Read byte array with specified size
-     * @param size Size
-     * @return Result
-     */
-    public byte[] read(int size) {
-        byte[] data = new byte[size];
-        src.readBytes(data);
-        return data;
-    }
-
-    /**
-     * Read byte array in a block
-     * @return Result
-     */
-    public byte[] readBlock() {
-        return read(this.src.readShortLE());
+        super();
     }
 
     /**
-     * Write byte array in a block
+     * Wrap an existing netty ByteBuf, content is not copied
      * <br>
-     * @param data Block
+     * Ownership is taken, {@link #close()} will release the source
+     * @param src Source ByteBuf
      */
-    public void writeBlock(byte[] data) {
-        this.src.writeShortLE(data.length);
-        this.src.writeBytes(data);
+    public NBukkitByteBuf(ByteBuf src) {
+        super(src);
     }
 
-    /**
-     * Read byte array in a large block
-     * @return Result
-     */
-    public byte[] readBlockL() {
-        return this.read(this.src.readIntLE());
+    private NBukkitByteBuf(ByteBuf src, boolean owner) {
+        super(src, owner);
     }
 
     /**
-     * Write byte array in a large block
+     * Wrap inbound data without copying
      * @param data Data
+     * @return Fixed-size buffer backed by data
+     * @see NByteBuf#wrap(byte[])
      */
-    public void writeBlockL(byte[] data) {
-        this.src.writeIntLE(data.length);
-        this.src.writeBytes(data);
+    public static NBukkitByteBuf wrap(byte[] data) {
+        return new NBukkitByteBuf(Unpooled.wrappedBuffer(data));
     }
-    // Bytes end
-
-    // Short start
 
     /**
-     * Read short
-     * @return result
+     * Allocate a pooled heap buffer
+     * @return Buffer, must be closed after used
      */
-    public short readShort() {
-        return this.src.readShortLE();
+    public static NBukkitByteBuf pooled() {
+        return pooled(false);
     }
 
     /**
-     * Write short
-     * @param data data
+     * Allocate a buffer from netty's shared pooled allocator
+     * @param direct Use direct memory
+     * @return Buffer, must be closed after used
      */
-    public void writeShort(short data) {
-        this.src.writeShortLE(data);
+    public static NBukkitByteBuf pooled(boolean direct) {
+        return allocate(PooledByteBufAllocator.DEFAULT, direct);
     }
-    // Short end
-
-    // Integer start
 
     /**
-     * Read integer
-     * @return result
+     * Allocate a buffer from specified allocator
+     * @param allocator Allocator
+     * @param direct Use direct memory
+     * @return Buffer, must be closed after used
      */
-    public int readInt() {
-        return this.src.readIntLE();
+    public static NBukkitByteBuf allocate(ByteBufAllocator allocator, boolean direct) {
+        return new NBukkitByteBuf(direct ? allocator.directBuffer() : allocator.heapBuffer());
     }
 
-    /**
-     * Write integer
-     * @param data result
-     */
-    public void writeInt(int data) {
-        this.src.writeIntLE(data);
+    // Slice start
+    @Override
+    public NBukkitByteBuf readSlice(int size) {
+        return (NBukkitByteBuf) super.readSlice(size);
     }
-    // Integer end
 
-    // Long start
-
-    /**
-     * Read long integer
-     * @return result
-     */
-    public long readLong() {
-        return this.src.readLong();
+    @Override
+    public NBukkitByteBuf readBlockView() {
+        return (NBukkitByteBuf) super.readBlockView();
     }
 
-    /**
-     * Write long integer
-     * @param data data
-     */
-    public void writeLong(long data) {
-        this.src.writeLong(data);
+    @Override
+    public NBukkitByteBuf readBlockLView() {
+        return (NBukkitByteBuf) super.readBlockLView();
     }
-    // Long end
-
-    // String start
 
-    /**
-     * Read UTF-8 String
-     * @return result
-     */
-    public String readString() {
-        return new String(this.readBlock(), StandardCharsets.UTF_8);
-    }
-
-    /**
-     * Write UTF-8 string
-     * @param data data
-     */
-    public void writeString(String data) {
-        this.writeBlock(data.getBytes(StandardCharsets.UTF_8));
-    }
-    // String end
-
-    // Enum start
-    /**
-     * Write enumeration object (1 short integer)
-     * @param e object
-     */
-    public void writeEnum(Enum<?> e) {
-        this.src.writeShortLE(e.ordinal());
+    @Override
+    public NBukkitByteBuf slice() {
+        return (NBukkitByteBuf) super.slice();
     }
 
-    /**
-     * Read enumeration object (1 short integer)
-     * @param clazz Type
-     * @return result
-     * @param <T> Type
-     */
-    public <T extends Enum<?>> T readEnum(Class<T> clazz) {
-        return clazz.getEnumConstants()[this.readShort()];
-    }
-    // Enum end
-
-    // UUID start
-
-    /**
-     * Read UUID (2 long integers)
-     * @return result
-     */
-    public UUID readUUID() {
-        return new UUID(this.readLong(), this.readLong());
+    @Override
+    protected NBukkitByteBuf view(ByteBuf src) {
+        return new NBukkitByteBuf(src, false);
     }
-
-    /**
-     * Write UUID (2 long integers)
-     * @param uuid object
-     */
-    public void writeUUID(UUID uuid) {
-        this.writeLong(uuid.getMostSignificantBits());
-        this.writeLong(uuid.getLeastSignificantBits());
-    }
-    // UUID end
+    // Slice end
 
     // Players start
     /**
@@ -264,23 +161,37 @@ public class NBukkitByteBuf {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         BukkitObjectOutputStream boos = new BukkitObjectOutputStream(baos);
         boos.writeObject(item);
+        boos.flush();
         this.writeBlock(baos.toByteArray());
     }
-    // Items end
 
     /**
-     * Access to source netty ByteBuf directly
-     * @return source
+     * Read item stack written by {@link #writeItemStack(ItemStack, Compression)}
+     * @param compression Compression stage
+     * @return result
+     * @throws IOException ObjectInputStream error
+     * @throws ClassNotFoundException ObjectInputStream error
      */
-    public ByteBuf direct() {
-        return src;
+    public ItemStack readItemStack(Compression compression) throws IOException, ClassNotFoundException {
+        ByteArrayInputStream bais = new ByteArrayInputStream(readCompressedBlock(compression));
+        BukkitObjectInputStream in = new BukkitObjectInputStream(bais);
+        return (ItemStack) in.readObject();
     }
 
     /**
-     * Convert to byte array
-     * @return result
+     * Write item stack with BukkitObjectOutputStream, compressed if larger than threshold
+     * <br>
+     * Serialized item stacks are highly redundant, so this usually saves most of the size
+     * @param item item
+     * @param compression Compression stage
+     * @throws IOException ObjectOutputStream error
      */
-    public byte[] toArray() {
-        return src.array();
+    public void writeItemStack(ItemStack item, Compression compression) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BukkitObjectOutputStream boos = new BukkitObjectOutputStream(baos);
+        boos.writeObject(item);
+        boos.flush();
+        this.writeCompressedBlock(baos.toByteArray(), compression);
     }
+    // Items end
 }
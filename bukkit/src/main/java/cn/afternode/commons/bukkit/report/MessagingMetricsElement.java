@@ -0,0 +1,28 @@
+package cn.afternode.commons.bukkit.report;
+
+import cn.afternode.commons.messaging.ChannelMetrics;
+import cn.afternode.commons.messaging.MessagingHelper;
+
+/**
+ * Traffic metrics of all channels registered in a messaging helper
+ */
+public class MessagingMetricsElement implements IPluginReportElement {
+    private final MessagingHelper helper;
+
+    public MessagingMetricsElement(MessagingHelper helper) {
+        this.helper = helper;
+    }
+
+    @Override
+    public String title() {
+        return "Messaging Metrics";
+    }
+
+    @Override
+    public String build() {
+        StringBuilder sb = new StringBuilder();
+        for (ChannelMetrics.Snapshot snapshot : helper.snapshotMetrics())
+            sb.append(" - ").append(snapshot).append("\n");
+        return sb.toString();
+    }
+}
@@ -1,5 +1,6 @@
 package cn.afternode.commons.bukkit.report;
 
+import cn.afternode.commons.messaging.MessagingHelper;
 import org.bukkit.Bukkit;
 import org.bukkit.plugin.Plugin;
 
@@ -68,6 +69,16 @@ public class PluginReport {
         return this.appendElement(new PluginListElement());
     }
 
+    /**
+     * Append MessagingMetricsElement
+     * @param helper Messaging helper
+     * @return This builder
+     * @see MessagingMetricsElement
+     */
+    public PluginReport withMessagingMetrics(MessagingHelper helper) {
+        return this.appendElement(new MessagingMetricsElement(helper));
+    }
+
     /**
      * Append PluginReport
      * @param title Title
@@ -1,29 +1,59 @@
 package cn.afternode.commons.bungee.messaging;
 
+import cn.afternode.commons.messaging.ChannelMetrics;
+import cn.afternode.commons.messaging.ChunkAssembler;
+import cn.afternode.commons.messaging.ChunkStreamer;
+import cn.afternode.commons.messaging.LoopbackTransport;
+import cn.afternode.commons.messaging.MessageBatcher;
+import cn.afternode.commons.messaging.MessageTransport;
+import cn.afternode.commons.messaging.NByteBuf;
+import cn.afternode.commons.messaging.PacketRegistry;
+import cn.afternode.commons.messaging.RpcEndpoint;
 import net.md_5.bungee.api.ProxyServer;
 import net.md_5.bungee.api.config.ServerInfo;
 import net.md_5.bungee.api.connection.Connection;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
+import net.md_5.bungee.api.connection.Server;
 import net.md_5.bungee.api.event.PluginMessageEvent;
 import net.md_5.bungee.api.plugin.Listener;
+import net.md_5.bungee.api.scheduler.ScheduledTask;
 import net.md_5.bungee.event.EventHandler;
 
 import java.io.Closeable;
 import java.io.IOException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class MessageChannelContext implements Listener, Closeable {
     private final String channel;
     private final BungeeMessagingHelper helper;
     private final IMessageListener listener;
+    private final PacketRegistry<ProxiedPlayer> packets;
+    private final RpcEndpoint<ProxiedPlayer> rpc;
+    private final ChannelMetrics metrics;
+
+    private volatile MessageTransport<Object> transport;
+
+    private volatile MessageBatcher<Object> batcher = null;
+    private long flushDelay;
+
+    private volatile ChunkStreamer<Object> streamer = null;
+    private volatile ChunkAssembler<ProxiedPlayer> assembler = null;
+    private ScheduledTask streamTask = null;
 
     private boolean closed = false;
 
-    MessageChannelContext(String channel, BungeeMessagingHelper helper, IMessageListener listener) {
+    MessageChannelContext(String channel, BungeeMessagingHelper helper, IMessageListener listener, PacketRegistry<ProxiedPlayer> packets, RpcEndpoint<ProxiedPlayer> rpc, ChannelMetrics metrics) {
         this.channel = channel;
         this.helper = helper;
         this.listener = listener;
+        this.packets = packets;
+        this.rpc = rpc;
+        this.metrics = metrics;
+        this.setTransport(null);
     }
 
     @EventHandler
@@ -34,43 +64,82 @@ public class MessageChannelContext implements Listener, Closeable {
             return;
 
         Connection receiver = event.getReceiver();
-        if (!(receiver instanceof ProxiedPlayer player))
+        if (receiver instanceof ProxiedPlayer player)
+            this.receive(player, event.getData());
+    }
+
+    /**
+     * Handle a plugin message of this channel
+     * @param player Player
+     * @param message Plugin message
+     * @throws RuntimeException Error in validating, decoding or handling, with cause
+     * @see LoopbackTransport
+     */
+    public void receive(ProxiedPlayer player, byte[] message) {
+        if (closed)
             return;
 
+        metrics.recordReceived(message.length);
         try {
-            NBungeeByteBuf buf = new NBungeeByteBuf(event.getData());
-            if (helper.signingAvailable())
+            NBungeeByteBuf buf = NBungeeByteBuf.wrap(message);
+            if (helper.signingAvailable()) {
                 buf = helper.validateCombined(buf);
+                if (buf == null)
+                    metrics.recordRejected();
+            }
 
-            listener.onMessage(channel, player, buf);
+            long start = System.nanoTime();
+            try {
+                if (batcher == null || buf == null) {
+                    this.deliver(player, buf);
+                } else {
+                    MessageBatcher.forEach(buf, data -> this.deliver(player, data));
+                }
+            } finally {
+                metrics.recordHandled(System.nanoTime() - start);
+            }
         } catch (Throwable t) {
-            throw new RuntimeException("(%s) Error handling plugin message from %s".formatted(channel, player.getName()));
+            metrics.recordError();
+            throw new RuntimeException("(%s) Error handling plugin message from %s".formatted(channel, player.getName()), t);
+        }
+    }
+
+    private void deliver(ProxiedPlayer player, NBungeeByteBuf data) {
+        ChunkAssembler<ProxiedPlayer> assembler = this.assembler;
+        if (assembler != null && data != null) {
+            data = assembler.accept(player, data);
+            if (data == null)
+                return;
+        }
+        if (rpc == null) {
+            listener.onMessage(channel, player, data);
+        } else if (data != null) {
+            rpc.receive(player, data, (target, frame) -> this.write(target.getServer(), frame));
         }
     }
 
     /**
      * Send message to channel through specified player
+     * <br>
+     * With batching enabled, the message is copied and queued until next flush
      * @param player Player
      * @param buf Data
      * @throws NoSuchAlgorithmException Signing error
      * @throws InvalidKeyException Signing error
      * @throws IOException Using a closed channel
+     * @see #enableBatching(long, int)
      */
     public void send(ProxiedPlayer player, NBungeeByteBuf buf) throws NoSuchAlgorithmException, InvalidKeyException, IOException {
         if (closed)
             throw new IOException("Using a closed channel");
 
-        byte[] data;
-        if (helper.signingAvailable()) {
-            data = helper.combineSign(buf);
-        } else {
-            data = buf.toArray();
-        }
-        player.sendData(this.channel, data);
+        this.write(player, buf);
     }
 
     /**
      * Send message to all servers with at least 1 player online
+     * <br>
+     * With batching enabled, the message is queued for each server until next flush
      * @param buf Data
      * @throws IOException Using a closed channel
      * @throws NoSuchAlgorithmException Signing error
@@ -80,27 +149,290 @@ public class MessageChannelContext implements Listener, Closeable {
         if (closed)
             throw new IOException("Using a closed channel");
 
-        byte[] data;
-        if (helper.signingAvailable()) {
-            data = helper.combineSign(buf);
-        } else {
-            data = buf.toArray();
+        if (streamer == null) {
+            this.writeAll(buf);
+            return;
+        }
+        try (NByteBuf framed = ChunkStreamer.single(buf)) {
+            this.writeAll(framed);
         }
+    }
 
+    private void writeAll(NByteBuf buf) throws NoSuchAlgorithmException, InvalidKeyException {
+        MessageBatcher<Object> batcher = this.batcher;
+        byte[] data = batcher == null ? this.encode(buf) : null;
+        boolean schedule = false;
         for (ServerInfo server : ProxyServer.getInstance().getServers().values()) {
-            if (!server.getPlayers().isEmpty())
-                server.sendData(this.channel, data);
+            if (server.getPlayers().isEmpty())
+                continue;
+            if (batcher == null) {
+                transport.send(server, data);
+                metrics.recordSent(data.length);
+            } else {
+                schedule |= batcher.add(server, buf);
+            }
+        }
+        if (schedule)
+            this.scheduleFlush();
+    }
+
+    private byte[] encode(NByteBuf buf) throws NoSuchAlgorithmException, InvalidKeyException {
+        if (helper.signingAvailable())
+            return helper.combineSign(buf);
+        return buf.toArray();
+    }
+
+    // Target is a ProxiedPlayer, Server connection or ServerInfo
+    private void write(Object target, NByteBuf buf) throws NoSuchAlgorithmException, InvalidKeyException {
+        if (streamer == null) {
+            this.writeFrame(target, buf);
+            return;
+        }
+        try (NByteBuf framed = ChunkStreamer.single(buf)) {
+            this.writeFrame(target, framed);
+        }
+    }
+
+    private void writeFrame(Object target, NByteBuf buf) throws NoSuchAlgorithmException, InvalidKeyException {
+        MessageBatcher<Object> batcher = this.batcher;
+        if (batcher == null) {
+            this.sendNow(target, buf);
+        } else if (batcher.add(target, buf)) {
+            this.scheduleFlush();
+        }
+    }
+
+    private void sendNow(Object target, NByteBuf buf) throws NoSuchAlgorithmException, InvalidKeyException {
+        byte[] data = this.encode(buf);
+        transport.send(target, data);
+        metrics.recordSent(data.length);
+    }
+
+    /**
+     * Replace output of this channel, such as with a {@link LoopbackTransport} in tests and load simulation
+     * @param transport Transport to ProxiedPlayer, Server or ServerInfo targets, or null for platform plugin messaging
+     */
+    public void setTransport(MessageTransport<Object> transport) {
+        if (transport == null) {
+            transport = (target, data) -> {
+                if (target instanceof ProxiedPlayer player) {
+                    player.sendData(this.channel, data);
+                } else if (target instanceof Server server) {
+                    server.sendData(this.channel, data);
+                } else {
+                    ((ServerInfo) target).sendData(this.channel, data);
+                }
+            };
+        }
+        this.transport = transport;
+    }
+
+    private void scheduleFlush() {
+        ProxyServer.getInstance().getScheduler().schedule(helper.getPlugin(), this::flush, flushDelay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Coalesce messages sent within flush delay into one plugin message per player or server
+     * <br>
+     * Batches are signed as a whole, and both sides of the channel must enable batching
+     * <br>
+     * A rejected batch is passed to raw listeners once as null, same as a rejected message without batching
+     * @param flushDelay Delay in milliseconds from the first queued message to flush
+     * @param maxSize Max batch size in bytes, larger batches are split
+     * @throws IllegalArgumentException flushDelay is negative
+     * @see MessageBatcher
+     */
+    public void enableBatching(long flushDelay, int maxSize) {
+        if (flushDelay < 0)
+            throw new IllegalArgumentException("Flush delay %s is negative".formatted(flushDelay));
+        this.flush();
+        this.flushDelay = flushDelay;
+        this.batcher = new MessageBatcher<>(maxSize, this::sendNow);
+    }
+
+    /**
+     * Coalesce messages sent within 50ms (1 server tick) into one plugin message per player or server
+     * @see #enableBatching(long, int)
+     */
+    public void enableBatching() {
+        this.enableBatching(50, MessageBatcher.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Send queued batches immediately, no-op if batching is disabled
+     * @throws RuntimeException Error in signing or sending, with cause
+     */
+    public void flush() {
+        MessageBatcher<Object> batcher = this.batcher;
+        if (batcher == null)
+            return;
+        try {
+            batcher.flush();
+        } catch (Exception ex) {
+            throw new RuntimeException("(%s) Error flushing batched messages".formatted(channel), ex);
+        }
+    }
+
+    /**
+     * Allow sending payloads larger than a plugin message with {@link #sendLarge(ProxiedPlayer, NBungeeByteBuf)}
+     * <br>
+     * All messages get a frame header, so both sides of the channel must enable chunking
+     * @param chunkSize Max data size of a chunk
+     * @param chunksPerTick Max chunks sent by this channel in a tick (50ms)
+     * @param assembler Reassembly of incoming payloads, with its memory limits and timeout
+     * @see ChunkStreamer
+     */
+    public void enableChunking(int chunkSize, int chunksPerTick, ChunkAssembler<ProxiedPlayer> assembler) {
+        ChunkStreamer<Object> streamer = new ChunkStreamer<>(chunkSize, chunksPerTick, this::writeFrame);
+        this.disableChunking();
+        this.assembler = assembler;
+        this.streamTask = ProxyServer.getInstance().getScheduler().schedule(helper.getPlugin(), streamer::tick, 50, 50, TimeUnit.MILLISECONDS);
+        this.streamer = streamer;
+    }
+
+    /**
+     * Allow sending payloads larger than a plugin message with default chunk size and limits
+     * @see #enableChunking(int, int, ChunkAssembler)
+     */
+    public void enableChunking() {
+        this.enableChunking(ChunkStreamer.DEFAULT_CHUNK_SIZE, ChunkStreamer.DEFAULT_CHUNKS_PER_TICK, new ChunkAssembler<>());
+    }
+
+    /**
+     * Stop chunking, payloads still sending fail and incoming transfers are dropped
+     */
+    public void disableChunking() {
+        ChunkStreamer<Object> streamer = this.streamer;
+        this.streamer = null;
+        if (streamTask != null) {
+            streamTask.cancel();
+            streamTask = null;
+        }
+        if (streamer != null)
+            streamer.failAll(new IOException("Chunking of channel %s disabled".formatted(channel)));
+        if (assembler != null) {
+            assembler.clear();
+            assembler = null;
+        }
+    }
+
+    /**
+     * Send a payload of any size through specified player, split into chunks sent over next ticks
+     * @param player Player
+     * @param buf Data, copied before returning
+     * @return Future completed when the last chunk is sent, or exceptionally on signing, sending error or closed channel
+     * @throws IllegalStateException Chunking is not enabled
+     * @see #enableChunking(int, int, ChunkAssembler)
+     */
+    public CompletableFuture<Void> sendLarge(ProxiedPlayer player, NBungeeByteBuf buf) {
+        ChunkStreamer<Object> streamer = this.streamer;
+        if (streamer == null)
+            throw new IllegalStateException("Channel %s has no chunking enabled".formatted(channel));
+        if (closed)
+            return CompletableFuture.failedFuture(new IOException("Using a closed channel"));
+        return streamer.submit(player, buf);
+    }
+
+    /**
+     * Send a typed packet to channel through specified player
+     * @param player Player
+     * @param packet Packet
+     * @throws NoSuchAlgorithmException Signing error
+     * @throws InvalidKeyException Signing error
+     * @throws IOException Using a closed channel
+     * @throws IllegalStateException Channel is not registered with a packet registry
+     * @see PacketRegistry#write(Object, NByteBuf)
+     */
+    public void sendPacket(ProxiedPlayer player, Object packet) throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+        try (NBungeeByteBuf buf = this.encodePacket(packet)) {
+            this.send(player, buf);
         }
     }
 
+    /**
+     * Send a typed packet to all servers with at least 1 player online
+     * @param packet Packet
+     * @throws IOException Using a closed channel
+     * @throws NoSuchAlgorithmException Signing error
+     * @throws InvalidKeyException Signing error
+     * @throws IllegalStateException Channel is not registered with a packet registry
+     */
+    public void sendPacketAll(Object packet) throws IOException, NoSuchAlgorithmException, InvalidKeyException {
+        try (NBungeeByteBuf buf = this.encodePacket(packet)) {
+            this.sendAll(buf);
+        }
+    }
+
+    private NBungeeByteBuf encodePacket(Object packet) {
+        if (packets == null)
+            throw new IllegalStateException("Channel %s has no packet registry".formatted(channel));
+        NBungeeByteBuf buf = NBungeeByteBuf.pooled();
+        try {
+            packets.write(packet, buf);
+        } catch (RuntimeException ex) {
+            buf.close();
+            throw ex;
+        }
+        return buf;
+    }
+
+    /**
+     * Send a request to the server of specified player
+     * @param player Player
+     * @param request Request packet
+     * @param responseType Expected response type
+     * @param timeout Time to wait for response
+     * @return Future of response, completed exceptionally on timeout, remote error or closed channel
+     * @param <R> Response type
+     * @throws IllegalStateException Channel is not registered with an RPC endpoint
+     * @see RpcEndpoint#request(Object, Object, Class, Duration, cn.afternode.commons.messaging.MessageSink)
+     */
+    public <R> CompletableFuture<R> request(ProxiedPlayer player, Object request, Class<R> responseType, Duration timeout) {
+        if (rpc == null)
+            throw new IllegalStateException("Channel %s has no RPC endpoint".formatted(channel));
+        if (closed)
+            return CompletableFuture.failedFuture(new IOException("Using a closed channel"));
+        return rpc.request(player, request, responseType, timeout, (target, frame) -> this.write(target.getServer(), frame));
+    }
+
+    /**
+     * Get packet registry of this channel
+     * @return Packet registry, or null if registered with a raw listener
+     */
+    public PacketRegistry<ProxiedPlayer> getPackets() {
+        return packets;
+    }
+
+    /**
+     * Get RPC endpoint of this channel
+     * @return RPC endpoint, or null if not registered as an RPC channel
+     */
+    public RpcEndpoint<ProxiedPlayer> getRpc() {
+        return rpc;
+    }
+
+    /**
+     * Get traffic metrics of this channel
+     * @return Metrics
+     * @see BungeeMessagingHelper#snapshotMetrics()
+     */
+    public ChannelMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public void close() throws IOException {
         if (closed)
             return;
 
+        this.disableChunking();
+        this.flush();
+        if (rpc != null)
+            rpc.failAll(new IOException("Channel %s closed".formatted(channel)));
         ProxyServer proxy = ProxyServer.getInstance();
         proxy.unregisterChannel(this.channel);
         proxy.getPluginManager().unregisterListener(this);
+        helper.unregister(this);
         closed = true;
     }
 }
@@ -1,212 +1,104 @@
 package cn.afternode.commons.bungee.messaging;
 
+import cn.afternode.commons.messaging.NByteBuf;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import net.md_5.bungee.api.ProxyServer;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.util.UUID;
-
 /**
- * Netty version of BungeeByteBuffer
+ * Netty version of BungeeByteBuffer, with BungeeCord player helpers over {@link NByteBuf}
  * <br>
  * No need to shade netty, it's provided by proxy server
  */
-public class NBungeeByteBuf {
-    private final ByteBuf src;
-
+public class NBungeeByteBuf extends NByteBuf {
     public NBungeeByteBuf(byte[] data) {
-        this.src = Unpooled.copiedBuffer(data);
+        super(data);
     }
 
     public NBungeeByteBuf() {
-        this.src = Unpooled.buffer();
-    }
-
-    // Bytes start
-
-    /**
-     * Read byte array
-     * @param dest Destination
-     */
-    public void read(byte[] dest) {
-        src.writeBytes(dest);
-    }
-
-    /**
-     * Write byte array
-     * @param data Data
-     */
-    public void write(byte[] data) {
-        src.writeBytes(data);
-    }
-
-    /**
-     * Read byte array with specified size
-     * @param size Size
-     * @return Result
-     */
-    public byte[] read(int size) {
-        byte[] data = new byte[size];
-        src.readBytes(data);
-        return data;
+        super();
     }
 
     /**
-     * Read byte array in a block
-     * @return Result
-     */
-    public byte[] readBlock() {
-        return read(this.src.readShortLE());
-    }
-
-    /**
-     * Write byte array in a block
+     * Wrap an existing netty ByteBuf, content is not copied
      * <br>
-     * @param data Block
+     * Ownership is taken, {@link #close()} will release the source
+     * @param src Source ByteBuf
      */
-    public void writeBlock(byte[] data) {
-        this.src.writeShortLE(data.length);
-        this.src.writeBytes(data);
+    public NBungeeByteBuf(ByteBuf src) {
+        super(src);
     }
 
-    /**
-     * Read byte array in a large block
-     * @return Result
-     */
-    public byte[] readBlockL() {
-        return this.read(this.src.readIntLE());
+    private NBungeeByteBuf(ByteBuf src, boolean owner) {
+        super(src, owner);
     }
 
     /**
-     * Write byte array in a large block
+     * Wrap inbound data without copying
      * @param data Data
+     * @return Fixed-size buffer backed by data
+     * @see NByteBuf#wrap(byte[])
      */
-    public void writeBlockL(byte[] data) {
-        this.src.writeIntLE(data.length);
-        this.src.writeBytes(data);
+    public static NBungeeByteBuf wrap(byte[] data) {
+        return new NBungeeByteBuf(Unpooled.wrappedBuffer(data));
     }
-    // Bytes end
-
-    // Short start
 
     /**
-     * Read short
-     * @return result
+     * Allocate a pooled heap buffer
+     * @return Buffer, must be closed after used
      */
-    public short readShort() {
-        return this.src.readShortLE();
+    public static NBungeeByteBuf pooled() {
+        return pooled(false);
     }
 
     /**
-     * Write short
-     * @param data data
+     * Allocate a buffer from netty's shared pooled allocator
+     * @param direct Use direct memory
+     * @return Buffer, must be closed after used
      */
-    public void writeShort(short data) {
-        this.src.writeShortLE(data);
+    public static NBungeeByteBuf pooled(boolean direct) {
+        return allocate(PooledByteBufAllocator.DEFAULT, direct);
     }
-    // Short end
-
-    // Integer start
 
     /**
-     * Read integer
-     * @return result
+     * Allocate a buffer from specified allocator
+     * @param allocator Allocator
+     * @param direct Use direct memory
+     * @return Buffer, must be closed after used
      */
-    public int readInt() {
-        return this.src.readIntLE();
+    public static NBungeeByteBuf allocate(ByteBufAllocator allocator, boolean direct) {
+        return new NBungeeByteBuf(direct ? allocator.directBuffer() : allocator.heapBuffer());
     }
 
-    /**
-     * Write integer
-     * @param data result
-     */
-    public void writeInt(int data) {
-        this.src.writeIntLE(data);
+    // Slice start
+    @Override
+    public NBungeeByteBuf readSlice(int size) {
+        return (NBungeeByteBuf) super.readSlice(size);
     }
-    // Integer end
 
-    // Long start
-
-    /**
-     * Read long integer
-     * @return result
-     */
-    public long readLong() {
-        return this.src.readLong();
+    @Override
+    public NBungeeByteBuf readBlockView() {
+        return (NBungeeByteBuf) super.readBlockView();
     }
 
-    /**
-     * Write long integer
-     * @param data data
-     */
-    public void writeLong(long data) {
-        this.src.writeLong(data);
+    @Override
+    public NBungeeByteBuf readBlockLView() {
+        return (NBungeeByteBuf) super.readBlockLView();
     }
-    // Long end
 
-    // String start
-
-    /**
-     * Read UTF-8 String
-     * @return result
-     */
-    public String readString() {
-        return new String(this.readBlock(), StandardCharsets.UTF_8);
-    }
-
-    /**
-     * Write UTF-8 string
-     * @param data data
-     */
-    public void writeString(String data) {
-        this.writeBlock(data.getBytes(StandardCharsets.UTF_8));
-    }
-    // String end
-
-    // Enum start
-    /**
-     * Write enumeration object (1 short integer)
-     * @param e object
-     */
-    public void writeEnum(Enum<?> e) {
-        this.src.writeShortLE(e.ordinal());
-    }
-
-    /**
-     * Read enumeration object (1 short integer)
-     * @param clazz Type
-     * @return result
-     * @param <T> Type
-     */
-    public <T extends Enum<?>> T readEnum(Class<T> clazz) {
-        return clazz.getEnumConstants()[this.readShort()];
+    @Override
+    public NBungeeByteBuf slice() {
+        return (NBungeeByteBuf) super.slice();
     }
-    // Enum end
 
-    // UUID start
-
-    /**
-     * Read UUID (2 long integers)
-     * @return result
-     */
-    public UUID readUUID() {
-        return new UUID(this.readLong(), this.readLong());
-    }
-
-    /**
-     * Write UUID (2 long integers)
-     * @param uuid object
-     */
-    public void writeUUID(UUID uuid) {
-        this.writeLong(uuid.getMostSignificantBits());
-        this.writeLong(uuid.getLeastSignificantBits());
+    @Override
+    protected NBungeeByteBuf view(ByteBuf src) {
+        return new NBungeeByteBuf(src, false);
     }
-    // UUID end
+    // Slice end
 
     // Players start
     /**
@@ -225,20 +117,4 @@ public class NBungeeByteBuf {
         this.writeUUID(player.getUniqueId());
     }
     // Players end
-
-    /**
-     * Access to source netty ByteBuf directly
-     * @return source
-     */
-    public ByteBuf direct() {
-        return src;
-    }
-
-    /**
-     * Convert to byte array
-     * @return result
-     */
-    public byte[] toArray() {
-        return src.array();
-    }
 }
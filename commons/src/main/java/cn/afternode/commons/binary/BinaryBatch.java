@@ -0,0 +1,91 @@
+package cn.afternode.commons.binary;
+
+import cn.afternode.commons.serialization.SerializationException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Random access view of records written by {@link BinarySerializer#serializeAll(java.util.Collection, WrappedByteBuffer)}
+ * <br>
+ * Layout: record count (int), count + 1 record offsets (int, relative to batch start, the last one is end of batch), records.
+ * <br>
+ * Reading a record moves reader offset of the buffer, so a batch should not be shared between threads
+ * @param <T> Record type
+ */
+public class BinaryBatch<T> {
+    private final BinaryCodec<T> codec;
+    private final WrappedByteBuffer bb;
+    private final int start;
+    private final int count;
+
+    BinaryBatch(BinarySerializer serializer, Class<T> type, WrappedByteBuffer bb) {
+        this.codec = serializer.codec(type);
+        this.bb = bb;
+        this.start = bb.readerOffset();
+        this.count = bb.readInt(start);
+        if (count < 0 || start + 4L + (count + 1L) * 4 > bb.writeOffset())
+            throw new SerializationException("Invalid batch header, count %s".formatted(count));
+    }
+
+    /**
+     * @return Count of records
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Get absolute offset of record in buffer
+     * @param index Record index
+     * @return Offset
+     * @throws IndexOutOfBoundsException Index out of range
+     */
+    public int offset(int index) {
+        if (index < 0 || index >= count)
+            throw new IndexOutOfBoundsException("Index %s out of batch size %s".formatted(index, count));
+        return start + bb.readInt(start + 4 + index * 4);
+    }
+
+    /**
+     * Get length of record in bytes
+     * @param index Record index
+     * @return Length
+     * @throws IndexOutOfBoundsException Index out of range
+     */
+    public int length(int index) {
+        return start + bb.readInt(start + 8 + index * 4) - offset(index);
+    }
+
+    /**
+     * @return Absolute offset of batch end in buffer
+     */
+    public int end() {
+        return start + bb.readInt(start + 4 + count * 4);
+    }
+
+    /**
+     * Deserialize a record without decoding others
+     * @param index Record index
+     * @return Deserialized record
+     * @throws IndexOutOfBoundsException Index out of range
+     */
+    public T get(int index) {
+        bb.readerOffset(offset(index));
+        return codec.read(bb);
+    }
+
+    /**
+     * Deserialize all records, reader offset is moved to batch end
+     * @return Deserialized records
+     */
+    public List<T> toList() {
+        List<T> out = new ArrayList<>(count);
+        if (count > 0)
+            bb.readerOffset(offset(0));
+        for (int i = 0; i < count; i++)
+            out.add(codec.read(bb));
+        bb.readerOffset(end());
+        return out;
+    }
+}
@@ -0,0 +1,22 @@
+package cn.afternode.commons.binary;
+
+/**
+ * Precomputed binary serializer of a type
+ * @param <T> Type
+ * @see BinarySerializer#codec(Class)
+ */
+public interface BinaryCodec<T> {
+    /**
+     * Write value to buffer
+     * @param value Source value
+     * @param bb Target buffer
+     */
+    void write(T value, WrappedByteBuffer bb);
+
+    /**
+     * Read value from buffer
+     * @param bb Source buffer
+     * @return Result
+     */
+    T read(WrappedByteBuffer bb);
+}
@@ -0,0 +1,18 @@
+package cn.afternode.commons.binary;
+
+/**
+ * Upgrade step of a tagged type, applied to values deserialized from older payloads
+ * @param <T> Type
+ * @see BinarySerializer#registerMigration(Class, short, BinaryMigration)
+ */
+@FunctionalInterface
+public interface BinaryMigration<T> {
+    /**
+     * Upgrade value by one version
+     * <br>
+     * Mutable types deserialized by {@link BinarySerializer#deserialize(Object, WrappedByteBuffer)} must be modified and returned in place
+     * @param value Value read from an older payload, fields missing in that payload have default values
+     * @return Upgraded value
+     */
+    T migrate(T value);
+}
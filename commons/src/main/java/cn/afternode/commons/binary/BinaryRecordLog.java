@@ -0,0 +1,383 @@
+package cn.afternode.commons.binary;
+
+import cn.afternode.commons.serialization.SerializationException;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of binary records over FileChannel
+ * <br>
+ * Each record is framed as length (int), CRC32C of content (int) and content.
+ * Appended records are collected in memory and written sequentially,
+ * fsync is issued at most once per sync interval for all records appended in between (group commit).
+ * <br>
+ * A failed background fsync is kept and thrown by every later append, sync and close, as records before it may be lost.
+ * <br>
+ * On open, the log is scanned and truncated at the first torn or corrupted record, so an interrupted append never breaks later reads
+ */
+public class BinaryRecordLog implements Closeable {
+    /**
+     * Size of record header
+     */
+    public static final int HEADER_SIZE = 8;
+
+    /**
+     * Max length of a record content, 64 MiB
+     */
+    public static final int MAX_RECORD_LENGTH = 64 * 1024 * 1024;
+
+    private static final int FLUSH_SIZE = WrappedByteBuffer.DEFAULT_SIZE;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long syncInterval;
+    private final long recoveredTruncation;
+    private final ScheduledExecutorService syncer;
+
+    private final WrappedByteBuffer pending = WrappedByteBuffer.direct(FLUSH_SIZE, WrappedByteBuffer.MAX_CAPACITY);
+    private final CRC32C crc = new CRC32C();
+    private long position;
+    private long written;
+    private final AtomicLong synced;
+    private boolean closed = false;
+    private volatile IOException failure;
+
+    private BinaryRecordLog(Path path, FileChannel channel, long syncInterval) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.syncInterval = syncInterval;
+
+        long size = channel.size();
+        long valid = recover();
+        if (valid < size)
+            channel.truncate(valid);
+        this.recoveredTruncation = size - valid;
+        this.position = valid;
+        this.written = valid;
+        this.synced = new AtomicLong(valid);
+
+        if (syncInterval > 0) {
+            this.syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "BinaryRecordLog-sync " + path.getFileName());
+                t.setDaemon(true);
+                return t;
+            });
+            this.syncer.scheduleWithFixedDelay(this::syncQuietly, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+        } else {
+            this.syncer = null;
+        }
+    }
+
+    /**
+     * Open or create a record log, recovering from torn tail records
+     * @param path Log file
+     * @param syncInterval Max delay of fsync in milliseconds, 0 to fsync on every append
+     * @return Opened log
+     * @throws IOException Error opening or recovering file
+     */
+    public static BinaryRecordLog open(Path path, long syncInterval) throws IOException {
+        if (syncInterval < 0)
+            throw new IllegalArgumentException("Negative sync interval %s".formatted(syncInterval));
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new BinaryRecordLog(path, channel, syncInterval);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Scan from start and find end of last valid record
+     * @return End of valid records
+     */
+    private long recover() throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        ByteBuffer chunk = ByteBuffer.allocateDirect(FLUSH_SIZE);
+        CRC32C check = new CRC32C();
+
+        long pos = 0;
+        while (pos + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(header, pos);
+            int len = header.getInt(0);
+            int expected = header.getInt(4);
+            if (len < 0 || len > MAX_RECORD_LENGTH || pos + HEADER_SIZE + len > size)
+                break;
+
+            check.reset();
+            long off = pos + HEADER_SIZE;
+            long end = off + len;
+            while (off < end) {
+                chunk.clear().limit((int) Math.min(chunk.capacity(), end - off));
+                readFully(chunk, off);
+                chunk.flip();
+                check.update(chunk);
+                off += chunk.limit();
+            }
+            if ((int) check.getValue() != expected)
+                break;
+            pos = end;
+        }
+        return pos;
+    }
+
+    private void readFully(ByteBuffer dst, long pos) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = channel.read(dst, pos);
+            if (n < 0)
+                throw new EOFException("Unexpected end of record log at %s".formatted(pos));
+            pos += n;
+        }
+    }
+
+    /**
+     * Append readable bytes of buffer as a record, reader offset is not moved
+     * @param record Record content, such as output of {@link BinarySerializer#serialize(Object)}
+     * @return Position of record, for {@link #read(long)}
+     * @throws IOException Error writing log, or a background sync failed earlier
+     * @throws IllegalArgumentException Record too large
+     */
+    public long append(WrappedByteBuffer record) throws IOException {
+        int off = record.readerOffset();
+        int len = record.writeOffset() - off;
+        if (len > MAX_RECORD_LENGTH)
+            throw new IllegalArgumentException("Record length %s exceeds %s".formatted(len, MAX_RECORD_LENGTH));
+
+        long at;
+        synchronized (this) {
+            ensureOpen();
+            checkFailure();
+            crc.reset();
+            crc.update(record.src().duplicate().position(off).limit(off + len));
+
+            pending.writeInt(len);
+            pending.writeInt((int) crc.getValue());
+            int body = pending.writeOffset();
+            pending.writerOffset(body + len);
+            pending.src().put(body, record.src(), off, len);
+
+            at = position;
+            position += HEADER_SIZE + len;
+            if (pending.writeOffset() >= FLUSH_SIZE)
+                flushPending();
+        }
+
+        if (syncInterval == 0)
+            sync();
+        return at;
+    }
+
+    /**
+     * Serialize an object and append as a record
+     * @param serializer Serializer
+     * @param obj Source object
+     * @return Position of record
+     * @throws IOException Error writing log
+     * @see #append(WrappedByteBuffer)
+     */
+    public long append(BinarySerializer serializer, Object obj) throws IOException {
+        WrappedByteBuffer bb = WrappedByteBufferPool.shared().acquire();
+        try {
+            return append(serializer.serialize(obj, bb));
+        } finally {
+            bb.release();
+        }
+    }
+
+    private void flushPending() throws IOException {
+        ByteBuffer view = pending.src().duplicate().position(0).limit(pending.writeOffset());
+        // Commit only after full write, a failed flush is retried from the same position
+        long pos = written;
+        while (view.hasRemaining())
+            pos += channel.write(view, pos);
+        written = pos;
+        pending.clear();
+    }
+
+    /**
+     * Write appended records and fsync
+     * <br>
+     * Appends are not blocked during fsync, records appended meanwhile are synced in next group
+     * @throws IOException Error writing log, or a background sync failed earlier
+     */
+    public void sync() throws IOException {
+        long target;
+        synchronized (this) {
+            ensureOpen();
+            checkFailure();
+            flushPending();
+            target = written;
+        }
+        if (target > synced.get()) {
+            channel.force(false);
+            synced.accumulateAndGet(target, Math::max);
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            // Reported by next append, sync or close, a later fsync may succeed without the failed data on disk
+            if (failure == null)
+                failure = e;
+        } catch (IllegalStateException ignored) {
+            // Closed
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        IOException failure = this.failure;
+        if (failure != null)
+            throw new IOException("Background sync of record log %s failed".formatted(path), failure);
+    }
+
+    /**
+     * Read record at position
+     * @param position Position returned by {@link #append(WrappedByteBuffer)}
+     * @return Record content, writer offset at its end
+     * @throws IOException Error reading log
+     * @throws SerializationException Invalid position or corrupted record
+     */
+    public WrappedByteBuffer read(long position) throws IOException {
+        synchronized (this) {
+            ensureOpen();
+            flushPending();
+        }
+        return readAt(position, null);
+    }
+
+    private WrappedByteBuffer readAt(long pos, WrappedByteBuffer reuse) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, pos);
+        int len = header.getInt(0);
+        if (len < 0 || len > MAX_RECORD_LENGTH)
+            throw new SerializationException("Invalid record at %s".formatted(pos));
+
+        WrappedByteBuffer bb = reuse == null ? new WrappedByteBuffer(len) : reuse;
+        bb.clear();
+        bb.writerOffset(len);
+        readFully(bb.src().duplicate().position(0).limit(len), pos + HEADER_SIZE);
+
+        CRC32C check = new CRC32C();
+        check.update(bb.src().duplicate().position(0).limit(len));
+        if ((int) check.getValue() != header.getInt(4))
+            throw new SerializationException("Checksum mismatch of record at %s".formatted(pos));
+        return bb;
+    }
+
+    /**
+     * Read all records in order
+     * @param consumer Consumer of record content, the buffer is reused and must not be retained
+     * @throws IOException Error reading log
+     */
+    public void forEach(Consumer<WrappedByteBuffer> consumer) throws IOException {
+        long end;
+        synchronized (this) {
+            ensureOpen();
+            flushPending();
+            end = written;
+        }
+
+        WrappedByteBuffer bb = WrappedByteBuffer.growable();
+        long pos = 0;
+        while (pos < end) {
+            readAt(pos, bb);
+            pos += HEADER_SIZE + bb.writeOffset();
+            consumer.accept(bb);
+        }
+    }
+
+    /**
+     * Deserialize all records in order
+     * @param serializer Serializer
+     * @param type Record type
+     * @param consumer Consumer of records
+     * @param <T> Record type
+     * @throws IOException Error reading log
+     */
+    public <T> void forEach(BinarySerializer serializer, Class<T> type, Consumer<? super T> consumer) throws IOException {
+        forEach(bb -> consumer.accept(serializer.deserialize(type, bb)));
+    }
+
+    /**
+     * @return Logical size of log, including records not written yet
+     */
+    public synchronized long size() {
+        return position;
+    }
+
+    /**
+     * @return Bytes known to be durable on disk
+     */
+    public long syncedSize() {
+        return synced.get();
+    }
+
+    /**
+     * @return Bytes of torn or corrupted tail truncated when opening
+     */
+    public long recoveredTruncation() {
+        return recoveredTruncation;
+    }
+
+    /**
+     * @return Log file
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    private void ensureOpen() {
+        if (closed)
+            throw new IllegalStateException("Record log %s is closed".formatted(path));
+    }
+
+    /**
+     * Sync appended records and close file
+     * @throws IOException Error writing log, or a background sync failed earlier
+     */
+    @Override
+    public void close() throws IOException {
+        boolean interrupted = false;
+        if (syncer != null) {
+            // Let a running sync finish, interrupting it would close the channel
+            syncer.shutdown();
+            try {
+                syncer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        try {
+            synchronized (this) {
+                if (closed)
+                    return;
+                flushPending();
+                closed = true;
+            }
+            channel.force(false);
+            synced.accumulateAndGet(written, Math::max);
+            checkFailure();
+        } finally {
+            channel.close();
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -11,11 +11,33 @@ public @interface BinarySerialize {
     /**
      * Version marker for binary deserialization
      * <br>
-     * If the version is mismatched, an error will be thrown
+     * If the version is mismatched, an error will be thrown, unless the type is {@link #tagged()}
      * @return version
+     * @see BinarySerializer#registerMigration(Class, short, BinaryMigration)
      */
     short version() default 0;
 
+    /**
+     * Write fields with {@link Tag} id and wire type, so payloads of other versions can still be read
+     * <br>
+     * Unknown fields are skipped, and missing fields keep their default values.
+     * Every serialized field of a tagged type must be annotated with {@link Tag}
+     * @return Use tagged layout
+     */
+    boolean tagged() default false;
+
+    /**
+     * Field id in tagged layout, must be unique in declaring type and never reused for a different field
+     */
+    @Target(ElementType.FIELD)
+    @Retention(RetentionPolicy.RUNTIME)
+    @interface Tag {
+        /**
+         * @return Field id, from 1 to 268435455
+         */
+        int value();
+    }
+
     /**
      * Exclude field or class from binary serialization
      */
@@ -2,109 +2,172 @@ package cn.afternode.commons.binary;
 
 import cn.afternode.commons.serialization.DeserializeInstantiationException;
 import cn.afternode.commons.serialization.FieldAccessException;
+import cn.afternode.commons.serialization.SerializationException;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 public class BinarySerializer {
+    private final boolean compact;
+    private final Utf8InternTable internTable;
+    private final Map<Class<?>, NavigableMap<Short, BinaryMigration<?>>> migrations = new ConcurrentHashMap<>();
+
+    private final ClassValue<BinaryCodec<?>> codecs = new ClassValue<>() {
+        @Override
+        protected BinaryCodec<?> computeValue(Class<?> type) {
+            return ClassCodec.build(type, BinarySerializer.this);
+        }
+    };
+
     /**
-     * Serialize an object to WrappedByteBuffer
+     * Create serializer with fixed-size encoding
+     */
+    public BinarySerializer() {
+        this(false);
+    }
+
+    /**
+     * Create serializer
      * <br>
-     * Currently, it supports String, int, short and enum
+     * Compact mode writes lengths, enum ordinals, versions and short/char/int/long values as VarInt (ZigZag for signed values),
+     * output of compact and fixed-size serializers are not interchangeable
+     * @param compact Use compact encoding
+     * @see WrappedByteBuffer#writeVarInt(int)
+     * @see WrappedByteBuffer#writeZigZagInt(int)
+     */
+    public BinarySerializer(boolean compact) {
+        this(compact, null);
+    }
+
+    /**
+     * Create serializer with string intern table, deserialized strings with same content share one instance
+     * @param compact Use compact encoding
+     * @param internTable Intern table, nullable
+     * @see #BinarySerializer(boolean)
+     */
+    public BinarySerializer(boolean compact, Utf8InternTable internTable) {
+        this.compact = compact;
+        this.internTable = internTable;
+    }
+
+    /**
+     * @return Is compact encoding used
+     */
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * @return String intern table, or null if not used
+     */
+    public Utf8InternTable getInternTable() {
+        return internTable;
+    }
+
+    /**
+     * Get cached codec of type, fields are inspected only once for each type
+     * @param type Type
+     * @return Codec
+     * @param <T> Type
+     * @throws IllegalArgumentException Type was excluded from serialization
+     * @throws SerializationException Type contains unsupported fields
+     */
+    @SuppressWarnings("unchecked")
+    public <T> BinaryCodec<T> codec(Class<T> type) {
+        return (BinaryCodec<T>) codecs.get(type);
+    }
+
+    /**
+     * Register migration of a tagged type
      * <br>
-     * Write collections may cause errors in deserialization
+     * When deserializing a payload of older version, migrations from payload version (inclusive) to current version (exclusive)
+     * are applied in ascending order. Payloads of newer version are read without migrations, their unknown fields are skipped
+     * @param type Type annotated with {@code @BinarySerialize(tagged = true)}
+     * @param fromVersion Version upgraded by this migration, to fromVersion + 1
+     * @param migration Migration
+     * @param <T> Type
+     * @throws IllegalArgumentException Type is not tagged
+     * @see BinarySerialize#tagged()
+     */
+    public <T> void registerMigration(Class<T> type, short fromVersion, BinaryMigration<T> migration) {
+        BinarySerialize annotation = type.getAnnotation(BinarySerialize.class);
+        if (annotation == null || !annotation.tagged())
+            throw new IllegalArgumentException("Type %s is not tagged, payloads of other versions cannot be read".formatted(type.getName()));
+        migrations.computeIfAbsent(type, t -> new ConcurrentSkipListMap<>()).put(fromVersion, migration);
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> T migrate(Class<T> type, T value, short from, short to) {
+        NavigableMap<Short, BinaryMigration<?>> steps = migrations.get(type);
+        if (steps == null)
+            return value;
+        for (BinaryMigration<?> step : steps.subMap(from, true, to, false).values())
+            value = ((BinaryMigration<T>) step).migrate(value);
+        return value;
+    }
+
+    /**
+     * Serialize an object to WrappedByteBuffer with fixed size
      * @param obj Source object
      * @param size ByteBuffer allocation size
      * @return Serialized
      * @throws FieldAccessException Field access error
+     * @see #serialize(Object, WrappedByteBuffer)
      */
     public WrappedByteBuffer serialize(Object obj, int size) {
-        Class<?> c = obj.getClass();
-
-        WrappedByteBuffer bb = new WrappedByteBuffer(size);
-
-        short version = 0;
-        if (c.isAnnotationPresent(BinarySerialize.Exclude.class)) throw new IllegalArgumentException("Type %s was excluded from serialization".formatted(c.getName()));
-        if (c.isAnnotationPresent(BinarySerialize.class)) {
-            version = c.getAnnotation(BinarySerialize.class).version();
-        }
-        bb.writeShort(version);
-
-        for (Field f: c.getDeclaredFields()) {
-            if (f.isAnnotationPresent(BinarySerialize.Exclude.class)) continue;
-            f.trySetAccessible();
-
-            try {
-                Class<?> type = f.getType();
-                Object it = f.get(obj);
-                if (type == String.class) {
-                    bb.writeUtf((String) it);
-                } else if (type == int.class) {
-                    bb.writeInt((int) it);
-                } else if (type == short.class) {
-                    bb.writeShort((Short) it);
-                } else if (Enum.class.isAssignableFrom(type)) {
-                    bb.writeEnum((Enum<?>) it);
-                } else {
-                    throw new RuntimeException("Unsupported type %s".formatted(type.getName()));
-                }
-            } catch (IllegalAccessException ex) {
-                throw new FieldAccessException(f, ex);
-            }
-        }
+        return serialize(obj, new WrappedByteBuffer(size));
+    }
 
+    /**
+     * Serialize an object to provided WrappedByteBuffer
+     * <br>
+     * Supported field types: primitives and their boxed types, String, enum, UUID, arrays, IntList, LongList,
+     * List/Set/Map (with type arguments), nested @BinarySerialize types and records
+     * <br>
+     * Records are created with their canonical constructor
+     * @param obj Source object
+     * @param bb Target buffer, data will be written from its writer offset
+     * @return Provided target buffer
+     * @throws FieldAccessException Field access error
+     * @see WrappedByteBufferPool#acquire()
+     */
+    @SuppressWarnings("unchecked")
+    public WrappedByteBuffer serialize(Object obj, WrappedByteBuffer bb) {
+        ((BinaryCodec<Object>) codecs.get(obj.getClass())).write(obj, bb);
         return bb;
     }
 
     /**
-     * Serialize an object to WrappedByteBuffer with default size
+     * Serialize an object to a growable WrappedByteBuffer
      * @param obj Source object
      * @return Serialized
-     * @see #serialize(Object, int)
+     * @see #serialize(Object, WrappedByteBuffer)
+     * @see WrappedByteBuffer#growable()
      */
     public WrappedByteBuffer serialize(Object obj) {
-        return serialize(obj, WrappedByteBuffer.DEFAULT_SIZE);
+        return serialize(obj, WrappedByteBuffer.growable());
     }
 
     /**
      * Deserialize WrappedByteBuffer to object
+     * @param obj Target object
+     * @param bb Source buffer
+     * @throws IllegalArgumentException Version mismatched in untagged type, or target is a record
+     * @throws FieldAccessException Field access error
      */
     public void deserialize(Object obj, WrappedByteBuffer bb) {
-        Class<?> c = obj.getClass();
-
-        short version = 0;
-        if (c.isAnnotationPresent(BinarySerialize.Exclude.class)) throw new IllegalArgumentException("Type %s was excluded from serialization".formatted(c.getName()));
-        if (c.isAnnotationPresent(BinarySerialize.class)) {
-            version = c.getAnnotation(BinarySerialize.class).version();
-        }
-
-        short bbVersion = bb.readShort();
-        if (bbVersion != version) throw new IllegalArgumentException("Version mismatched, deserializing %s, currently %s".formatted(version, bbVersion));
-
-        for (Field f: c.getDeclaredFields()) {
-            if (f.isAnnotationPresent(BinarySerialize.Exclude.class)) continue;
-            f.trySetAccessible();
-
-            try {
-                Class<?> type = f.getType();
-
-                if (type == String.class) {
-                    f.set(obj, bb.readUtf());
-                } else if (type == int.class) {
-                    f.set(obj, bb.readInt());
-                } else if (type == short.class) {
-                    f.set(obj, bb.readShort());
-                } else if (Enum.class.isAssignableFrom(type)) {
-                    Class<? extends Enum<?>> te = (Class<Enum<?>>) type;
-                    f.set(obj, bb.tryReadEnum(te));
-                } else {
-                    throw new RuntimeException("Unsupported type %s".formatted(type.getName()));
-                }
-            } catch (IllegalAccessException ex) {
-                throw new FieldAccessException(f, ex);
-            }
-        }
+        if (!(codecs.get(obj.getClass()) instanceof ClassCodec<?> codec))
+            throw new IllegalArgumentException("Type %s is immutable, use deserialize(Class, WrappedByteBuffer) instead".formatted(obj.getClass().getName()));
+        codec.readInto(obj, bb);
     }
 
     /**
@@ -112,17 +175,110 @@ public class BinarySerializer {
      * @param type Object type
      * @param bb Source WrappedByteBuffer
      * @param <T> Object type
+     * @return Deserialized object
      * @throws DeserializeInstantiationException Error in creating instance
      */
     public <T> T deserialize(Class<T> type, WrappedByteBuffer bb) {
-        try {
-            Constructor<T> c = type.getDeclaredConstructor();
-            c.trySetAccessible();
-            T obj = c.newInstance();
-            deserialize(obj, bb);
-            return obj;
-        } catch (NoSuchMethodException | IllegalAccessException | InstantiationException | InvocationTargetException th) {
-            throw new DeserializeInstantiationException("Type %s".formatted(type.getName()), th);
+        return codec(type).read(bb);
+    }
+
+    /**
+     * Serialize objects into one buffer with an offset index
+     * @param objects Source objects
+     * @param bb Target buffer, batch will be written from its writer offset
+     * @return Provided target buffer
+     * @throws ConcurrentModificationException Collection size changed during serialization
+     * @see BinaryBatch
+     */
+    public WrappedByteBuffer serializeAll(Collection<?> objects, WrappedByteBuffer bb) {
+        int count = objects.size();
+        int start = bb.writeOffset();
+        bb.writeInt(count);
+        bb.writerOffset(Math.addExact(start + 4, Math.multiplyExact(count + 1, 4)));
+
+        int i = 0;
+        for (Object obj : objects) {
+            if (i == count)
+                throw new ConcurrentModificationException();
+            bb.writeInt(bb.writeOffset() - start, start + 4 + i * 4);
+            serialize(obj, bb);
+            i++;
         }
+        if (i != count)
+            throw new ConcurrentModificationException();
+        bb.writeInt(bb.writeOffset() - start, start + 4 + count * 4);
+        return bb;
+    }
+
+    /**
+     * Serialize objects into a growable buffer with an offset index
+     * @param objects Source objects
+     * @return Serialized
+     * @see #serializeAll(Collection, WrappedByteBuffer)
+     */
+    public WrappedByteBuffer serializeAll(Collection<?> objects) {
+        return serializeAll(objects, WrappedByteBuffer.growable());
+    }
+
+    /**
+     * Open batch at reader offset of buffer for random access
+     * @param type Record type
+     * @param bb Source buffer
+     * @return Batch view
+     * @param <T> Record type
+     * @throws SerializationException Invalid batch header
+     */
+    public <T> BinaryBatch<T> batch(Class<T> type, WrappedByteBuffer bb) {
+        return new BinaryBatch<>(this, type, bb);
+    }
+
+    /**
+     * Deserialize all records of batch at reader offset of buffer, reader offset is moved to batch end
+     * @param type Record type
+     * @param bb Source buffer
+     * @return Deserialized records
+     * @param <T> Record type
+     * @see #batch(Class, WrappedByteBuffer)
+     */
+    public <T> List<T> deserializeAll(Class<T> type, WrappedByteBuffer bb) {
+        return batch(type, bb).toList();
+    }
+
+    /**
+     * Create streaming writer with default chunk size
+     * @param out Target stream
+     * @return Writer
+     * @see BinaryStreamWriter#DEFAULT_CHUNK_SIZE
+     */
+    public BinaryStreamWriter writer(OutputStream out) {
+        return new BinaryStreamWriter(this, out, BinaryStreamWriter.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Create streaming writer with default chunk size
+     * @param channel Target channel
+     * @return Writer
+     * @see BinaryStreamWriter#DEFAULT_CHUNK_SIZE
+     */
+    public BinaryStreamWriter writer(WritableByteChannel channel) {
+        return new BinaryStreamWriter(this, channel, BinaryStreamWriter.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Create streaming reader with default chunk size
+     * @param in Source stream
+     * @return Reader
+     */
+    public BinaryStreamReader reader(InputStream in) {
+        return new BinaryStreamReader(this, in, BinaryStreamWriter.DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Create streaming reader with default chunk size
+     * @param channel Source channel
+     * @return Reader
+     */
+    public BinaryStreamReader reader(ReadableByteChannel channel) {
+        return new BinaryStreamReader(this, channel, BinaryStreamWriter.DEFAULT_CHUNK_SIZE);
     }
 }
@@ -0,0 +1,148 @@
+package cn.afternode.commons.binary;
+
+import cn.afternode.commons.serialization.SerializationException;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.function.Consumer;
+
+/**
+ * Read records written by {@link BinaryStreamWriter} from InputStream or ReadableByteChannel with bounded memory
+ * <br>
+ * Source is read in chunks, only the current record needs to be held in memory entirely
+ * @see BinarySerializer#reader(InputStream)
+ */
+public class BinaryStreamReader implements Closeable {
+    private final BinarySerializer serializer;
+    private final InputStream in;
+    private final ReadableByteChannel channel;
+    private final int chunkSize;
+    private final WrappedByteBuffer chunk;
+
+    private BinaryStreamReader(BinarySerializer serializer, InputStream in, ReadableByteChannel channel, int chunkSize) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("Chunk size must be positive, got %s".formatted(chunkSize));
+        this.serializer = serializer;
+        this.in = in;
+        this.channel = channel;
+        this.chunkSize = chunkSize;
+        this.chunk = channel == null ? new WrappedByteBuffer(chunkSize, WrappedByteBuffer.MAX_CAPACITY) : WrappedByteBuffer.direct(chunkSize, WrappedByteBuffer.MAX_CAPACITY);
+    }
+
+    /**
+     * Create reader from InputStream
+     * @param serializer Serializer, must have the same encoding as writer
+     * @param in Source stream, closed with this reader
+     * @param chunkSize Size of chunks read from source
+     */
+    public BinaryStreamReader(BinarySerializer serializer, InputStream in, int chunkSize) {
+        this(serializer, in, null, chunkSize);
+    }
+
+    /**
+     * Create reader from ReadableByteChannel
+     * @param serializer Serializer, must have the same encoding as writer
+     * @param channel Source channel, closed with this reader
+     * @param chunkSize Size of chunks read from source
+     */
+    public BinaryStreamReader(BinarySerializer serializer, ReadableByteChannel channel, int chunkSize) {
+        this(serializer, null, channel, chunkSize);
+    }
+
+    /**
+     * @return Is there another record
+     * @throws IOException Error reading source, or source ended in a record header
+     */
+    public boolean hasNext() throws IOException {
+        return require(4);
+    }
+
+    /**
+     * Read next record
+     * @param type Record type
+     * @return Deserialized record
+     * @param <T> Record type
+     * @throws EOFException No more records, or source ended in a record
+     * @throws IOException Error reading source
+     * @throws SerializationException Invalid record length
+     */
+    public <T> T read(Class<T> type) throws IOException {
+        if (!require(4))
+            throw new EOFException("No more records");
+
+        int len = chunk.readInt();
+        if (len < 0 || len > chunk.maxCapacity() - 4)
+            throw new SerializationException("Invalid record length %s".formatted(len));
+        if (!require(len))
+            throw new EOFException("Source ended in a record of %s bytes".formatted(len));
+
+        int end = chunk.readerOffset() + len;
+        T value = serializer.deserialize(type, chunk);
+        chunk.readerOffset(end);
+        return value;
+    }
+
+    /**
+     * Read all remaining records
+     * @param type Record type
+     * @param consumer Consumer of records
+     * @param <T> Record type
+     * @throws IOException Error reading source
+     */
+    public <T> void readAll(Class<T> type, Consumer<? super T> consumer) throws IOException {
+        while (hasNext())
+            consumer.accept(read(type));
+    }
+
+    /**
+     * Fill chunk until specified bytes are readable
+     * @param len Required length
+     * @return false if source ended before any byte of required length
+     * @throws EOFException Source ended within required length
+     */
+    private boolean require(int len) throws IOException {
+        int available = chunk.writeOffset() - chunk.readerOffset();
+        if (available >= len)
+            return true;
+
+        chunk.compact();
+        chunk.ensureCapacity(Math.max(len, chunkSize));
+        while (available < len) {
+            int read = fill();
+            if (read < 0) {
+                if (available == 0)
+                    return false;
+                throw new EOFException("Source ended with %s of %s bytes".formatted(available, len));
+            }
+            available += read;
+        }
+        return true;
+    }
+
+    private int fill() throws IOException {
+        int off = chunk.writeOffset();
+        int read;
+        if (in != null) {
+            read = in.read(chunk.array(), chunk.src().arrayOffset() + off, chunk.capacity() - off);
+        } else {
+            ByteBuffer view = chunk.src().duplicate().position(off).limit(chunk.capacity());
+            read = channel.read(view);
+        }
+        if (read > 0)
+            chunk.writerOffset(off + read);
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+        } else {
+            channel.close();
+        }
+    }
+}
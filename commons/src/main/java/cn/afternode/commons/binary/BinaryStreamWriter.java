@@ -0,0 +1,147 @@
+package cn.afternode.commons.binary;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Write serialized objects to OutputStream or WritableByteChannel with bounded memory
+ * <br>
+ * Each record is written as a 4-byte length and serialized content.
+ * Records are collected in a chunk buffer, which is drained to target when filled over chunk size,
+ * so memory usage is about chunk size plus the largest record
+ * @see BinaryStreamReader
+ * @see BinarySerializer#writer(OutputStream)
+ */
+public class BinaryStreamWriter implements Closeable, Flushable {
+    /**
+     * Default chunk size
+     */
+    public static final int DEFAULT_CHUNK_SIZE = WrappedByteBuffer.DEFAULT_SIZE;
+
+    private final BinarySerializer serializer;
+    private final OutputStream out;
+    private final WritableByteChannel channel;
+    private final int chunkSize;
+    private final WrappedByteBuffer chunk;
+
+    private long records = 0;
+
+    private BinaryStreamWriter(BinarySerializer serializer, OutputStream out, WritableByteChannel channel, int chunkSize) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("Chunk size must be positive, got %s".formatted(chunkSize));
+        this.serializer = serializer;
+        this.out = out;
+        this.channel = channel;
+        this.chunkSize = chunkSize;
+        this.chunk = channel == null ? new WrappedByteBuffer(chunkSize, WrappedByteBuffer.MAX_CAPACITY) : WrappedByteBuffer.direct(chunkSize, WrappedByteBuffer.MAX_CAPACITY);
+    }
+
+    /**
+     * Create writer to OutputStream
+     * @param serializer Serializer
+     * @param out Target stream, closed with this writer
+     * @param chunkSize Size of chunks written to target
+     */
+    public BinaryStreamWriter(BinarySerializer serializer, OutputStream out, int chunkSize) {
+        this(serializer, out, null, chunkSize);
+    }
+
+    /**
+     * Create writer to WritableByteChannel
+     * @param serializer Serializer
+     * @param channel Target channel, closed with this writer
+     * @param chunkSize Size of chunks written to target
+     */
+    public BinaryStreamWriter(BinarySerializer serializer, WritableByteChannel channel, int chunkSize) {
+        this(serializer, null, channel, chunkSize);
+    }
+
+    /**
+     * Serialize an object as a record
+     * @param obj Source object
+     * @return This writer
+     * @throws IOException Error writing to target
+     */
+    public BinaryStreamWriter write(Object obj) throws IOException {
+        int mark = chunk.writeOffset();
+        chunk.writeInt(0);
+        try {
+            serializer.serialize(obj, chunk);
+        } catch (RuntimeException ex) {
+            chunk.writerOffset(mark);
+            throw ex;
+        }
+        chunk.writeInt(chunk.writeOffset() - mark - 4, mark);
+        records++;
+
+        if (chunk.writeOffset() >= chunkSize)
+            drain();
+        return this;
+    }
+
+    /**
+     * Serialize all objects as records
+     * @param objects Source objects
+     * @return This writer
+     * @throws IOException Error writing to target
+     */
+    public BinaryStreamWriter writeAll(Iterable<?> objects) throws IOException {
+        for (Object o : objects)
+            write(o);
+        return this;
+    }
+
+    /**
+     * @return Count of written records
+     */
+    public long records() {
+        return records;
+    }
+
+    private void drain() throws IOException {
+        int len = chunk.writeOffset();
+        if (len == 0)
+            return;
+
+        if (out != null) {
+            out.write(chunk.array(), chunk.src().arrayOffset(), len);
+        } else {
+            ByteBuffer view = chunk.src().duplicate().position(0).limit(len);
+            while (view.hasRemaining())
+                channel.write(view);
+        }
+        chunk.clear();
+    }
+
+    /**
+     * Write collected records and flush target
+     * @throws IOException Error writing to target
+     */
+    @Override
+    public void flush() throws IOException {
+        drain();
+        if (out != null)
+            out.flush();
+    }
+
+    /**
+     * Flush and close target
+     * @throws IOException Error writing to target
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            if (out != null) {
+                out.close();
+            } else {
+                channel.close();
+            }
+        }
+    }
+}
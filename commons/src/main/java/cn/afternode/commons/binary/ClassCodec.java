@@ -0,0 +1,213 @@
+package cn.afternode.commons.binary;
+
+import cn.afternode.commons.serialization.DeserializeInstantiationException;
+import cn.afternode.commons.serialization.FieldAccessException;
+import cn.afternode.commons.serialization.SerializationException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Codec of a @BinarySerialize type, built once per class by BinarySerializer
+ * @param <T> Type
+ */
+final class ClassCodec<T> implements BinaryCodec<T> {
+    private final Class<T> type;
+    private final short version;
+    private final BinarySerializer owner;
+    private final boolean compact;
+    private final FieldCodec[] fields;
+    private final TagTable tags;
+    private final MethodHandle constructor;
+    private final Throwable constructorError;
+
+    private ClassCodec(Class<T> type, short version, BinarySerializer owner, FieldCodec[] fields, TagTable tags, MethodHandle constructor, Throwable constructorError) {
+        this.type = type;
+        this.version = version;
+        this.owner = owner;
+        this.compact = owner.isCompact();
+        this.fields = fields;
+        this.tags = tags;
+        this.constructor = constructor;
+        this.constructorError = constructorError;
+    }
+
+    /**
+     * Inspect type and build codec
+     * @param type Type
+     * @param owner Serializer for nested types
+     * @return Codec, RecordCodec for records
+     * @param <T> Type
+     * @throws IllegalArgumentException Type excluded, or invalid tags in tagged type
+     * @throws SerializationException Unsupported field type
+     */
+    static <T> BinaryCodec<T> build(Class<T> type, BinarySerializer owner) {
+        if (type.isAnnotationPresent(BinarySerialize.Exclude.class)) throw new IllegalArgumentException("Type %s was excluded from serialization".formatted(type.getName()));
+
+        short version = 0;
+        boolean tagged = false;
+        if (type.isAnnotationPresent(BinarySerialize.class)) {
+            BinarySerialize annotation = type.getAnnotation(BinarySerialize.class);
+            version = annotation.version();
+            tagged = annotation.tagged();
+        }
+
+        if (type.isRecord())
+            return RecordCodec.build(type, version, tagged, owner);
+
+        List<FieldCodec> fields = new ArrayList<>();
+        for (Field f: type.getDeclaredFields()) {
+            if (f.isAnnotationPresent(BinarySerialize.Exclude.class)) continue;
+            if (Modifier.isStatic(f.getModifiers()) || f.isSynthetic()) continue;
+            fields.add(FieldCodec.of(f, owner));
+        }
+
+        MethodHandle constructor = null;
+        Throwable constructorError = null;
+        try {
+            Constructor<T> c = type.getDeclaredConstructor();
+            c.trySetAccessible();
+            constructor = MethodHandles.lookup().unreflectConstructor(c).asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            constructorError = ex;
+        }
+
+        FieldCodec[] codecs = fields.toArray(new FieldCodec[0]);
+        TagTable tags = null;
+        if (tagged) {
+            Field[] declared = new Field[codecs.length];
+            for (int i = 0; i < codecs.length; i++)
+                declared[i] = codecs[i].field;
+            tags = TagTable.build(type, declared, owner.isCompact());
+        }
+
+        return new ClassCodec<>(type, version, owner, codecs, tags, constructor, constructorError);
+    }
+
+    @Override
+    public void write(T value, WrappedByteBuffer bb) {
+        writeVersion(bb, version, compact);
+
+        FieldCodec current = null;
+        try {
+            if (tags == null) {
+                for (FieldCodec f : fields) {
+                    current = f;
+                    f.write(value, bb);
+                }
+            } else {
+                for (int i = 0; i < fields.length; i++) {
+                    current = fields[i];
+                    int mark = tags.beginField(bb, i);
+                    current.write(value, bb);
+                    tags.endField(bb, mark);
+                }
+                TagTable.writeEnd(bb);
+            }
+        } catch (Throwable t) {
+            throw rethrow(current, t);
+        }
+    }
+
+    /**
+     * Deserialize fields to existing object, then apply migrations if payload is older
+     * <br>
+     * Fields missing in payload keep their current values
+     * @param obj Target object
+     * @param bb Source buffer
+     * @throws IllegalArgumentException Version mismatched in untagged type
+     * @throws IllegalStateException Migration replaced target object
+     */
+    void readInto(Object obj, WrappedByteBuffer bb) {
+        short from = readFields(obj, bb);
+        if (from < version && owner.migrate(type, type.cast(obj), from, version) != obj)
+            throw new IllegalStateException("Migration of %s returned another instance, mutable types must be migrated in place".formatted(type.getName()));
+    }
+
+    private short readFields(Object obj, WrappedByteBuffer bb) {
+        short from = readVersion(bb, version, compact, tags != null);
+
+        FieldCodec current = null;
+        try {
+            if (tags == null) {
+                for (FieldCodec f : fields) {
+                    current = f;
+                    f.read(obj, bb);
+                }
+            } else {
+                int i;
+                while ((i = tags.nextField(bb)) >= 0) {
+                    current = fields[i];
+                    int end = tags.valueEnd(bb, i);
+                    current.read(obj, bb);
+                    TagTable.skipTo(bb, end);
+                }
+            }
+        } catch (Throwable t) {
+            throw rethrow(current, t);
+        }
+        return from;
+    }
+
+    @Override
+    public T read(WrappedByteBuffer bb) {
+        T obj = newInstance();
+        short from = readFields(obj, bb);
+        return from < version ? owner.migrate(type, obj, from, version) : obj;
+    }
+
+    /**
+     * Create instance with no-arg constructor
+     * @return Created instance
+     * @throws DeserializeInstantiationException Error in creating instance
+     */
+    T newInstance() {
+        if (constructor == null)
+            throw new DeserializeInstantiationException("Type %s".formatted(type.getName()), constructorError);
+
+        try {
+            return type.cast(constructor.invokeExact());
+        } catch (Throwable t) {
+            throw new DeserializeInstantiationException("Type %s".formatted(type.getName()), t);
+        }
+    }
+
+    static void writeVersion(WrappedByteBuffer bb, short version, boolean compact) {
+        if (compact) {
+            bb.writeZigZagInt(version);
+        } else {
+            bb.writeShort(version);
+        }
+    }
+
+    /**
+     * Read version of payload
+     * @param bb Source buffer
+     * @param version Current version
+     * @param compact Compact encoding
+     * @param tagged Tagged layout, accepts any version
+     * @return Payload version
+     * @throws IllegalArgumentException Version mismatched in untagged type
+     */
+    static short readVersion(WrappedByteBuffer bb, short version, boolean compact, boolean tagged) {
+        short bbVersion = compact ? (short) bb.readZigZagInt() : bb.readShort();
+        if (!tagged && bbVersion != version) throw new IllegalArgumentException("Version mismatched, deserializing %s, currently %s".formatted(version, bbVersion));
+        return bbVersion;
+    }
+
+    private static RuntimeException rethrow(FieldCodec f, Throwable t) {
+        if (t instanceof RuntimeException ex)
+            return ex;
+        if (t instanceof Error err)
+            throw err;
+        if (t instanceof IllegalAccessException ex)
+            return new FieldAccessException(f == null ? null : f.field, ex);
+        return new SerializationException("Error serializing field %s".formatted(f == null ? "(null)" : f.field), t);
+    }
+}
@@ -0,0 +1,269 @@
+package cn.afternode.commons.binary;
+
+import cn.afternode.commons.serialization.FieldAccessException;
+import cn.afternode.commons.serialization.SerializationException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * Field accessor with precomputed method handles
+ * <br>
+ * Handles are adapted to (Object) receiver and exact field type, so primitive fields are never boxed
+ */
+abstract class FieldCodec {
+    final Field field;
+    final MethodHandle getter;
+    final MethodHandle setter;
+
+    FieldCodec(Field field, Class<?> exposed) {
+        this.field = field;
+        field.trySetAccessible();
+
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            this.getter = lookup.unreflectGetter(field).asType(MethodType.methodType(exposed, Object.class));
+            this.setter = lookup.unreflectSetter(field).asType(MethodType.methodType(void.class, Object.class, exposed));
+        } catch (IllegalAccessException ex) {
+            throw new FieldAccessException(field, ex);
+        }
+    }
+
+    abstract void write(Object obj, WrappedByteBuffer bb) throws Throwable;
+
+    abstract void read(Object obj, WrappedByteBuffer bb) throws Throwable;
+
+    /**
+     * Create codec for field
+     * @param f Field
+     * @param owner Serializer for nested types
+     * @return Codec
+     * @throws SerializationException Unsupported type
+     */
+    static FieldCodec of(Field f, BinarySerializer owner) {
+        Class<?> type = f.getType();
+        boolean compact = owner.isCompact();
+        if (type == boolean.class) return new BooleanField(f);
+        if (type == byte.class) return new ByteField(f);
+        if (type == char.class) return compact ? new VarCharField(f) : new CharField(f);
+        if (type == short.class) return compact ? new VarShortField(f) : new ShortField(f);
+        if (type == int.class) return compact ? new VarIntField(f) : new IntField(f);
+        if (type == long.class) return compact ? new VarLongField(f) : new LongField(f);
+        if (type == float.class) return new FloatField(f);
+        if (type == double.class) return new DoubleField(f);
+        return new ReferenceField(f, ValueCodecs.of(f.getGenericType(), owner));
+    }
+
+    static final class BooleanField extends FieldCodec {
+        BooleanField(Field field) {
+            super(field, boolean.class);
+        }
+
+        @Override
+        void write(Object obj, WrappedByteBuffer bb) throws Throwable {
+            bb.writeBoolean((boolean) getter.invokeExact(obj));
+        }
+
+        @Override
+        void read(Object obj, WrappedByteBuffer bb) throws Throwable {
+            setter.invokeExact(obj, bb.readBoolean());
+        }
+    }
+
+    static final class ByteField extends FieldCodec {
+        ByteField(Field field) {
+            super(field, byte.class);
+        }
+
+        @Override
+        void write(Object obj, WrappedByteBuffer bb) throws Throwable {
+            bb.writeByte((byte) getter.invokeExact(obj));
+        }
+
+        @Override
+        void read(Object obj, WrappedByteBuffer bb) throws Throwable {
+            setter.invokeExact(obj, bb.readByte());
+        }
+    }
+
+    static final class CharField extends FieldCodec {
+        CharField(Field field) {
+            super(field, char.class);
+        }
+
+        @Override
+        void write(Object obj, WrappedByteBuffer bb) throws Throwable {
+            bb.writeChar((char) getter.invokeExact(obj));
+        }
+
+        @Override
+        void read(Object obj, WrappedByteBuffer bb) throws Throwable {
+            setter.invokeExact(obj, bb.readChar());
+        }
+    }
+
+    static final class ShortField extends FieldCodec {
+        ShortField(Field field) {
+            super(field, short.class);
+        }
+
+        @Override
+        void write(Object obj, WrappedByteBuffer bb) throws Throwable {
+            bb.writeShort((short) getter.invokeExact(obj));
+        }
+
+        @Override
+        void read(Object obj, WrappedByteBuffer bb) throws Throwable {
+            setter.invokeExact(obj, bb.readShort());
+        }
+    }
+
+    static final class IntField extends FieldCodec {
+        IntField(Field field) {
+            super(field, int.class);
+        }
+
+        @Override
+        void write(Object obj, WrappedByteBuffer bb) throws Throwable {
+            bb.writeInt((int) getter.invokeExact(obj));
+        }
+
+        @Override
+        void read(Object obj, WrappedByteBuffer bb) throws Throwable {
+            setter.invokeExact(obj, bb.readInt());
+        }
+    }
+
+    static final class LongField extends FieldCodec {
+        LongField(Field field) {
+            super(field, long.class);
+        }
+
+        @Override
+        void write(Object obj, WrappedByteBuffer bb) throws Throwable {
+            bb.writeLong((long) getter.invokeExact(obj));
+        }
+
+        @Override
+        void read(Object obj, WrappedByteBuffer bb) throws Throwable {
+            setter.invokeExact(obj, bb.readLong());
+        }
+    }
+
+    static final class VarCharField extends FieldCodec {
+        VarCharField(Field field) {
+            super(field, char.class);
+        }
+
+        @Override
+        void write(Object obj, WrappedByteBuffer bb) throws Throwable {
+            bb.writeVarInt((char) getter.invokeExact(obj));
+        }
+
+        @Override
+        void read(Object obj, WrappedByteBuffer bb) throws Throwable {
+            setter.invokeExact(obj, (char) bb.readVarInt());
+        }
+    }
+
+    static final class VarShortField extends FieldCodec {
+        VarShortField(Field field) {
+            super(field, short.class);
+        }
+
+        @Override
+        void write(Object obj, WrappedByteBuffer bb) throws Throwable {
+            bb.writeZigZagInt((short) getter.invokeExact(obj));
+        }
+
+        @Override
+        void read(Object obj, WrappedByteBuffer bb) throws Throwable {
+            setter.invokeExact(obj, (short) bb.readZigZagInt());
+        }
+    }
+
+    static final class VarIntField extends FieldCodec {
+        VarIntField(Field field) {
+            super(field, int.class);
+        }
+
+        @Override
+        void write(Object obj, WrappedByteBuffer bb) throws Throwable {
+            bb.writeZigZagInt((int) getter.invokeExact(obj));
+        }
+
+        @Override
+        void read(Object obj, WrappedByteBuffer bb) throws Throwable {
+            setter.invokeExact(obj, bb.readZigZagInt());
+        }
+    }
+
+    static final class VarLongField extends FieldCodec {
+        VarLongField(Field field) {
+            super(field, long.class);
+        }
+
+        @Override
+        void write(Object obj, WrappedByteBuffer bb) throws Throwable {
+            bb.writeZigZagLong((long) getter.invokeExact(obj));
+        }
+
+        @Override
+        void read(Object obj, WrappedByteBuffer bb) throws Throwable {
+            setter.invokeExact(obj, bb.readZigZagLong());
+        }
+    }
+
+    static final class FloatField extends FieldCodec {
+        FloatField(Field field) {
+            super(field, float.class);
+        }
+
+        @Override
+        void write(Object obj, WrappedByteBuffer bb) throws Throwable {
+            bb.writeFloat((float) getter.invokeExact(obj));
+        }
+
+        @Override
+        void read(Object obj, WrappedByteBuffer bb) throws Throwable {
+            setter.invokeExact(obj, bb.readFloat());
+        }
+    }
+
+    static final class DoubleField extends FieldCodec {
+        DoubleField(Field field) {
+            super(field, double.class);
+        }
+
+        @Override
+        void write(Object obj, WrappedByteBuffer bb) throws Throwable {
+            bb.writeDouble((double) getter.invokeExact(obj));
+        }
+
+        @Override
+        void read(Object obj, WrappedByteBuffer bb) throws Throwable {
+            setter.invokeExact(obj, bb.readDouble());
+        }
+    }
+
+    static final class ReferenceField extends FieldCodec {
+        private final BinaryCodec<Object> codec;
+
+        ReferenceField(Field field, BinaryCodec<Object> codec) {
+            super(field, Object.class);
+            this.codec = codec;
+        }
+
+        @Override
+        void write(Object obj, WrappedByteBuffer bb) throws Throwable {
+            codec.write((Object) getter.invokeExact(obj), bb);
+        }
+
+        @Override
+        void read(Object obj, WrappedByteBuffer bb) throws Throwable {
+            setter.invokeExact(obj, codec.read(bb));
+        }
+    }
+}
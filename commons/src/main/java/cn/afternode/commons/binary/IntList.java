@@ -0,0 +1,160 @@
+package cn.afternode.commons.binary;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Growable list of primitive int, without boxing elements
+ * <br>
+ * Used to read int sequences from buffers repeatedly with one reused backing array
+ * @see WrappedByteBuffer#readIntList(IntList)
+ */
+public class IntList {
+    private int[] data;
+    private int size = 0;
+
+    /**
+     * Create with default capacity
+     */
+    public IntList() {
+        this(16);
+    }
+
+    /**
+     * Create with initial capacity
+     * @param capacity Initial capacity
+     */
+    public IntList(int capacity) {
+        this.data = new int[capacity];
+    }
+
+    /**
+     * Create with copy of elements
+     * @param values Elements
+     * @return Created list
+     */
+    public static IntList of(int... values) {
+        IntList list = new IntList(values.length);
+        list.addAll(values, 0, values.length);
+        return list;
+    }
+
+    /**
+     * Make sure the list can hold specified elements without expanding
+     * @param capacity Required capacity
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length)
+            data = Arrays.copyOf(data, Math.max(capacity, data.length + (data.length >> 1) + 1));
+    }
+
+    /**
+     * Append an element
+     * @param value Element
+     */
+    public void add(int value) {
+        ensureCapacity(size + 1);
+        data[size++] = value;
+    }
+
+    /**
+     * Append elements
+     * @param values Source array
+     * @param off Source offset
+     * @param len Element count
+     */
+    public void addAll(int[] values, int off, int len) {
+        ensureCapacity(size + len);
+        System.arraycopy(values, off, data, size, len);
+        size += len;
+    }
+
+    /**
+     * @param index Index
+     * @return Element at index
+     * @throws IndexOutOfBoundsException Index out of size
+     */
+    public int get(int index) {
+        Objects.checkIndex(index, size);
+        return data[index];
+    }
+
+    /**
+     * @param index Index
+     * @param value New element
+     * @throws IndexOutOfBoundsException Index out of size
+     */
+    public void set(int index, int value) {
+        Objects.checkIndex(index, size);
+        data[index] = value;
+    }
+
+    /**
+     * @return Element count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Is this list empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove all elements, backing array is kept
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Get backing array, only elements before {@link #size()} are valid
+     * <br>
+     * The array is replaced when the list expands
+     * @return Backing array
+     */
+    public int[] elements() {
+        return data;
+    }
+
+    /**
+     * Set element count after writing to {@link #elements()} directly
+     * @param size New size
+     * @throws IndexOutOfBoundsException Size exceeds capacity
+     */
+    void setSize(int size) {
+        if (size < 0 || size > data.length)
+            throw new IndexOutOfBoundsException("Size %s out of capacity %s".formatted(size, data.length));
+        this.size = size;
+    }
+
+    /**
+     * @return Copy of elements
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof IntList other)) return false;
+        return Arrays.equals(data, 0, size, other.data, 0, other.size);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 1;
+        for (int i = 0; i < size; i++)
+            h = 31 * h + data[i];
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
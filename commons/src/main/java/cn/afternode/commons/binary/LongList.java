@@ -0,0 +1,160 @@
+package cn.afternode.commons.binary;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Growable list of primitive long, without boxing elements
+ * <br>
+ * Used to read long sequences from buffers repeatedly with one reused backing array
+ * @see WrappedByteBuffer#readLongList(LongList)
+ */
+public class LongList {
+    private long[] data;
+    private int size = 0;
+
+    /**
+     * Create with default capacity
+     */
+    public LongList() {
+        this(16);
+    }
+
+    /**
+     * Create with initial capacity
+     * @param capacity Initial capacity
+     */
+    public LongList(int capacity) {
+        this.data = new long[capacity];
+    }
+
+    /**
+     * Create with copy of elements
+     * @param values Elements
+     * @return Created list
+     */
+    public static LongList of(long... values) {
+        LongList list = new LongList(values.length);
+        list.addAll(values, 0, values.length);
+        return list;
+    }
+
+    /**
+     * Make sure the list can hold specified elements without expanding
+     * @param capacity Required capacity
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length)
+            data = Arrays.copyOf(data, Math.max(capacity, data.length + (data.length >> 1) + 1));
+    }
+
+    /**
+     * Append an element
+     * @param value Element
+     */
+    public void add(long value) {
+        ensureCapacity(size + 1);
+        data[size++] = value;
+    }
+
+    /**
+     * Append elements
+     * @param values Source array
+     * @param off Source offset
+     * @param len Element count
+     */
+    public void addAll(long[] values, int off, int len) {
+        ensureCapacity(size + len);
+        System.arraycopy(values, off, data, size, len);
+        size += len;
+    }
+
+    /**
+     * @param index Index
+     * @return Element at index
+     * @throws IndexOutOfBoundsException Index out of size
+     */
+    public long get(int index) {
+        Objects.checkIndex(index, size);
+        return data[index];
+    }
+
+    /**
+     * @param index Index
+     * @param value New element
+     * @throws IndexOutOfBoundsException Index out of size
+     */
+    public void set(int index, long value) {
+        Objects.checkIndex(index, size);
+        data[index] = value;
+    }
+
+    /**
+     * @return Element count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Is this list empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Remove all elements, backing array is kept
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Get backing array, only elements before {@link #size()} are valid
+     * <br>
+     * The array is replaced when the list expands
+     * @return Backing array
+     */
+    public long[] elements() {
+        return data;
+    }
+
+    /**
+     * Set element count after writing to {@link #elements()} directly
+     * @param size New size
+     * @throws IndexOutOfBoundsException Size exceeds capacity
+     */
+    void setSize(int size) {
+        if (size < 0 || size > data.length)
+            throw new IndexOutOfBoundsException("Size %s out of capacity %s".formatted(size, data.length));
+        this.size = size;
+    }
+
+    /**
+     * @return Copy of elements
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LongList other)) return false;
+        return Arrays.equals(data, 0, size, other.data, 0, other.size);
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 1;
+        for (int i = 0; i < size; i++)
+            h = 31 * h + Long.hashCode(data[i]);
+        return h;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,57 @@
+package cn.afternode.commons.binary;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * WrappedByteBuffer over a memory-mapped file region
+ * <br>
+ * Mapped buffers are not growable
+ * @see WrappedByteBuffer#mapped(Path, int)
+ */
+public class MappedWrappedByteBuffer extends WrappedByteBuffer implements Closeable {
+    private final MappedByteBuffer mapped;
+    private final FileChannel channel;
+
+    MappedWrappedByteBuffer(MappedByteBuffer mapped, FileChannel channel) {
+        super(mapped);
+        this.mapped = mapped;
+        this.channel = channel;
+    }
+
+    /**
+     * Write changes in whole mapped region to storage device
+     * @see MappedByteBuffer#force()
+     */
+    public void flush() {
+        mapped.force();
+    }
+
+    /**
+     * Write changes in specified range to storage device
+     * @param off Range offset
+     * @param len Range length
+     * @see MappedByteBuffer#force(int, int)
+     */
+    public void flush(int off, int len) {
+        mapped.force(off, len);
+    }
+
+    /**
+     * Flush and close the file channel
+     * <br>
+     * The mapping stays readable until this buffer is garbage collected
+     * @throws IOException Error closing channel
+     */
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen())
+            return;
+
+        mapped.force();
+        channel.close();
+    }
+}
@@ -0,0 +1,147 @@
+package cn.afternode.commons.binary;
+
+import cn.afternode.commons.serialization.DeserializeInstantiationException;
+import cn.afternode.commons.serialization.SerializationException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.RecordComponent;
+
+/**
+ * Codec of a record type, instances are created with canonical constructor
+ * <br>
+ * Excluded components are not written, and receive default values in deserialization.
+ * In tagged layout, components missing in payload receive default values too
+ * @param <T> Type
+ */
+final class RecordCodec<T> implements BinaryCodec<T> {
+    private final Class<T> type;
+    private final short version;
+    private final BinarySerializer owner;
+    private final boolean compact;
+    private final MethodHandle[] accessors;
+    private final BinaryCodec<Object>[] codecs;
+    private final TagTable tags;
+    private final Object[] defaults;
+    private final MethodHandle constructor;
+
+    private RecordCodec(Class<T> type, short version, BinarySerializer owner, MethodHandle[] accessors, BinaryCodec<Object>[] codecs, TagTable tags, Object[] defaults, MethodHandle constructor) {
+        this.type = type;
+        this.version = version;
+        this.owner = owner;
+        this.compact = owner.isCompact();
+        this.accessors = accessors;
+        this.tags = tags;
+        this.codecs = codecs;
+        this.defaults = defaults;
+        this.constructor = constructor;
+    }
+
+    /**
+     * Inspect record type and build codec
+     * @param type Record type
+     * @param version Version marker
+     * @param tagged Use tagged layout
+     * @param owner Serializer for nested types
+     * @return Codec
+     * @param <T> Type
+     * @throws SerializationException Unsupported component type
+     * @throws IllegalArgumentException Invalid tags in tagged type
+     */
+    @SuppressWarnings("unchecked")
+    static <T> RecordCodec<T> build(Class<T> type, short version, boolean tagged, BinarySerializer owner) {
+        RecordComponent[] components = type.getRecordComponents();
+        MethodHandle[] accessors = new MethodHandle[components.length];
+        BinaryCodec<Object>[] codecs = new BinaryCodec[components.length];
+        Object[] defaults = new Object[components.length];
+        Class<?>[] types = new Class[components.length];
+        Field[] fields = new Field[components.length];
+
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            for (int i = 0; i < components.length; i++) {
+                RecordComponent rc = components[i];
+                types[i] = rc.getType();
+                defaults[i] = rc.getType().isPrimitive() ? Array.get(Array.newInstance(rc.getType(), 1), 0) : null;
+                if (isExcluded(type, rc))
+                    continue;
+
+                fields[i] = type.getDeclaredField(rc.getName());
+                Method accessor = rc.getAccessor();
+                accessor.trySetAccessible();
+                accessors[i] = lookup.unreflect(accessor).asType(MethodType.methodType(Object.class, Object.class));
+                codecs[i] = ValueCodecs.of(rc.getGenericType(), owner);
+            }
+
+            Constructor<T> c = type.getDeclaredConstructor(types);
+            c.trySetAccessible();
+            MethodHandle constructor = lookup.unreflectConstructor(c)
+                    .asSpreader(Object[].class, components.length)
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+            TagTable tags = tagged ? TagTable.build(type, fields, owner.isCompact()) : null;
+            return new RecordCodec<>(type, version, owner, accessors, codecs, tags, defaults, constructor);
+        } catch (NoSuchMethodException | NoSuchFieldException | IllegalAccessException ex) {
+            throw new DeserializeInstantiationException("Type %s".formatted(type.getName()), ex);
+        }
+    }
+
+    private static boolean isExcluded(Class<?> type, RecordComponent rc) {
+        try {
+            return type.getDeclaredField(rc.getName()).isAnnotationPresent(BinarySerialize.Exclude.class);
+        } catch (NoSuchFieldException ex) {
+            return false;
+        }
+    }
+
+    @Override
+    public void write(T value, WrappedByteBuffer bb) {
+        ClassCodec.writeVersion(bb, version, compact);
+
+        try {
+            for (int i = 0; i < codecs.length; i++) {
+                if (codecs[i] == null) continue;
+                int mark = tags == null ? -1 : tags.beginField(bb, i);
+                codecs[i].write((Object) accessors[i].invokeExact((Object) value), bb);
+                if (tags != null) tags.endField(bb, mark);
+            }
+            if (tags != null) TagTable.writeEnd(bb);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable t) {
+            throw new SerializationException("Error serializing record %s".formatted(type.getName()), t);
+        }
+    }
+
+    @Override
+    public T read(WrappedByteBuffer bb) {
+        short from = ClassCodec.readVersion(bb, version, compact, tags != null);
+
+        Object[] args = defaults.clone();
+        if (tags == null) {
+            for (int i = 0; i < codecs.length; i++) {
+                if (codecs[i] == null) continue;
+                args[i] = codecs[i].read(bb);
+            }
+        } else {
+            int i;
+            while ((i = tags.nextField(bb)) >= 0) {
+                int end = tags.valueEnd(bb, i);
+                args[i] = codecs[i].read(bb);
+                TagTable.skipTo(bb, end);
+            }
+        }
+
+        T value;
+        try {
+            value = type.cast((Object) constructor.invokeExact(args));
+        } catch (Throwable t) {
+            throw new DeserializeInstantiationException("Type %s".formatted(type.getName()), t);
+        }
+        return from < version ? owner.migrate(type, value, from, version) : value;
+    }
+}
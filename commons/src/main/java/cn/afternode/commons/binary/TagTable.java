@@ -0,0 +1,148 @@
+package cn.afternode.commons.binary;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+/**
+ * Field ids and wire types of a tagged type
+ * <br>
+ * Tagged layout: version, then (VarInt key, value) for each field, terminated by key 0.
+ * Key is field id shifted left by 3 bits, OR wire type
+ * @see BinarySerialize#tagged()
+ */
+final class TagTable {
+    static final int MAX_TAG = (1 << 28) - 1;
+
+    private final int[] keys;
+    private final WireType[] wires;
+    private final int[] sortedTags;
+    private final int[] sortedIndex;
+
+    private TagTable(int[] keys, WireType[] wires, int[] sortedTags, int[] sortedIndex) {
+        this.keys = keys;
+        this.wires = wires;
+        this.sortedTags = sortedTags;
+        this.sortedIndex = sortedIndex;
+    }
+
+    /**
+     * Build table from fields
+     * @param type Declaring type
+     * @param fields Serialized fields, null elements are not serialized
+     * @param compact Compact encoding
+     * @return Table
+     * @throws IllegalArgumentException Missing, invalid or duplicated tag
+     */
+    static TagTable build(Class<?> type, Field[] fields, boolean compact) {
+        int[] keys = new int[fields.length];
+        WireType[] wires = new WireType[fields.length];
+        long[] pairs = new long[fields.length];
+        int count = 0;
+
+        for (int i = 0; i < fields.length; i++) {
+            Field f = fields[i];
+            if (f == null) continue;
+
+            BinarySerialize.Tag tag = f.getAnnotation(BinarySerialize.Tag.class);
+            if (tag == null)
+                throw new IllegalArgumentException("Field %s of tagged type %s has no @Tag".formatted(f.getName(), type.getName()));
+            if (tag.value() < 1 || tag.value() > MAX_TAG)
+                throw new IllegalArgumentException("Tag %s of field %s out of range [1, %s]".formatted(tag.value(), f.getName(), MAX_TAG));
+
+            wires[i] = WireType.of(f.getType(), compact);
+            keys[i] = tag.value() << 3 | wires[i].ordinal();
+            pairs[count++] = (long) tag.value() << 32 | i;
+        }
+
+        long[] sorted = Arrays.copyOf(pairs, count);
+        Arrays.sort(sorted);
+        int[] sortedTags = new int[count];
+        int[] sortedIndex = new int[count];
+        for (int i = 0; i < count; i++) {
+            sortedTags[i] = (int) (sorted[i] >>> 32);
+            sortedIndex[i] = (int) sorted[i];
+            if (i > 0 && sortedTags[i] == sortedTags[i - 1])
+                throw new IllegalArgumentException("Duplicated tag %s in type %s".formatted(sortedTags[i], type.getName()));
+        }
+        return new TagTable(keys, wires, sortedTags, sortedIndex);
+    }
+
+    /**
+     * Write key of field
+     * @param bb Target buffer
+     * @param index Field index
+     * @return Offset of length placeholder, or -1 if field is not length-delimited
+     * @see #endField(WrappedByteBuffer, int)
+     */
+    int beginField(WrappedByteBuffer bb, int index) {
+        bb.writeVarInt(keys[index]);
+        if (wires[index] != WireType.LENGTH_DELIMITED)
+            return -1;
+        int mark = bb.writeOffset();
+        bb.writeInt(0);
+        return mark;
+    }
+
+    /**
+     * Fill length placeholder of field
+     * @param bb Target buffer
+     * @param mark Value returned by {@link #beginField(WrappedByteBuffer, int)}
+     */
+    void endField(WrappedByteBuffer bb, int mark) {
+        if (mark >= 0)
+            bb.writeInt(bb.writeOffset() - mark - 4, mark);
+    }
+
+    /**
+     * Write end of fields
+     * @param bb Target buffer
+     */
+    static void writeEnd(WrappedByteBuffer bb) {
+        bb.writeVarInt(0);
+    }
+
+    /**
+     * Read to next known field, unknown fields and fields with changed wire type are skipped
+     * @param bb Source buffer
+     * @return Field index, or -1 if end of fields reached
+     */
+    int nextField(WrappedByteBuffer bb) {
+        while (true) {
+            int key = bb.readVarInt();
+            if (key == 0)
+                return -1;
+
+            WireType wire = WireType.ofKey(key);
+            int found = Arrays.binarySearch(sortedTags, key >>> 3);
+            if (found >= 0) {
+                int index = sortedIndex[found];
+                if (wires[index] == wire)
+                    return index;
+            }
+            wire.skip(bb);
+        }
+    }
+
+    /**
+     * Read length of field returned by {@link #nextField(WrappedByteBuffer)}
+     * @param bb Source buffer
+     * @param index Field index
+     * @return Reader offset after the value, or -1 if field is not length-delimited
+     */
+    int valueEnd(WrappedByteBuffer bb, int index) {
+        if (wires[index] != WireType.LENGTH_DELIMITED)
+            return -1;
+        int len = bb.readInt();
+        return bb.readerOffset() + len;
+    }
+
+    /**
+     * Move reader to end of value, so values written by a wider type are not misread
+     * @param bb Source buffer
+     * @param end Value returned by {@link #valueEnd(WrappedByteBuffer, int)}
+     */
+    static void skipTo(WrappedByteBuffer bb, int end) {
+        if (end >= 0)
+            bb.readerOffset(end);
+    }
+}
@@ -0,0 +1,84 @@
+package cn.afternode.commons.binary;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size cache of decoded strings keyed by their UTF-8 bytes
+ * <br>
+ * A hit returns the cached instance without any allocation, suitable for highly repetitive values like world names and permission nodes.
+ * Colliding entries simply replace each other, so memory stays bounded.
+ * <br>
+ * Safe for concurrent use, entries are immutable
+ * @see WrappedByteBuffer#readUtf(Utf8InternTable)
+ */
+public class Utf8InternTable {
+    private record Entry(byte[] key, String value) {}
+
+    private final Entry[] slots;
+    private final int mask;
+    private final int maxLength;
+
+    /**
+     * Primary constructor
+     * @param size Slot count, rounded up to power of 2
+     * @param maxLength Strings longer than this (in bytes) are decoded without caching
+     */
+    public Utf8InternTable(int size, int maxLength) {
+        int n = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+        this.slots = new Entry[n];
+        this.mask = n - 1;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Create with 1024 slots and 64 bytes max length
+     */
+    public Utf8InternTable() {
+        this(1024, 64);
+    }
+
+    /**
+     * Get string of UTF-8 bytes in buffer, decode and cache on miss
+     * @param bb Source buffer
+     * @param off Offset
+     * @param len Length in bytes
+     * @return Result string
+     */
+    public String intern(WrappedByteBuffer bb, int off, int len) {
+        if (len > maxLength)
+            return bb.decodeUtf(off, len);
+
+        int h = 1;
+        for (int i = 0; i < len; i++) {
+            h = 31 * h + bb.readByte(off + i);
+        }
+        int slot = (h ^ (h >>> 16)) & mask;
+
+        Entry e = slots[slot];
+        if (e != null && matches(e.key, bb, off, len))
+            return e.value;
+
+        String value = bb.decodeUtf(off, len);
+        byte[] key = new byte[len];
+        bb.readBytes(key, off, len);
+        slots[slot] = new Entry(key, value);
+        return value;
+    }
+
+    private static boolean matches(byte[] key, WrappedByteBuffer bb, int off, int len) {
+        if (key.length != len)
+            return false;
+        for (int i = 0; i < len; i++) {
+            if (key[i] != bb.readByte(off + i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Remove all cached strings
+     */
+    public void clear() {
+        Arrays.fill(slots, null);
+    }
+}
@@ -0,0 +1,327 @@
+package cn.afternode.commons.binary;
+
+import cn.afternode.commons.serialization.DeserializeInstantiationException;
+import cn.afternode.commons.serialization.SerializationException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.*;
+import java.util.*;
+
+/**
+ * Value codecs for field/component/element types
+ * <br>
+ * Strings, enums and primitives are written without null marker, other reference values are prefixed with a presence byte
+ */
+final class ValueCodecs {
+    private ValueCodecs() {}
+
+    static final BinaryCodec<Object> BOOLEAN = codec((v, bb) -> bb.writeBoolean((Boolean) v), WrappedByteBuffer::readBoolean);
+    static final BinaryCodec<Object> BYTE = codec((v, bb) -> bb.writeByte((Byte) v), WrappedByteBuffer::readByte);
+    static final BinaryCodec<Object> CHAR = codec((v, bb) -> bb.writeChar((Character) v), WrappedByteBuffer::readChar);
+    static final BinaryCodec<Object> SHORT = codec((v, bb) -> bb.writeShort((Short) v), WrappedByteBuffer::readShort);
+    static final BinaryCodec<Object> INT = codec((v, bb) -> bb.writeInt((Integer) v), WrappedByteBuffer::readInt);
+    static final BinaryCodec<Object> LONG = codec((v, bb) -> bb.writeLong((Long) v), WrappedByteBuffer::readLong);
+    static final BinaryCodec<Object> FLOAT = codec((v, bb) -> bb.writeFloat((Float) v), WrappedByteBuffer::readFloat);
+    static final BinaryCodec<Object> DOUBLE = codec((v, bb) -> bb.writeDouble((Double) v), WrappedByteBuffer::readDouble);
+    static final BinaryCodec<Object> STRING = codec((v, bb) -> bb.writeUtf((String) v), WrappedByteBuffer::readUtf);
+    static final BinaryCodec<Object> UUID = codec((v, bb) -> bb.writeUUID((java.util.UUID) v), WrappedByteBuffer::readUUID);
+    static final BinaryCodec<Object> INT_LIST = codec((v, bb) -> bb.writeIntList((IntList) v), WrappedByteBuffer::readIntList);
+    static final BinaryCodec<Object> LONG_LIST = codec((v, bb) -> bb.writeLongList((LongList) v), WrappedByteBuffer::readLongList);
+
+    static final BinaryCodec<Object> VAR_CHAR = codec((v, bb) -> bb.writeVarInt((Character) v), bb -> (char) bb.readVarInt());
+    static final BinaryCodec<Object> VAR_SHORT = codec((v, bb) -> bb.writeZigZagInt((Short) v), bb -> (short) bb.readZigZagInt());
+    static final BinaryCodec<Object> VAR_INT = codec((v, bb) -> bb.writeZigZagInt((Integer) v), WrappedByteBuffer::readZigZagInt);
+    static final BinaryCodec<Object> VAR_LONG = codec((v, bb) -> bb.writeZigZagLong((Long) v), WrappedByteBuffer::readZigZagLong);
+    static final BinaryCodec<Object> VAR_STRING = codec((v, bb) -> bb.writeVarUtf((String) v), WrappedByteBuffer::readVarUtf);
+
+    /**
+     * Resolve codec for a declared type
+     * @param type Declared (generic) type
+     * @param owner Serializer for nested types
+     * @return Codec, nullable unless type is primitive, String or enum
+     * @throws SerializationException Unsupported type
+     */
+    static BinaryCodec<Object> of(Type type, BinarySerializer owner) {
+        Class<?> raw = rawType(type);
+        BinaryCodec<Object> codec = nonNull(type, raw, owner);
+        if (raw.isPrimitive() || raw == String.class || raw.isEnum())
+            return codec;
+        return new Nullable(codec);
+    }
+
+    private static BinaryCodec<Object> nonNull(Type type, Class<?> raw, BinarySerializer owner) {
+        boolean compact = owner.isCompact();
+        if (raw == boolean.class || raw == Boolean.class) return BOOLEAN;
+        if (raw == byte.class || raw == Byte.class) return BYTE;
+        if (raw == char.class || raw == Character.class) return compact ? VAR_CHAR : CHAR;
+        if (raw == short.class || raw == Short.class) return compact ? VAR_SHORT : SHORT;
+        if (raw == int.class || raw == Integer.class) return compact ? VAR_INT : INT;
+        if (raw == long.class || raw == Long.class) return compact ? VAR_LONG : LONG;
+        if (raw == float.class || raw == Float.class) return FLOAT;
+        if (raw == double.class || raw == Double.class) return DOUBLE;
+        if (raw == String.class) {
+            Utf8InternTable table = owner.getInternTable();
+            if (table != null)
+                return compact ? codec((v, bb) -> bb.writeVarUtf((String) v), bb -> bb.readVarUtf(table)) : codec((v, bb) -> bb.writeUtf((String) v), bb -> bb.readUtf(table));
+            return compact ? VAR_STRING : STRING;
+        }
+        if (raw == java.util.UUID.class) return UUID;
+        if (raw == IntList.class) return INT_LIST;
+        if (raw == LongList.class) return LONG_LIST;
+        if (raw.isEnum()) return new EnumCodec(raw.getEnumConstants(), compact);
+
+        if (raw.isArray()) {
+            Class<?> component = raw.getComponentType();
+            if (component.isPrimitive())
+                return new PrimitiveArrayCodec(component, compact);
+
+            Type componentType = type instanceof GenericArrayType ga ? ga.getGenericComponentType() : component;
+            return new ArrayCodec(component, of(componentType, owner), compact);
+        }
+
+        if (Map.class.isAssignableFrom(raw)) {
+            Type[] args = typeArguments(type, raw);
+            return new MapCodec(collectionFactory(raw, HashMap.class), of(args[0], owner), of(args[1], owner), compact);
+        }
+        if (Collection.class.isAssignableFrom(raw)) {
+            Type[] args = typeArguments(type, raw);
+            Class<?> fallback = Set.class.isAssignableFrom(raw) ? HashSet.class : ArrayList.class;
+            return new CollectionCodec(collectionFactory(raw, fallback), of(args[0], owner), compact);
+        }
+
+        if (raw.isRecord() || raw.isAnnotationPresent(BinarySerialize.class))
+            return new NestedCodec(raw, owner);
+
+        throw new SerializationException("Unsupported type %s".formatted(type.getTypeName()));
+    }
+
+    private static Class<?> rawType(Type type) {
+        if (type instanceof Class<?> c)
+            return c;
+        if (type instanceof ParameterizedType pt)
+            return (Class<?>) pt.getRawType();
+        if (type instanceof GenericArrayType ga)
+            return rawType(ga.getGenericComponentType()).arrayType();
+        throw new SerializationException("Unsupported type %s".formatted(type.getTypeName()));
+    }
+
+    private static Type[] typeArguments(Type type, Class<?> raw) {
+        if (type instanceof ParameterizedType pt)
+            return pt.getActualTypeArguments();
+        throw new SerializationException("Raw type %s is not supported, type arguments are required".formatted(raw.getName()));
+    }
+
+    /**
+     * Constructor of collection/map type, use fallback for interfaces and abstract types
+     */
+    private static MethodHandle collectionFactory(Class<?> raw, Class<?> fallback) {
+        Class<?> impl = raw.isInterface() || Modifier.isAbstract(raw.getModifiers()) ? fallback : raw;
+        if (!raw.isAssignableFrom(impl))
+            throw new SerializationException("Cannot find implementation of %s".formatted(raw.getName()));
+
+        try {
+            MethodHandle mh = MethodHandles.lookup().findConstructor(impl, MethodType.methodType(void.class, int.class));
+            return mh.asType(MethodType.methodType(Object.class, int.class));
+        } catch (NoSuchMethodException | IllegalAccessException ignored) {
+        }
+        try {
+            MethodHandle mh = MethodHandles.lookup().findConstructor(impl, MethodType.methodType(void.class));
+            return MethodHandles.dropArguments(mh.asType(MethodType.methodType(Object.class)), 0, int.class);
+        } catch (NoSuchMethodException | IllegalAccessException ex) {
+            throw new DeserializeInstantiationException("Type %s".formatted(impl.getName()), ex);
+        }
+    }
+
+    private static Object create(MethodHandle factory, int size) {
+        try {
+            return factory.invokeExact(size);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable t) {
+            throw new DeserializeInstantiationException("Collection of size %s".formatted(size), t);
+        }
+    }
+
+    static void writeLength(WrappedByteBuffer bb, int length, boolean compact) {
+        if (compact) {
+            bb.writeVarInt(length);
+        } else {
+            bb.writeInt(length);
+        }
+    }
+
+    static int readLength(WrappedByteBuffer bb, boolean compact) {
+        return compact ? bb.readVarInt() : bb.readInt();
+    }
+
+    private interface Writer {
+        void write(Object value, WrappedByteBuffer bb);
+    }
+
+    private interface Reader {
+        Object read(WrappedByteBuffer bb);
+    }
+
+    private static BinaryCodec<Object> codec(Writer writer, Reader reader) {
+        return new BinaryCodec<>() {
+            @Override
+            public void write(Object value, WrappedByteBuffer bb) {
+                writer.write(value, bb);
+            }
+
+            @Override
+            public Object read(WrappedByteBuffer bb) {
+                return reader.read(bb);
+            }
+        };
+    }
+
+    private record Nullable(BinaryCodec<Object> codec) implements BinaryCodec<Object> {
+        @Override
+        public void write(Object value, WrappedByteBuffer bb) {
+            if (value == null) {
+                bb.writeBoolean(false);
+            } else {
+                bb.writeBoolean(true);
+                codec.write(value, bb);
+            }
+        }
+
+        @Override
+        public Object read(WrappedByteBuffer bb) {
+            return bb.readBoolean() ? codec.read(bb) : null;
+        }
+    }
+
+    private record EnumCodec(Object[] constants, boolean compact) implements BinaryCodec<Object> {
+        @Override
+        public void write(Object value, WrappedByteBuffer bb) {
+            if (compact) {
+                bb.writeVarInt(((Enum<?>) value).ordinal());
+            } else {
+                bb.writeEnum((Enum<?>) value);
+            }
+        }
+
+        @Override
+        public Object read(WrappedByteBuffer bb) {
+            return constants[compact ? bb.readVarInt() : bb.readShort()];
+        }
+    }
+
+    private record PrimitiveArrayCodec(Class<?> component, boolean compact) implements BinaryCodec<Object> {
+        @Override
+        public void write(Object value, WrappedByteBuffer bb) {
+            writeLength(bb, Array.getLength(value), compact);
+            bb.writeArrayBody(value);
+        }
+
+        @Override
+        public Object read(WrappedByteBuffer bb) {
+            Object arr = Array.newInstance(component, readLength(bb, compact));
+            bb.readArrayBody(arr);
+            return arr;
+        }
+    }
+
+    private record ArrayCodec(Class<?> component, BinaryCodec<Object> element, boolean compact) implements BinaryCodec<Object> {
+        @Override
+        public void write(Object value, WrappedByteBuffer bb) {
+            Object[] arr = (Object[]) value;
+            writeLength(bb, arr.length, compact);
+            for (Object o : arr) {
+                element.write(o, bb);
+            }
+        }
+
+        @Override
+        public Object read(WrappedByteBuffer bb) {
+            Object[] arr = (Object[]) Array.newInstance(component, readLength(bb, compact));
+            for (int i = 0; i < arr.length; i++) {
+                arr[i] = element.read(bb);
+            }
+            return arr;
+        }
+    }
+
+    private record CollectionCodec(MethodHandle factory, BinaryCodec<Object> element, boolean compact) implements BinaryCodec<Object> {
+        @Override
+        public void write(Object value, WrappedByteBuffer bb) {
+            Collection<?> col = (Collection<?>) value;
+            writeLength(bb, col.size(), compact);
+            for (Object o : col) {
+                element.write(o, bb);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object read(WrappedByteBuffer bb) {
+            int size = readLength(bb, compact);
+            Collection<Object> col = (Collection<Object>) create(factory, size);
+            for (int i = 0; i < size; i++) {
+                col.add(element.read(bb));
+            }
+            return col;
+        }
+    }
+
+    private record MapCodec(MethodHandle factory, BinaryCodec<Object> key, BinaryCodec<Object> value, boolean compact) implements BinaryCodec<Object> {
+        @Override
+        public void write(Object value, WrappedByteBuffer bb) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            writeLength(bb, map.size(), compact);
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                this.key.write(e.getKey(), bb);
+                this.value.write(e.getValue(), bb);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object read(WrappedByteBuffer bb) {
+            int size = readLength(bb, compact);
+            Map<Object, Object> map = (Map<Object, Object>) create(factory, size);
+            for (int i = 0; i < size; i++) {
+                map.put(this.key.read(bb), this.value.read(bb));
+            }
+            return map;
+        }
+    }
+
+    /**
+     * Nested type, resolved on first use so self-referencing types are supported
+     */
+    private static final class NestedCodec implements BinaryCodec<Object> {
+        private final Class<?> type;
+        private final BinarySerializer owner;
+        private BinaryCodec<Object> codec = null;
+
+        NestedCodec(Class<?> type, BinarySerializer owner) {
+            this.type = type;
+            this.owner = owner;
+        }
+
+        @SuppressWarnings("unchecked")
+        private BinaryCodec<Object> codec() {
+            BinaryCodec<Object> c = this.codec;
+            if (c == null) {
+                c = (BinaryCodec<Object>) owner.codec(type);
+                this.codec = c;
+            }
+            return c;
+        }
+
+        @Override
+        public void write(Object value, WrappedByteBuffer bb) {
+            codec().write(value, bb);
+        }
+
+        @Override
+        public Object read(WrappedByteBuffer bb) {
+            return codec().read(bb);
+        }
+    }
+}
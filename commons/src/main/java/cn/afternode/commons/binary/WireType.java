@@ -0,0 +1,65 @@
+package cn.afternode.commons.binary;
+
+import cn.afternode.commons.serialization.SerializationException;
+
+/**
+ * Encoding of a tagged field value, written in the low 3 bits of field key
+ * <br>
+ * Readers use it to skip fields they don't know
+ */
+enum WireType {
+    VARINT,
+    FIXED8,
+    FIXED16,
+    FIXED32,
+    FIXED64,
+    /**
+     * Value prefixed with its length as a 4-byte integer
+     */
+    LENGTH_DELIMITED;
+
+    private static final WireType[] VALUES = values();
+
+    /**
+     * Get wire type of field type
+     * @param type Field type
+     * @param compact Compact encoding
+     * @return Wire type
+     */
+    static WireType of(Class<?> type, boolean compact) {
+        if (type == boolean.class || type == byte.class) return FIXED8;
+        if (type == char.class || type == short.class) return compact ? VARINT : FIXED16;
+        if (type == int.class) return compact ? VARINT : FIXED32;
+        if (type == long.class) return compact ? VARINT : FIXED64;
+        if (type == float.class) return FIXED32;
+        if (type == double.class) return FIXED64;
+        return LENGTH_DELIMITED;
+    }
+
+    /**
+     * @param key Field key
+     * @return Wire type in key
+     * @throws SerializationException Unknown wire type
+     */
+    static WireType ofKey(int key) {
+        int id = key & 7;
+        if (id >= VALUES.length)
+            throw new SerializationException("Unknown wire type %s".formatted(id));
+        return VALUES[id];
+    }
+
+    /**
+     * Skip a value of this type in reader
+     * @param bb Source buffer
+     */
+    void skip(WrappedByteBuffer bb) {
+        switch (this) {
+            case VARINT -> bb.readVarLong();
+            case FIXED8 -> bb.skip(1);
+            case FIXED16 -> bb.skip(2);
+            case FIXED32 -> bb.skip(4);
+            case FIXED64 -> bb.skip(8);
+            case LENGTH_DELIMITED -> bb.skip(bb.readInt());
+        }
+    }
+}
@@ -1,7 +1,15 @@
 package cn.afternode.commons.binary;
 
+import java.io.IOException;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
@@ -9,28 +17,63 @@ import java.util.function.Function;
 public class WrappedByteBuffer {
     public static final int DEFAULT_SIZE = 65535;
 
-    private final ByteBuffer src;
-    
+    /**
+     * Default initial capacity for growable buffers
+     */
+    public static final int DEFAULT_INITIAL_SIZE = 256;
+
+    /**
+     * Capacity ceiling for growable buffers
+     */
+    public static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private static final ThreadLocal<CharsetDecoder> UTF_DECODER = ThreadLocal.withInitial(() -> StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE));
+    private static final ThreadLocal<CharBuffer> UTF_CHARS = new ThreadLocal<>();
+
+    private ByteBuffer src;
+    private final int maxCapacity;
+
     private int readOff = 0;
     private int writeOff = 0;
 
+    WrappedByteBufferPool pool = null;
+
     /**
      * Wrap byte buffer
+     * <br>
+     * Wrapped buffers will not be expanded
      * @param src ByteBuffer
      */
     public WrappedByteBuffer(ByteBuffer src) {
+        this(src, src.capacity());
+    }
+
+    private WrappedByteBuffer(ByteBuffer src, int maxCapacity) {
         this.src = src;
+        this.maxCapacity = maxCapacity;
     }
 
     /**
      * Create with specified size
      * @param size size
-     * @see ByteBuffer#allocate(int) 
+     * @see ByteBuffer#allocate(int)
      */
     public WrappedByteBuffer(int size) {
         this(ByteBuffer.allocate(size));
     }
 
+    /**
+     * Create growable buffer, capacity will be doubled on demand until maxCapacity reached
+     * @param initialSize Initial capacity
+     * @param maxCapacity Capacity ceiling
+     * @throws IllegalArgumentException initialSize is larger than maxCapacity
+     */
+    public WrappedByteBuffer(int initialSize, int maxCapacity) {
+        this(ByteBuffer.allocate(checkInitialSize(initialSize, maxCapacity)), maxCapacity);
+    }
+
     /**
      * Create with default size
      * @see #DEFAULT_SIZE
@@ -39,6 +82,137 @@ public class WrappedByteBuffer {
         this(DEFAULT_SIZE);
     }
 
+    /**
+     * Create growable buffer with default initial size and no practical ceiling
+     * @return Created buffer
+     * @see #DEFAULT_INITIAL_SIZE
+     * @see #MAX_CAPACITY
+     */
+    public static WrappedByteBuffer growable() {
+        return new WrappedByteBuffer(DEFAULT_INITIAL_SIZE, MAX_CAPACITY);
+    }
+
+    /**
+     * Create off-heap buffer with fixed size
+     * @param size size
+     * @return Created buffer
+     * @see ByteBuffer#allocateDirect(int)
+     */
+    public static WrappedByteBuffer direct(int size) {
+        return new WrappedByteBuffer(ByteBuffer.allocateDirect(size));
+    }
+
+    /**
+     * Create growable off-heap buffer
+     * @param initialSize Initial capacity
+     * @param maxCapacity Capacity ceiling
+     * @return Created buffer
+     * @throws IllegalArgumentException initialSize is larger than maxCapacity
+     */
+    public static WrappedByteBuffer direct(int initialSize, int maxCapacity) {
+        return new WrappedByteBuffer(ByteBuffer.allocateDirect(checkInitialSize(initialSize, maxCapacity)), maxCapacity);
+    }
+
+    /**
+     * Map a file region to buffer, the file will be created if not exists
+     * <br>
+     * Existing content in the region is readable from offset 0
+     * @param path File path
+     * @param size Mapped size, the file will be extended if smaller
+     * @return Mapped buffer, close it to flush and release the file
+     * @throws IOException Unable to open or map the file
+     * @see FileChannel#map(FileChannel.MapMode, long, long)
+     */
+    public static MappedWrappedByteBuffer mapped(Path path, int size) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try {
+            return new MappedWrappedByteBuffer(channel.map(FileChannel.MapMode.READ_WRITE, 0, size), channel);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private static int checkInitialSize(int initialSize, int maxCapacity) {
+        if (initialSize > maxCapacity)
+            throw new IllegalArgumentException("Initial size %s is larger than max capacity %s".formatted(initialSize, maxCapacity));
+        return initialSize;
+    }
+
+    // Capacity START
+    /**
+     * Make sure the buffer can hold bytes until specified offset, expand if growable
+     * @param required Required capacity
+     * @throws BufferOverflowException Required capacity exceeds max capacity
+     */
+    void ensureCapacity(long required) {
+        int cap = src.capacity();
+        if (required <= cap)
+            return;
+        if (required < 0 || required > maxCapacity)
+            throw new BufferOverflowException();
+
+        int nCap = Math.max(cap, 16);
+        while (nCap < required) {
+            nCap = nCap << 1;
+            if (nCap <= 0) {    // Overflow
+                nCap = maxCapacity;
+                break;
+            }
+        }
+        nCap = Math.min(nCap, maxCapacity);
+
+        ByteBuffer n = src.isDirect() ? ByteBuffer.allocateDirect(nCap) : ByteBuffer.allocate(nCap);
+        n.order(src.order());
+        n.put(0, src, 0, cap);
+        this.src = n;
+    }
+
+    /**
+     * @return Current capacity
+     */
+    public int capacity() {
+        return src.capacity();
+    }
+
+    /**
+     * @return Capacity ceiling, equals to capacity if not growable
+     */
+    public int maxCapacity() {
+        return maxCapacity;
+    }
+
+    /**
+     * @return Can this buffer be expanded further
+     */
+    public boolean isGrowable() {
+        return maxCapacity > src.capacity();
+    }
+
+    /**
+     * @return Is this buffer backed by off-heap memory
+     */
+    public boolean isDirect() {
+        return src.isDirect();
+    }
+
+    /**
+     * @return Is {@link #array()} available
+     */
+    public boolean hasArray() {
+        return src.hasArray();
+    }
+
+    /**
+     * Create a view of wrapped ByteBuffer at specified position, for bulk transfers
+     * @param off Position
+     * @return View with same content and byte order
+     */
+    private ByteBuffer view(int off) {
+        return src.duplicate().order(src.order()).position(off);
+    }
+    // Capacity END
+
     // Bytes START
     /**
      * Write provided bytes
@@ -46,7 +220,7 @@ public class WrappedByteBuffer {
      * @return This wrapper
      */
     public WrappedByteBuffer writeBytes(byte[] buf) {
-        src.put(buf, writeOff, buf.length);
+        this.writeBytes(buf, this.writeOff, buf.length);
         writeOff += buf.length;
         return this;
     }
@@ -59,7 +233,8 @@ public class WrappedByteBuffer {
      * @return This wrapper
      */
     public WrappedByteBuffer writeBytes(byte[] buf, int off, int len) {
-        src.put(buf, off, len);
+        ensureCapacity(off + len);
+        src.put(off, buf, 0, len);
         return this;
     }
 
@@ -70,7 +245,7 @@ public class WrappedByteBuffer {
      * @param len Length
      */
     public void readBytes(byte[] buf, int off, int len) {
-        src.get(buf, off, len);
+        src.get(off, buf, 0, len);
     }
 
     /**
@@ -78,7 +253,7 @@ public class WrappedByteBuffer {
      * @param buf Target byte[]
      */
     public void readBytes(byte[] buf) {
-        src.get(buf, readOff, buf.length);
+        this.readBytes(buf, this.readOff, buf.length);
         readOff += buf.length;
     }
     // Bytes END
@@ -86,13 +261,14 @@ public class WrappedByteBuffer {
     // Block START
     public byte[] readBlock(int off) {
         byte[] data = new byte[this.readShort(off)];
-        int nOff = off + 4;
-        src.get(data, nOff, data.length);
+        this.readBytes(data, off + 2, data.length);
         return data;
     }
 
     public byte[] readBlock() {
-        return this.readBlock(this.readOff);
+        byte[] data = this.readBlock(this.readOff);
+        this.readOff += 2 + data.length;
+        return data;
     }
 
     public void writeBlock(byte[] data, int off) {
@@ -100,14 +276,76 @@ public class WrappedByteBuffer {
             throw new ArrayIndexOutOfBoundsException("Byte array too large");
 
         this.writeShort((short) data.length, off);
-        this.writeBytes(data, off, data.length);
+        this.writeBytes(data, off + 2, data.length);
     }
 
     public void writeBlock(byte[] data) {
         this.writeBlock(data, this.writeOff);
+        this.writeOff += 2 + data.length;
+    }
+
+    /**
+     * Read a block as view without copying
+     * @param off Offset of block length
+     * @return Read-only view of block content
+     * @see #slice(int, int)
+     */
+    public WrappedByteBuffer readBlockView(int off) {
+        return this.slice(off + 2, this.readShort(off));
+    }
+
+    /**
+     * Read a block as view without copying
+     * @return Read-only view of block content
+     * @see #slice(int, int)
+     */
+    public WrappedByteBuffer readBlockView() {
+        WrappedByteBuffer view = this.readBlockView(this.readOff);
+        this.readOff += 2 + view.capacity();
+        return view;
     }
     // Block END
-    
+
+    // Slice START
+    /**
+     * Create a read-only view over part of this buffer, content is shared and not copied
+     * <br>
+     * The view has reader offset 0 and writer offset at its end, writing to it throws {@link java.nio.ReadOnlyBufferException}.
+     * Views become stale if this buffer expands
+     * @param off Offset in this buffer
+     * @param len Length of view
+     * @return View
+     * @throws IndexOutOfBoundsException Range out of capacity
+     */
+    public WrappedByteBuffer slice(int off, int len) {
+        ByteBuffer view = this.src.slice(off, len).asReadOnlyBuffer().order(this.src.order());
+        WrappedByteBuffer wrapped = new WrappedByteBuffer(view, len);
+        wrapped.writeOff = len;
+        return wrapped;
+    }
+
+    /**
+     * Read bytes as a read-only view without copying
+     * @param len Length
+     * @return View
+     * @see #slice(int, int)
+     */
+    public WrappedByteBuffer readSlice(int len) {
+        WrappedByteBuffer view = this.slice(this.readOff, len);
+        this.readOff += len;
+        return view;
+    }
+
+    /**
+     * Create a read-only view of unread bytes, reader offset is not moved
+     * @return View from reader offset to writer offset
+     * @see #slice(int, int)
+     */
+    public WrappedByteBuffer slice() {
+        return this.slice(this.readOff, Math.max(this.writeOff - this.readOff, 0));
+    }
+    // Slice END
+
     // Integer START
 
     /**
@@ -117,6 +355,7 @@ public class WrappedByteBuffer {
      * @return This wrapper
      */
     public WrappedByteBuffer writeInt(int src, int off) {
+        ensureCapacity(off + 4);
         this.src.putInt(off, src);
         return this;
     }
@@ -127,7 +366,7 @@ public class WrappedByteBuffer {
      * @return This wrapper
      */
     public WrappedByteBuffer writeInt(int src) {
-        this.src.putInt(src);
+        this.writeInt(src, this.writeOff);
         this.writeOff += 4;
         return this;
     }
@@ -161,6 +400,7 @@ public class WrappedByteBuffer {
      * @return This wrapper
      */
     public WrappedByteBuffer writeShort(short src, int off) {
+        ensureCapacity(off + 2);
         this.src.putShort(off, src);
         return this;
     }
@@ -196,17 +436,816 @@ public class WrappedByteBuffer {
     }
     // Short END
 
+    // Byte START
+
+    /**
+     * Write byte with specified offset
+     * @param src Source byte
+     * @param off Target offset
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeByte(byte src, int off) {
+        ensureCapacity(off + 1);
+        this.src.put(off, src);
+        return this;
+    }
+
+    /**
+     * Write byte
+     * @param src Source byte
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeByte(byte src) {
+        this.writeByte(src, this.writeOff);
+        this.writeOff += 1;
+        return this;
+    }
+
+    /**
+     * Read byte with specified offset
+     * @param off Target offset
+     * @return Result byte
+     */
+    public byte readByte(int off) {
+        return this.src.get(off);
+    }
+
+    /**
+     * Read byte
+     * @return Result byte
+     */
+    public byte readByte() {
+        return this.src.get(this.readOff++);
+    }
+
+    /**
+     * Write boolean (1 byte)
+     * @param src Source boolean
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeBoolean(boolean src) {
+        return this.writeByte(src ? (byte) 1 : (byte) 0);
+    }
+
+    /**
+     * Read boolean (1 byte)
+     * @return Result boolean
+     */
+    public boolean readBoolean() {
+        return this.readByte() != 0;
+    }
+    // Byte END
+
+    // Char START
+
+    /**
+     * Write char
+     * @param src Source char
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeChar(char src) {
+        ensureCapacity(this.writeOff + 2);
+        this.src.putChar(this.writeOff, src);
+        this.writeOff += 2;
+        return this;
+    }
+
+    /**
+     * Read char
+     * @return Result char
+     */
+    public char readChar() {
+        char r = this.src.getChar(this.readOff);
+        this.readOff += 2;
+        return r;
+    }
+    // Char END
+
     // Long start
     public void writeLong(long v) {
-        this.src.putLong(v);
+        ensureCapacity(this.writeOff + 8);
+        this.src.putLong(this.writeOff, v);
+        this.writeOff += 8;
     }
 
     public long readLong() {
-        return this.src.getLong();
+        long r = this.src.getLong(this.readOff);
+        this.readOff += 8;
+        return r;
     }
     // Long end
 
+    // VarInt START
+
+    /**
+     * Get encoded size of unsigned VarInt
+     * @param v Value
+     * @return Size in bytes, 1 to 5
+     */
+    public static int varIntSize(int v) {
+        return (31 - Integer.numberOfLeadingZeros(v | 1)) / 7 + 1;
+    }
+
+    /**
+     * Write integer as unsigned LEB128 VarInt (1 to 5 bytes), negative values always take 5 bytes
+     * @param v Source integer
+     * @return This wrapper
+     * @see #writeZigZagInt(int)
+     */
+    public WrappedByteBuffer writeVarInt(int v) {
+        ensureCapacity(this.writeOff + (long) varIntSize(v));
+        while ((v & ~0x7F) != 0) {
+            this.src.put(this.writeOff++, (byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        this.src.put(this.writeOff++, (byte) v);
+        return this;
+    }
+
+    /**
+     * Read unsigned LEB128 VarInt
+     * @return Result integer
+     * @throws IllegalStateException Malformed VarInt
+     */
+    public int readVarInt() {
+        int r = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = this.src.get(this.readOff++);
+            r |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return r;
+        }
+        throw new IllegalStateException("Malformed VarInt");
+    }
+
+    /**
+     * Get encoded size of unsigned VarLong
+     * @param v Value
+     * @return Size in bytes, 1 to 10
+     */
+    public static int varLongSize(long v) {
+        return (63 - Long.numberOfLeadingZeros(v | 1)) / 7 + 1;
+    }
+
+    /**
+     * Write long integer as unsigned LEB128 VarLong (1 to 10 bytes)
+     * @param v Source long integer
+     * @return This wrapper
+     * @see #writeZigZagLong(long)
+     */
+    public WrappedByteBuffer writeVarLong(long v) {
+        ensureCapacity(this.writeOff + (long) varLongSize(v));
+        while ((v & ~0x7FL) != 0) {
+            this.src.put(this.writeOff++, (byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        this.src.put(this.writeOff++, (byte) v);
+        return this;
+    }
+
+    /**
+     * Read unsigned LEB128 VarLong
+     * @return Result long integer
+     * @throws IllegalStateException Malformed VarLong
+     */
+    public long readVarLong() {
+        long r = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = this.src.get(this.readOff++);
+            r |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return r;
+        }
+        throw new IllegalStateException("Malformed VarLong");
+    }
+
+    /**
+     * Write signed integer with ZigZag encoding, small negative values stay small
+     * @param v Source integer
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeZigZagInt(int v) {
+        return this.writeVarInt((v << 1) ^ (v >> 31));
+    }
+
+    /**
+     * Read ZigZag encoded signed integer
+     * @return Result integer
+     */
+    public int readZigZagInt() {
+        int n = this.readVarInt();
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    /**
+     * Write signed long integer with ZigZag encoding
+     * @param v Source long integer
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeZigZagLong(long v) {
+        return this.writeVarLong((v << 1) ^ (v >> 63));
+    }
+
+    /**
+     * Read ZigZag encoded signed long integer
+     * @return Result long integer
+     */
+    public long readZigZagLong() {
+        long n = this.readVarLong();
+        return (n >>> 1) ^ -(n & 1);
+    }
+    // VarInt END
+
+    // Floating point START
+
+    /**
+     * Write float
+     * @param src Source float
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeFloat(float src) {
+        ensureCapacity(this.writeOff + 4);
+        this.src.putFloat(this.writeOff, src);
+        this.writeOff += 4;
+        return this;
+    }
+
+    /**
+     * Read float
+     * @return Result float
+     */
+    public float readFloat() {
+        float r = this.src.getFloat(this.readOff);
+        this.readOff += 4;
+        return r;
+    }
+
+    /**
+     * Write double
+     * @param src Source double
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeDouble(double src) {
+        ensureCapacity(this.writeOff + 8);
+        this.src.putDouble(this.writeOff, src);
+        this.writeOff += 8;
+        return this;
+    }
+
+    /**
+     * Read double
+     * @return Result double
+     */
+    public double readDouble() {
+        double r = this.src.getDouble(this.readOff);
+        this.readOff += 8;
+        return r;
+    }
+    // Floating point END
+
+    // Primitive array START
+
+    /**
+     * Write byte array with length prefix (int)
+     * @param arr Source array
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeByteArray(byte[] arr) {
+        this.writeInt(arr.length);
+        return this.writeBytes(arr);
+    }
+
+    /**
+     * Read byte array with length prefix (int)
+     * @return Result array
+     */
+    public byte[] readByteArray() {
+        byte[] arr = new byte[this.readInt()];
+        this.readBytes(arr);
+        return arr;
+    }
+
+    /**
+     * Write boolean array with length prefix (int), 1 byte per element
+     * @param arr Source array
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeBooleanArray(boolean[] arr) {
+        this.writeInt(arr.length);
+        this.writeArrayBody(arr);
+        return this;
+    }
+
+    /**
+     * Read boolean array with length prefix (int)
+     * @return Result array
+     */
+    public boolean[] readBooleanArray() {
+        boolean[] arr = new boolean[this.readInt()];
+        this.readArrayBody(arr);
+        return arr;
+    }
+
+    /**
+     * Write short array with length prefix (int) in one bulk transfer
+     * @param arr Source array
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeShortArray(short[] arr) {
+        this.writeInt(arr.length);
+        this.writeArrayBody(arr);
+        return this;
+    }
+
+    /**
+     * Read short array with length prefix (int) in one bulk transfer
+     * @return Result array
+     */
+    public short[] readShortArray() {
+        short[] arr = new short[this.readInt()];
+        this.readArrayBody(arr);
+        return arr;
+    }
+
+    /**
+     * Write char array with length prefix (int) in one bulk transfer
+     * @param arr Source array
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeCharArray(char[] arr) {
+        this.writeInt(arr.length);
+        this.writeArrayBody(arr);
+        return this;
+    }
+
+    /**
+     * Read char array with length prefix (int) in one bulk transfer
+     * @return Result array
+     */
+    public char[] readCharArray() {
+        char[] arr = new char[this.readInt()];
+        this.readArrayBody(arr);
+        return arr;
+    }
+
+    /**
+     * Write int array with length prefix (int) in one bulk transfer
+     * @param arr Source array
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeIntArray(int[] arr) {
+        this.writeInt(arr.length);
+        this.writeArrayBody(arr);
+        return this;
+    }
+
+    /**
+     * Read int array with length prefix (int) in one bulk transfer
+     * @return Result array
+     */
+    public int[] readIntArray() {
+        int[] arr = new int[this.readInt()];
+        this.readArrayBody(arr);
+        return arr;
+    }
+
+    /**
+     * Write long array with length prefix (int) in one bulk transfer
+     * @param arr Source array
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeLongArray(long[] arr) {
+        this.writeInt(arr.length);
+        this.writeArrayBody(arr);
+        return this;
+    }
+
+    /**
+     * Read long array with length prefix (int) in one bulk transfer
+     * @return Result array
+     */
+    public long[] readLongArray() {
+        long[] arr = new long[this.readInt()];
+        this.readArrayBody(arr);
+        return arr;
+    }
+
+    /**
+     * Write float array with length prefix (int) in one bulk transfer
+     * @param arr Source array
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeFloatArray(float[] arr) {
+        this.writeInt(arr.length);
+        this.writeArrayBody(arr);
+        return this;
+    }
+
+    /**
+     * Read float array with length prefix (int) in one bulk transfer
+     * @return Result array
+     */
+    public float[] readFloatArray() {
+        float[] arr = new float[this.readInt()];
+        this.readArrayBody(arr);
+        return arr;
+    }
+
+    /**
+     * Write double array with length prefix (int) in one bulk transfer
+     * @param arr Source array
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeDoubleArray(double[] arr) {
+        this.writeInt(arr.length);
+        this.writeArrayBody(arr);
+        return this;
+    }
+
+    /**
+     * Read double array with length prefix (int) in one bulk transfer
+     * @return Result array
+     */
+    public double[] readDoubleArray() {
+        double[] arr = new double[this.readInt()];
+        this.readArrayBody(arr);
+        return arr;
+    }
+
+    /**
+     * Bulk write part of short array without length prefix, in a single transfer
+     * @param arr Source array
+     * @param off Source offset
+     * @param len Element count
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeShorts(short[] arr, int off, int len) {
+        ensureCapacity(this.writeOff + (long) len * 2);
+        view(this.writeOff).asShortBuffer().put(arr, off, len);
+        this.writeOff += len * 2;
+        return this;
+    }
+
+    /**
+     * Bulk read shorts without length prefix into existing array, in a single transfer
+     * @param arr Target array
+     * @param off Target offset
+     * @param len Element count
+     */
+    public void readShorts(short[] arr, int off, int len) {
+        view(this.readOff).asShortBuffer().get(arr, off, len);
+        this.readOff += len * 2;
+    }
+
+    /**
+     * Bulk write part of int array without length prefix, in a single transfer
+     * @param arr Source array
+     * @param off Source offset
+     * @param len Element count
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeInts(int[] arr, int off, int len) {
+        ensureCapacity(this.writeOff + (long) len * 4);
+        view(this.writeOff).asIntBuffer().put(arr, off, len);
+        this.writeOff += len * 4;
+        return this;
+    }
+
+    /**
+     * Bulk read ints without length prefix into existing array, in a single transfer
+     * @param arr Target array
+     * @param off Target offset
+     * @param len Element count
+     */
+    public void readInts(int[] arr, int off, int len) {
+        view(this.readOff).asIntBuffer().get(arr, off, len);
+        this.readOff += len * 4;
+    }
+
+    /**
+     * Bulk write part of long array without length prefix, in a single transfer
+     * @param arr Source array
+     * @param off Source offset
+     * @param len Element count
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeLongs(long[] arr, int off, int len) {
+        ensureCapacity(this.writeOff + (long) len * 8);
+        view(this.writeOff).asLongBuffer().put(arr, off, len);
+        this.writeOff += len * 8;
+        return this;
+    }
+
+    /**
+     * Bulk read longs without length prefix into existing array, in a single transfer
+     * @param arr Target array
+     * @param off Target offset
+     * @param len Element count
+     */
+    public void readLongs(long[] arr, int off, int len) {
+        view(this.readOff).asLongBuffer().get(arr, off, len);
+        this.readOff += len * 8;
+    }
+
+    /**
+     * Bulk write part of float array without length prefix, in a single transfer
+     * @param arr Source array
+     * @param off Source offset
+     * @param len Element count
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeFloats(float[] arr, int off, int len) {
+        ensureCapacity(this.writeOff + (long) len * 4);
+        view(this.writeOff).asFloatBuffer().put(arr, off, len);
+        this.writeOff += len * 4;
+        return this;
+    }
+
+    /**
+     * Bulk read floats without length prefix into existing array, in a single transfer
+     * @param arr Target array
+     * @param off Target offset
+     * @param len Element count
+     */
+    public void readFloats(float[] arr, int off, int len) {
+        view(this.readOff).asFloatBuffer().get(arr, off, len);
+        this.readOff += len * 4;
+    }
+
+    /**
+     * Bulk write part of double array without length prefix, in a single transfer
+     * @param arr Source array
+     * @param off Source offset
+     * @param len Element count
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeDoubles(double[] arr, int off, int len) {
+        ensureCapacity(this.writeOff + (long) len * 8);
+        view(this.writeOff).asDoubleBuffer().put(arr, off, len);
+        this.writeOff += len * 8;
+        return this;
+    }
+
+    /**
+     * Bulk read doubles without length prefix into existing array, in a single transfer
+     * @param arr Target array
+     * @param off Target offset
+     * @param len Element count
+     */
+    public void readDoubles(double[] arr, int off, int len) {
+        view(this.readOff).asDoubleBuffer().get(arr, off, len);
+        this.readOff += len * 8;
+    }
+
+    /**
+     * Write int list with length prefix (int), same layout as {@link #writeIntArray(int[])}
+     * @param list Source list
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeIntList(IntList list) {
+        this.writeInt(list.size());
+        return this.writeInts(list.elements(), 0, list.size());
+    }
+
+    /**
+     * Read int list with length prefix (int)
+     * @return Result list
+     */
+    public IntList readIntList() {
+        return this.readIntList(new IntList(0));
+    }
+
+    /**
+     * Read int list with length prefix (int) into existing list, its content is replaced and backing array reused if large enough
+     * @param target Target list
+     * @return Provided target list
+     */
+    public IntList readIntList(IntList target) {
+        int len = this.readInt();
+        target.clear();
+        target.ensureCapacity(len);
+        this.readInts(target.elements(), 0, len);
+        target.setSize(len);
+        return target;
+    }
+
+    /**
+     * Write long list with length prefix (int), same layout as {@link #writeLongArray(long[])}
+     * @param list Source list
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeLongList(LongList list) {
+        this.writeInt(list.size());
+        return this.writeLongs(list.elements(), 0, list.size());
+    }
+
+    /**
+     * Read long list with length prefix (int)
+     * @return Result list
+     */
+    public LongList readLongList() {
+        return this.readLongList(new LongList(0));
+    }
+
+    /**
+     * Read long list with length prefix (int) into existing list, its content is replaced and backing array reused if large enough
+     * @param target Target list
+     * @return Provided target list
+     */
+    public LongList readLongList(LongList target) {
+        int len = this.readInt();
+        target.clear();
+        target.ensureCapacity(len);
+        this.readLongs(target.elements(), 0, len);
+        target.setSize(len);
+        return target;
+    }
+
+    /**
+     * Bulk write primitive array content without length prefix
+     * @param arr Primitive array
+     * @throws IllegalArgumentException Not a primitive array
+     */
+    void writeArrayBody(Object arr) {
+        if (arr instanceof byte[] a) {
+            this.writeBytes(a);
+        } else if (arr instanceof boolean[] a) {
+            ensureCapacity(this.writeOff + (long) a.length);
+            for (boolean b : a) {
+                this.src.put(this.writeOff++, b ? (byte) 1 : (byte) 0);
+            }
+        } else if (arr instanceof short[] a) {
+            ensureCapacity(this.writeOff + a.length * 2L);
+            view(this.writeOff).asShortBuffer().put(a);
+            this.writeOff += a.length * 2;
+        } else if (arr instanceof char[] a) {
+            ensureCapacity(this.writeOff + a.length * 2L);
+            view(this.writeOff).asCharBuffer().put(a);
+            this.writeOff += a.length * 2;
+        } else if (arr instanceof int[] a) {
+            ensureCapacity(this.writeOff + a.length * 4L);
+            view(this.writeOff).asIntBuffer().put(a);
+            this.writeOff += a.length * 4;
+        } else if (arr instanceof long[] a) {
+            ensureCapacity(this.writeOff + a.length * 8L);
+            view(this.writeOff).asLongBuffer().put(a);
+            this.writeOff += a.length * 8;
+        } else if (arr instanceof float[] a) {
+            ensureCapacity(this.writeOff + a.length * 4L);
+            view(this.writeOff).asFloatBuffer().put(a);
+            this.writeOff += a.length * 4;
+        } else if (arr instanceof double[] a) {
+            ensureCapacity(this.writeOff + a.length * 8L);
+            view(this.writeOff).asDoubleBuffer().put(a);
+            this.writeOff += a.length * 8;
+        } else {
+            throw new IllegalArgumentException("Not a primitive array: %s".formatted(arr));
+        }
+    }
+
+    /**
+     * Bulk read primitive array content without length prefix, length of target array is used
+     * @param arr Target primitive array
+     * @throws IllegalArgumentException Not a primitive array
+     */
+    void readArrayBody(Object arr) {
+        if (arr instanceof byte[] a) {
+            this.readBytes(a);
+        } else if (arr instanceof boolean[] a) {
+            for (int i = 0; i < a.length; i++) {
+                a[i] = this.src.get(this.readOff++) != 0;
+            }
+        } else if (arr instanceof short[] a) {
+            view(this.readOff).asShortBuffer().get(a);
+            this.readOff += a.length * 2;
+        } else if (arr instanceof char[] a) {
+            view(this.readOff).asCharBuffer().get(a);
+            this.readOff += a.length * 2;
+        } else if (arr instanceof int[] a) {
+            view(this.readOff).asIntBuffer().get(a);
+            this.readOff += a.length * 4;
+        } else if (arr instanceof long[] a) {
+            view(this.readOff).asLongBuffer().get(a);
+            this.readOff += a.length * 8;
+        } else if (arr instanceof float[] a) {
+            view(this.readOff).asFloatBuffer().get(a);
+            this.readOff += a.length * 4;
+        } else if (arr instanceof double[] a) {
+            view(this.readOff).asDoubleBuffer().get(a);
+            this.readOff += a.length * 8;
+        } else {
+            throw new IllegalArgumentException("Not a primitive array: %s".formatted(arr));
+        }
+    }
+    // Primitive array END
+
     // UTF START
+    /**
+     * Get UTF-8 encoded length of string without encoding it
+     * <br>
+     * Unpaired surrogates are counted as 1 byte, same as replacement in encoding
+     * @param src Source string
+     * @return Encoded length in bytes
+     */
+    public static int utfLength(String src) {
+        int len = src.length();
+        int n = len;
+        for (int i = 0; i < len; i++) {
+            char c = src.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                n += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(src.charAt(i + 1))) {
+                n += 2; // 4 bytes for 2 chars
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                n += 2;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Encode string to wrapped ByteBuffer directly, capacity must be ensured by caller
+     * @param str Source string
+     * @param off Target offset
+     * @return Encoded length in bytes
+     */
+    private int encodeUtf(String str, int off) {
+        ByteBuffer b = this.src;
+        int p = off;
+        int len = str.length();
+        for (int i = 0; i < len; i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                b.put(p++, (byte) c);
+            } else if (c < 0x800) {
+                b.put(p++, (byte) (0xC0 | (c >> 6)));
+                b.put(p++, (byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(str.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, str.charAt(++i));
+                    b.put(p++, (byte) (0xF0 | (cp >> 18)));
+                    b.put(p++, (byte) (0x80 | ((cp >> 12) & 0x3F)));
+                    b.put(p++, (byte) (0x80 | ((cp >> 6) & 0x3F)));
+                    b.put(p++, (byte) (0x80 | (cp & 0x3F)));
+                } else {
+                    b.put(p++, (byte) '?');
+                }
+            } else {
+                b.put(p++, (byte) (0xE0 | (c >> 12)));
+                b.put(p++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+                b.put(p++, (byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        return p - off;
+    }
+
+    /**
+     * Encode string after a 4-byte length prefix, the prefix is backpatched after encoding
+     * @return Total written bytes including prefix
+     */
+    private int writeUtfAt(String str, int off) {
+        int start = off + 4;
+        if (start + 3L * str.length() > src.capacity()) // Exact size only when worst case does not fit
+            ensureCapacity(start + (long) utfLength(str));
+        int n = encodeUtf(str, start);
+        this.src.putInt(off, n);
+        return n + 4;
+    }
+
+    /**
+     * Decode UTF-8 bytes in wrapped ByteBuffer
+     * <br>
+     * Heap buffers are decoded from backing array directly, others with a thread-local decoder
+     * @param off Source offset
+     * @param len Length in bytes
+     * @return Result string
+     */
+    String decodeUtf(int off, int len) {
+        if (len == 0)
+            return "";
+        if (src.hasArray())
+            return new String(src.array(), src.arrayOffset() + off, len, StandardCharsets.UTF_8);
+
+        CharBuffer out = UTF_CHARS.get();
+        if (out == null || out.capacity() < len) {  // UTF-8 never decodes to more chars than bytes
+            out = CharBuffer.allocate(Math.max(len, 64));
+            UTF_CHARS.set(out);
+        }
+        out.clear();
+
+        CharsetDecoder decoder = UTF_DECODER.get().reset();
+        ByteBuffer in = src.duplicate();
+        in.limit(off + len).position(off);
+        decoder.decode(in, out, true);
+        decoder.flush(out);
+        out.flip();
+        return out.toString();
+    }
+
     /**
      * Write UTF-8 encoded string with specified offset
      * @param src Source string
@@ -214,22 +1253,19 @@ public class WrappedByteBuffer {
      * @return This wrapper
      */
     public WrappedByteBuffer writeUtf(String src, int off) {
-        byte[] bytes = src.getBytes(StandardCharsets.UTF_8);
-        this.writeInt(bytes.length, off);
-        off += 4;
-        this.writeBytes(bytes, off, bytes.length);
+        this.writeUtfAt(src, off);
         return this;
     }
 
     /**
      * Write UTF-8 encoded string
+     * <br>
+     * Characters are encoded into the buffer directly without temporary array
      * @param src Source string
      * @return This wrapper
      */
     public WrappedByteBuffer writeUtf(String src) {
-        byte[] bytes = src.getBytes(StandardCharsets.UTF_8);
-        this.writeInt(bytes.length);
-        this.writeBytes(bytes);
+        this.writeOff += this.writeUtfAt(src, this.writeOff);
         return this;
     }
 
@@ -239,10 +1275,7 @@ public class WrappedByteBuffer {
      * @return Result string
      */
     public String readUtf(int off) {
-        byte[] bytes = new byte[this.readInt(off)];
-        off += 4;
-        this.readBytes(bytes, off, bytes.length);
-        return new String(bytes, StandardCharsets.UTF_8);
+        return this.decodeUtf(off + 4, this.readInt(off));
     }
 
     /**
@@ -250,9 +1283,58 @@ public class WrappedByteBuffer {
      * @return Result string
      */
     public String readUtf() {
-        byte[] bytes = new byte[this.readInt(this.readOff)];
-        this.readBytes(bytes);
-        return new String(bytes, StandardCharsets.UTF_8);
+        int len = this.readInt();
+        String r = this.decodeUtf(this.readOff, len);
+        this.readOff += len;
+        return r;
+    }
+
+    /**
+     * Read UTF-8 encoded string, return cached instance if the same bytes were read before
+     * @param table Intern table
+     * @return Result string
+     */
+    public String readUtf(Utf8InternTable table) {
+        int len = this.readInt();
+        String r = table.intern(this, this.readOff, len);
+        this.readOff += len;
+        return r;
+    }
+
+    /**
+     * Write UTF-8 encoded string with VarInt length prefix
+     * @param src Source string
+     * @return This wrapper
+     */
+    public WrappedByteBuffer writeVarUtf(String src) {
+        int len = utfLength(src);
+        this.writeVarInt(len);
+        ensureCapacity(this.writeOff + (long) len);
+        this.writeOff += this.encodeUtf(src, this.writeOff);
+        return this;
+    }
+
+    /**
+     * Read UTF-8 encoded string with VarInt length prefix
+     * @return Result string
+     */
+    public String readVarUtf() {
+        int len = this.readVarInt();
+        String r = this.decodeUtf(this.readOff, len);
+        this.readOff += len;
+        return r;
+    }
+
+    /**
+     * Read UTF-8 encoded string with VarInt length prefix, return cached instance if the same bytes were read before
+     * @param table Intern table
+     * @return Result string
+     */
+    public String readVarUtf(Utf8InternTable table) {
+        int len = this.readVarInt();
+        String r = table.intern(this, this.readOff, len);
+        this.readOff += len;
+        return r;
     }
     // UTF END
 
@@ -287,7 +1369,7 @@ public class WrappedByteBuffer {
      * @param <T> Enum type
      */
     public <T extends Enum<T>> T readEnum(Class<T> type, int off) {
-        int index = this.readShort();
+        int index = this.readShort(off);
         return type.getEnumConstants()[index];
     }
 
@@ -423,23 +1505,112 @@ public class WrappedByteBuffer {
     }
 
     /**
-     * Reset ByteBuffer position
+     * Move reader offset
+     * @param off New reader offset
+     * @throws IndexOutOfBoundsException Offset out of buffer capacity
+     */
+    public void readerOffset(int off) {
+        if (off < 0 || off > this.src.capacity())
+            throw new IndexOutOfBoundsException("Reader offset %s out of capacity %s".formatted(off, this.src.capacity()));
+        this.readOff = off;
+    }
+
+    /**
+     * Skip bytes in reader
+     * @param len Length to skip
+     * @throws IndexOutOfBoundsException Skipped over buffer capacity
+     */
+    public void skip(int len) {
+        this.readerOffset(this.readOff + len);
+    }
+
+    /**
+     * Reset writer offset
      */
     public void resetWriter() {
-        this.src.position(0);
+        this.writeOff = 0;
     }
 
     /**
-     * @return ByteBuffer position
+     * @return Writer offset
      */
     public int writeOffset() {
-        return this.src.position();
+        return this.writeOff;
+    }
+
+    /**
+     * Move writer offset, expand if growable
+     * @param off New writer offset
+     * @throws BufferOverflowException Offset exceeds max capacity
+     */
+    public void writerOffset(int off) {
+        if (off < 0)
+            throw new IndexOutOfBoundsException("Writer offset %s is negative".formatted(off));
+        ensureCapacity(off);
+        this.writeOff = off;
     }
 
+    /**
+     * Move unread bytes to the start of buffer, reader offset becomes 0
+     */
+    void compact() {
+        int len = this.writeOff - this.readOff;
+        if (this.readOff > 0 && len > 0)
+            this.src.put(0, this.src.duplicate(), this.readOff, len);
+        this.readOff = 0;
+        this.writeOff = Math.max(len, 0);
+    }
+
+    /**
+     * Reset both reader and writer offset, content will not be erased
+     */
+    public void clear() {
+        this.readOff = 0;
+        this.writeOff = 0;
+    }
+
+    /**
+     * Return this buffer to the pool it was acquired from
+     * <br>
+     * This buffer must not be used after released, no-op for buffers not from a pool
+     * @see WrappedByteBufferPool#acquire()
+     */
+    public void release() {
+        WrappedByteBufferPool p = this.pool;
+        if (p == null)
+            return;
+        this.pool = null;
+        p.recycle(this);
+    }
+
+    /**
+     * Get backing array
+     * @return Backing array
+     * @throws UnsupportedOperationException Not a heap buffer, use {@link #toArray()} instead
+     * @see #hasArray()
+     */
     public byte[] array() {
+        if (!this.src.hasArray())
+            throw new UnsupportedOperationException("Buffer is not backed by an accessible array");
         return this.src.array();
     }
 
+    /**
+     * Copy written bytes to a new array
+     * @return Bytes from 0 to writer offset
+     */
+    public byte[] toArray() {
+        byte[] out = new byte[this.writeOff];
+        this.src.get(0, out, 0, out.length);
+        return out;
+    }
+
+    /**
+     * Get wrapped ByteBuffer
+     * <br>
+     * The instance may be replaced after expanding
+     * @return Wrapped ByteBuffer
+     */
     public ByteBuffer src() {
         return this.src;
     }
@@ -0,0 +1,75 @@
+package cn.afternode.commons.binary;
+
+import java.util.ArrayDeque;
+
+/**
+ * Thread-local pool of growable WrappedByteBuffer
+ * <br>
+ * Buffers are returned to the pool of releasing thread, so each thread keeps its own stripe without locking
+ * @see WrappedByteBuffer#release()
+ */
+public class WrappedByteBufferPool {
+    private static final WrappedByteBufferPool SHARED = new WrappedByteBufferPool(WrappedByteBuffer.DEFAULT_INITIAL_SIZE, WrappedByteBuffer.MAX_CAPACITY, WrappedByteBuffer.DEFAULT_SIZE, 16);
+
+    private final int initialSize;
+    private final int maxCapacity;
+    private final int retainCapacity;
+    private final int maxPooled;
+
+    private final ThreadLocal<ArrayDeque<WrappedByteBuffer>> local = ThreadLocal.withInitial(ArrayDeque::new);
+
+    /**
+     * Primary constructor
+     * @param initialSize Initial capacity of created buffers
+     * @param maxCapacity Capacity ceiling of created buffers
+     * @param retainCapacity Buffers expanded over this capacity will be dropped instead of pooled
+     * @param maxPooled Max pooled buffers per thread
+     */
+    public WrappedByteBufferPool(int initialSize, int maxCapacity, int retainCapacity, int maxPooled) {
+        this.initialSize = initialSize;
+        this.maxCapacity = maxCapacity;
+        this.retainCapacity = retainCapacity;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Get shared pool
+     * <br>
+     * Buffers start at 256 bytes, and buffers expanded over 65535 bytes are not retained
+     * @return Shared pool
+     */
+    public static WrappedByteBufferPool shared() {
+        return SHARED;
+    }
+
+    /**
+     * Take a cleared buffer from pool, or create one if this thread has none pooled
+     * @return Buffer, call {@link WrappedByteBuffer#release()} after used
+     */
+    public WrappedByteBuffer acquire() {
+        WrappedByteBuffer bb = local.get().pollFirst();
+        if (bb == null)
+            bb = new WrappedByteBuffer(initialSize, maxCapacity);
+        bb.pool = this;
+        return bb;
+    }
+
+    void recycle(WrappedByteBuffer bb) {
+        if (bb.capacity() > retainCapacity)
+            return;
+
+        ArrayDeque<WrappedByteBuffer> deque = local.get();
+        if (deque.size() >= maxPooled)
+            return;
+
+        bb.clear();
+        deque.offerFirst(bb);
+    }
+
+    /**
+     * Drop all buffers pooled by current thread
+     */
+    public void trim() {
+        local.get().clear();
+    }
+}
@@ -0,0 +1,221 @@
+package cn.afternode.commons.binary.compression;
+
+import cn.afternode.commons.binary.WrappedByteBuffer;
+import cn.afternode.commons.serialization.SerializationException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compression stage of binary payloads
+ * <br>
+ * Frame layout: method id (byte, 0 for stored), original length (VarInt), content length (int), content.
+ * Payloads smaller than threshold, or not shrunk by compressor, are stored as-is.
+ * Frames of all built-in methods can be decompressed regardless of configured compressor
+ */
+public class Compression {
+    /**
+     * Method id of uncompressed content
+     */
+    public static final int STORED = 0;
+
+    /**
+     * Default threshold in bytes
+     */
+    public static final int DEFAULT_THRESHOLD = 256;
+
+    /**
+     * Default max decompressed length, 16 MiB
+     */
+    public static final int DEFAULT_MAX_LENGTH = 16 * 1024 * 1024;
+
+    private final Compressor compressor;
+    private final int threshold;
+    private final int maxLength;
+
+    /**
+     * Primary constructor
+     * @param compressor Compressor
+     * @param threshold Payloads smaller than this are stored
+     * @param maxLength Max decompressed length, frames declaring larger content are rejected
+     */
+    public Compression(Compressor compressor, int threshold, int maxLength) {
+        this.compressor = compressor;
+        this.threshold = threshold;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Create with default max length
+     * @param compressor Compressor
+     * @param threshold Payloads smaller than this are stored
+     */
+    public Compression(Compressor compressor, int threshold) {
+        this(compressor, threshold, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * @return LZ4 compression with default threshold
+     */
+    public static Compression lz4() {
+        return new Compression(Lz4Compressor.INSTANCE, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @return Deflate compression with default level and threshold
+     */
+    public static Compression deflate() {
+        return new Compression(DeflateCompressor.defaultLevel(), DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Compress readable bytes of source into a frame
+     * @param src Source, reader offset is moved to writer offset
+     * @param dst Target, frame is written from its writer offset
+     * @return Provided target buffer
+     */
+    public WrappedByteBuffer compress(WrappedByteBuffer src, WrappedByteBuffer dst) {
+        int len = src.writeOffset() - src.readerOffset();
+        byte[] data;
+        int off;
+        if (src.hasArray()) {
+            data = src.array();
+            off = src.src().arrayOffset() + src.readerOffset();
+        } else {
+            data = new byte[len];
+            src.readBytes(data, src.readerOffset(), len);
+            off = 0;
+        }
+        compress(data, off, len, dst);
+        src.skip(len);
+        return dst;
+    }
+
+    /**
+     * Compress readable bytes of source into a new growable buffer
+     * @param src Source, reader offset is moved to writer offset
+     * @return Frame
+     */
+    public WrappedByteBuffer compress(WrappedByteBuffer src) {
+        return compress(src, WrappedByteBuffer.growable());
+    }
+
+    /**
+     * Compress bytes into a frame
+     * @param data Source
+     * @return Frame
+     */
+    public byte[] compress(byte[] data) {
+        WrappedByteBuffer dst = new WrappedByteBuffer(data.length + 10, WrappedByteBuffer.MAX_CAPACITY);
+        compress(data, 0, data.length, dst);
+        return dst.toArray();
+    }
+
+    private void compress(byte[] data, int off, int len, WrappedByteBuffer dst) {
+        int start = dst.writeOffset();
+        if (len >= threshold) {
+            dst.writeByte((byte) compressor.id());
+            dst.writeVarInt(len);
+            int mark = dst.writeOffset();
+            int body = mark + 4;
+            int bound = compressor.maxCompressedLength(len);
+            dst.writerOffset(body + bound);
+
+            int written;
+            if (dst.hasArray()) {
+                written = compressor.compress(data, off, len, dst.array(), dst.src().arrayOffset() + body);
+            } else {
+                byte[] tmp = new byte[bound];
+                written = compressor.compress(data, off, len, tmp, 0);
+                dst.writeBytes(tmp, body, written);
+            }
+
+            if (written < len) {
+                dst.writeInt(written, mark);
+                dst.writerOffset(body + written);
+                return;
+            }
+            dst.writerOffset(start);
+        }
+
+        dst.writeByte((byte) STORED);
+        dst.writeVarInt(len);
+        dst.writeInt(len);
+        int body = dst.writeOffset();
+        dst.writerOffset(body + len);
+        dst.src().put(body, data, off, len);
+    }
+
+    /**
+     * Decompress a frame at reader offset of source
+     * @param src Source, reader offset is moved to end of frame
+     * @return Decompressed content, in a heap buffer with writer offset at its end
+     * @throws SerializationException Corrupted frame, unknown method or content too large
+     */
+    public WrappedByteBuffer decompress(WrappedByteBuffer src) {
+        int method = src.readByte() & 0xFF;
+        int len = src.readVarInt();
+        if (len < 0 || len > maxLength)
+            throw new SerializationException("Decompressed length %s exceeds limit %s".formatted(len, maxLength));
+
+        int clen = src.readInt();
+        if (clen < 0 || clen > src.writeOffset() - src.readerOffset())
+            throw new SerializationException("Truncated compression frame");
+
+        WrappedByteBuffer out = new WrappedByteBuffer(len);
+        if (method == STORED) {
+            if (clen != len)
+                throw new SerializationException("Corrupted stored frame");
+            src.readBytes(out.array(), src.readerOffset(), len);
+            src.skip(len);
+        } else {
+            Compressor c = compressor(method);
+            byte[] data;
+            int off;
+            if (src.hasArray()) {
+                data = src.array();
+                off = src.src().arrayOffset() + src.readerOffset();
+            } else {
+                data = new byte[clen];
+                src.readBytes(data, src.readerOffset(), clen);
+                off = 0;
+            }
+            c.decompress(data, off, clen, out.array(), 0, len);
+            src.skip(clen);
+        }
+        out.writerOffset(len);
+        return out;
+    }
+
+    /**
+     * Decompress a frame
+     * @param frame Frame
+     * @return Decompressed content
+     * @throws SerializationException Corrupted frame, unknown method or content too large
+     */
+    public byte[] decompress(byte[] frame) {
+        WrappedByteBuffer src = new WrappedByteBuffer(ByteBuffer.wrap(frame));
+        src.writerOffset(frame.length);
+        return decompress(src).array();
+    }
+
+    private Compressor compressor(int method) {
+        if (method == compressor.id()) return compressor;
+        if (method == Lz4Compressor.ID) return Lz4Compressor.INSTANCE;
+        if (method == DeflateCompressor.ID) return DeflateCompressor.defaultLevel();
+        throw new SerializationException("Unknown compression method %s".formatted(method));
+    }
+
+    /**
+     * @return Compressor
+     */
+    public Compressor getCompressor() {
+        return compressor;
+    }
+
+    /**
+     * @return Threshold in bytes
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+}
@@ -0,0 +1,44 @@
+package cn.afternode.commons.binary.compression;
+
+/**
+ * Block compressor used by {@link Compression}
+ * <br>
+ * Implementations must be thread-safe
+ */
+public interface Compressor {
+    /**
+     * Method id written in frame header, 1-15 are reserved for built-in compressors
+     * @return Method id
+     */
+    int id();
+
+    /**
+     * Get max length of compressed output
+     * @param length Input length
+     * @return Max output length
+     */
+    int maxCompressedLength(int length);
+
+    /**
+     * Compress bytes
+     * @param src Source
+     * @param srcOff Source offset
+     * @param length Source length
+     * @param dst Destination, at least {@link #maxCompressedLength(int)} bytes available from dstOff
+     * @param dstOff Destination offset
+     * @return Compressed length
+     */
+    int compress(byte[] src, int srcOff, int length, byte[] dst, int dstOff);
+
+    /**
+     * Decompress bytes
+     * @param src Source
+     * @param srcOff Source offset
+     * @param length Compressed length
+     * @param dst Destination
+     * @param dstOff Destination offset
+     * @param originalLength Exact length of decompressed content
+     * @throws cn.afternode.commons.serialization.SerializationException Corrupted input
+     */
+    void decompress(byte[] src, int srcOff, int length, byte[] dst, int dstOff, int originalLength);
+}
@@ -0,0 +1,185 @@
+package cn.afternode.commons.binary.compression;
+
+import cn.afternode.commons.serialization.SerializationException;
+
+import java.util.Arrays;
+
+/**
+ * Pure-Java compressor of LZ4 block format
+ * <br>
+ * Fast single-pass matching with a 4096-entry hash table, suitable for payloads compressed on main thread
+ */
+public final class Lz4Compressor implements Compressor {
+    /**
+     * Shared instance
+     */
+    public static final Lz4Compressor INSTANCE = new Lz4Compressor();
+
+    /**
+     * Method id
+     */
+    public static final int ID = 1;
+
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int HASH_LOG = 12;
+    private static final int MAX_DISTANCE = 65535;
+    private static final int SKIP_TRIGGER = 6;
+
+    private static final ThreadLocal<int[]> TABLE = ThreadLocal.withInitial(() -> new int[1 << HASH_LOG]);
+
+    private Lz4Compressor() {}
+
+    @Override
+    public int id() {
+        return ID;
+    }
+
+    @Override
+    public int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    @Override
+    public int compress(byte[] src, int srcOff, int length, byte[] dst, int dstOff) {
+        int end = srcOff + length;
+        int anchor = srcOff;
+        int op = dstOff;
+
+        if (length > MF_LIMIT) {
+            int[] table = TABLE.get();
+            Arrays.fill(table, -1);
+
+            int mfLimit = end - MF_LIMIT;
+            int matchLimit = end - LAST_LITERALS;
+            int ip = srcOff;
+            while (ip < mfLimit) {
+                int seq = readInt(src, ip);
+                int h = hash(seq);
+                int ref = table[h];
+                table[h] = ip;
+
+                if (ref < srcOff || ip - ref > MAX_DISTANCE || readInt(src, ref) != seq) {
+                    // Skip faster through incompressible data
+                    ip += 1 + ((ip - anchor) >>> SKIP_TRIGGER);
+                    continue;
+                }
+
+                while (ip > anchor && ref > srcOff && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLen = MIN_MATCH;
+                while (ip + matchLen < matchLimit && src[ip + matchLen] == src[ref + matchLen])
+                    matchLen++;
+
+                op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, matchLen);
+                ip += matchLen;
+                anchor = ip;
+            }
+        }
+
+        int literals = end - anchor;
+        int token = op++;
+        dst[token] = (byte) (Math.min(literals, 15) << 4);
+        if (literals >= 15)
+            op = writeLength(dst, op, literals - 15);
+        System.arraycopy(src, anchor, dst, op, literals);
+        op += literals;
+        return op - dstOff;
+    }
+
+    private static int writeSequence(byte[] src, int anchor, int literals, byte[] dst, int op, int offset, int matchLen) {
+        int ml = matchLen - MIN_MATCH;
+        int token = op++;
+        dst[token] = (byte) (Math.min(literals, 15) << 4 | Math.min(ml, 15));
+        if (literals >= 15)
+            op = writeLength(dst, op, literals - 15);
+        System.arraycopy(src, anchor, dst, op, literals);
+        op += literals;
+
+        dst[op++] = (byte) offset;
+        dst[op++] = (byte) (offset >>> 8);
+        if (ml >= 15)
+            op = writeLength(dst, op, ml - 15);
+        return op;
+    }
+
+    private static int writeLength(byte[] dst, int op, int length) {
+        while (length >= 255) {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op++] = (byte) length;
+        return op;
+    }
+
+    @Override
+    public void decompress(byte[] src, int srcOff, int length, byte[] dst, int dstOff, int originalLength) {
+        int ip = srcOff;
+        int end = srcOff + length;
+        int op = dstOff;
+        int oEnd = dstOff + originalLength;
+
+        while (ip < end) {
+            int token = src[ip++] & 0xFF;
+
+            int literals = token >>> 4;
+            if (literals == 15) {
+                int b;
+                do {
+                    if (ip >= end) throw corrupted();
+                    b = src[ip++] & 0xFF;
+                    literals += b;
+                } while (b == 255);
+            }
+            if (literals > end - ip || literals > oEnd - op) throw corrupted();
+            System.arraycopy(src, ip, dst, op, literals);
+            ip += literals;
+            op += literals;
+            if (ip == end)
+                break;
+
+            if (end - ip < 2) throw corrupted();
+            int offset = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+            ip += 2;
+
+            int matchLen = token & 15;
+            if (matchLen == 15) {
+                int b;
+                do {
+                    if (ip >= end) throw corrupted();
+                    b = src[ip++] & 0xFF;
+                    matchLen += b;
+                } while (b == 255);
+            }
+            matchLen += MIN_MATCH;
+
+            int ref = op - offset;
+            if (offset == 0 || ref < dstOff || matchLen > oEnd - op) throw corrupted();
+            if (offset >= matchLen) {
+                System.arraycopy(dst, ref, dst, op, matchLen);
+            } else {
+                // Overlapped match repeats recent bytes
+                for (int i = 0; i < matchLen; i++)
+                    dst[op + i] = dst[ref + i];
+            }
+            op += matchLen;
+        }
+
+        if (op != oEnd) throw corrupted();
+    }
+
+    private static SerializationException corrupted() {
+        return new SerializationException("Corrupted LZ4 block");
+    }
+
+    private static int readInt(byte[] b, int off) {
+        return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24;
+    }
+
+    private static int hash(int seq) {
+        return (seq * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
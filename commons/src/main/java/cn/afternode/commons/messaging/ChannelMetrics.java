@@ -0,0 +1,130 @@
+package cn.afternode.commons.messaging;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free traffic counters of a messaging channel
+ * <br>
+ * Sent and received messages are counted as plugin messages on the wire, a batch is one message.
+ * Handler time covers listener, packet handlers or RPC dispatch of each received plugin message
+ */
+public class ChannelMetrics {
+    private final String channel;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LogHistogram sentSizes = new LogHistogram();
+    private final LogHistogram receivedSizes = new LogHistogram();
+    private final LogHistogram handlerNanos = new LogHistogram();
+
+    /**
+     * Primary constructor
+     * @param channel Channel name
+     */
+    public ChannelMetrics(String channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Record a sent plugin message
+     * @param bytes Size on the wire, including sign
+     */
+    public void recordSent(int bytes) {
+        sent.increment();
+        sentSizes.record(bytes);
+    }
+
+    /**
+     * Record a received plugin message
+     * @param bytes Size on the wire, including sign
+     */
+    public void recordReceived(int bytes) {
+        received.increment();
+        receivedSizes.record(bytes);
+    }
+
+    /**
+     * Record a received message with invalid sign
+     */
+    public void recordRejected() {
+        rejected.increment();
+    }
+
+    /**
+     * Record an error thrown while decoding or handling a message
+     */
+    public void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * Record time spent in handlers
+     * @param nanos Time in nanoseconds
+     */
+    public void recordHandled(long nanos) {
+        handlerNanos.record(nanos);
+    }
+
+    /**
+     * Get channel name
+     * @return Channel name
+     */
+    public String getChannel() {
+        return channel;
+    }
+
+    /**
+     * Take a snapshot of all counters
+     * @return Snapshot
+     */
+    public Snapshot snapshot() {
+        LogHistogram.Snapshot sentSizes = this.sentSizes.snapshot();
+        LogHistogram.Snapshot receivedSizes = this.receivedSizes.snapshot();
+        return new Snapshot(
+                channel,
+                sent.sum(),
+                sentSizes.sum(),
+                received.sum(),
+                receivedSizes.sum(),
+                rejected.sum(),
+                errors.sum(),
+                sentSizes,
+                receivedSizes,
+                handlerNanos.snapshot()
+        );
+    }
+
+    /**
+     * Metrics snapshot of a channel
+     * @param channel Channel name
+     * @param messagesSent Sent plugin messages
+     * @param bytesSent Sent bytes
+     * @param messagesReceived Received plugin messages
+     * @param bytesReceived Received bytes
+     * @param rejected Received messages with invalid sign
+     * @param errors Errors in decoding or handling
+     * @param sentSizes Sizes of sent messages
+     * @param receivedSizes Sizes of received messages
+     * @param handlerNanos Handler time of received messages in nanoseconds
+     */
+    public record Snapshot(String channel,
+                           long messagesSent, long bytesSent,
+                           long messagesReceived, long bytesReceived,
+                           long rejected, long errors,
+                           LogHistogram.Snapshot sentSizes,
+                           LogHistogram.Snapshot receivedSizes,
+                           LogHistogram.Snapshot handlerNanos) {
+        @Override
+        public String toString() {
+            return "%s: sent %s (%s bytes, p99 %sB), received %s (%s bytes, p99 %sB), rejected %s, errors %s, handler p50 %sus p99 %sus max %sus".formatted(
+                    channel,
+                    messagesSent, bytesSent, sentSizes.percentile(99),
+                    messagesReceived, bytesReceived, receivedSizes.percentile(99),
+                    rejected, errors,
+                    handlerNanos.percentile(50) / 1000, handlerNanos.percentile(99) / 1000, handlerNanos.max() / 1000
+            );
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package cn.afternode.commons.messaging;
+
+import cn.afternode.commons.serialization.SerializationException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.time.Duration;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reassemble payloads sent by {@link ChunkStreamer}
+ * <br>
+ * Chunks may arrive in any order, and duplicated chunks are ignored. Memory is bounded by a max payload size and a max total size of transfers in progress,
+ * transfers exceeding them are dropped, and transfers receiving no chunk within timeout are dropped too
+ * @param <S> Sender type of platform
+ */
+public class ChunkAssembler<S> {
+    /**
+     * Default max size of a reassembled payload
+     */
+    public static final int DEFAULT_MAX_PAYLOAD_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Default max total size of transfers in progress
+     */
+    public static final long DEFAULT_MAX_PENDING_BYTES = 32 * 1024 * 1024;
+
+    /**
+     * Default time to wait for next chunk of a transfer
+     */
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+    private final int maxPayloadSize;
+    private final long maxPendingBytes;
+    private final long timeout;
+
+    private final Map<Key<S>, Transfer> transfers = new HashMap<>();
+    private final LongAdder dropped = new LongAdder();
+    private long pendingBytes = 0;
+    private long lastExpire = System.currentTimeMillis();
+
+    /**
+     * Create with {@link #DEFAULT_MAX_PAYLOAD_SIZE}, {@link #DEFAULT_MAX_PENDING_BYTES} and {@link #DEFAULT_TIMEOUT}
+     */
+    public ChunkAssembler() {
+        this(DEFAULT_MAX_PAYLOAD_SIZE, DEFAULT_MAX_PENDING_BYTES, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Primary constructor
+     * @param maxPayloadSize Max size of a reassembled payload
+     * @param maxPendingBytes Max total size of transfers in progress
+     * @param timeout Time to wait for next chunk of a transfer
+     * @throws IllegalArgumentException maxPayloadSize or maxPendingBytes is not positive
+     */
+    public ChunkAssembler(int maxPayloadSize, long maxPendingBytes, Duration timeout) {
+        if (maxPayloadSize <= 0)
+            throw new IllegalArgumentException("Max payload size %s is not positive".formatted(maxPayloadSize));
+        if (maxPendingBytes <= 0)
+            throw new IllegalArgumentException("Max pending bytes %s is not positive".formatted(maxPendingBytes));
+        this.maxPayloadSize = maxPayloadSize;
+        this.maxPendingBytes = maxPendingBytes;
+        this.timeout = timeout.toMillis();
+    }
+
+    /**
+     * Read a frame of chunked channel
+     * @param sender Sender
+     * @param frame Frame
+     * @return Message of a single frame, reassembled payload of the same type as frame if this chunk completes it,
+     * or null if the transfer is incomplete or dropped
+     * @param <B> Buffer type
+     * @throws SerializationException Malformed frame
+     */
+    @SuppressWarnings("unchecked")
+    public <B extends NByteBuf> B accept(S sender, B frame) {
+        ByteBuf src = frame.direct();
+        byte kind = src.readByte();
+        if (kind == ChunkStreamer.SINGLE)
+            return frame;
+        if (kind != ChunkStreamer.CHUNK)
+            throw new SerializationException("Unknown chunk frame kind %s".formatted(kind));
+
+        long id = frame.readVarLong();
+        int total = frame.readVarInt();
+        int chunkSize = frame.readVarInt();
+        int index = frame.readVarInt();
+        if (total < 0 || chunkSize <= 0 || index < 0 || index >= chunkCount(total, chunkSize))
+            throw new SerializationException("Chunk %s of size %s out of payload size %s".formatted(index, chunkSize, total));
+        int offset = index * chunkSize;
+        int len = src.readableBytes();
+        if (len != Math.min(chunkSize, total - offset))
+            throw new SerializationException("Chunk %s of %s bytes does not match payload size %s".formatted(index, len, total));
+
+        byte[] payload;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (now - lastExpire > timeout / 2)
+                this.expire(now);
+
+            Key<S> key = new Key<>(sender, id);
+            Transfer transfer = transfers.get(key);
+            if (transfer == null) {
+                if (total > maxPayloadSize || pendingBytes + total > maxPendingBytes) {
+                    dropped.increment();
+                    return null;
+                }
+                transfer = new Transfer(new byte[total], chunkSize);
+                transfers.put(key, transfer);
+                pendingBytes += total;
+            } else if (transfer.data.length != total || transfer.chunkSize != chunkSize) {
+                this.remove(key, transfer);
+                throw new SerializationException("Layout of transfer %s changed".formatted(id));
+            }
+
+            transfer.lastSeen = now;
+            if (transfer.chunks.get(index))
+                return null;
+            src.readBytes(transfer.data, offset, len);
+            transfer.chunks.set(index);
+            if (++transfer.received < chunkCount(total, chunkSize))
+                return null;
+            this.remove(key, transfer);
+            payload = transfer.data;
+        }
+        return (B) frame.view(Unpooled.wrappedBuffer(payload));
+    }
+
+    // An empty payload is sent as one empty chunk
+    private static int chunkCount(int total, int chunkSize) {
+        return Math.max(1, (int) (((long) total + chunkSize - 1) / chunkSize));
+    }
+
+    private void remove(Key<S> key, Transfer transfer) {
+        transfers.remove(key);
+        pendingBytes -= transfer.data.length;
+    }
+
+    private void expire(long now) {
+        lastExpire = now;
+        Iterator<Transfer> it = transfers.values().iterator();
+        while (it.hasNext()) {
+            Transfer transfer = it.next();
+            if (now - transfer.lastSeen > timeout) {
+                it.remove();
+                pendingBytes -= transfer.data.length;
+                dropped.increment();
+            }
+        }
+    }
+
+    /**
+     * Drop all transfers in progress
+     */
+    public synchronized void clear() {
+        transfers.clear();
+        pendingBytes = 0;
+    }
+
+    /**
+     * Get count of transfers in progress
+     * @return Count
+     */
+    public synchronized int pendingCount() {
+        return transfers.size();
+    }
+
+    /**
+     * Get total size of transfers in progress
+     * @return Size in bytes
+     */
+    public synchronized long pendingBytes() {
+        return pendingBytes;
+    }
+
+    /**
+     * Get count of transfers dropped for size limits or timeout
+     * @return Count
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    private record Key<S>(S sender, long id) {}
+
+    private static class Transfer {
+        private final byte[] data;
+        private final int chunkSize;
+        private final BitSet chunks = new BitSet();
+        private int received = 0;
+        private long lastSeen;
+
+        private Transfer(byte[] data, int chunkSize) {
+            this.data = data;
+            this.chunkSize = chunkSize;
+        }
+    }
+}
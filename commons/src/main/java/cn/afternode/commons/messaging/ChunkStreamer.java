@@ -0,0 +1,151 @@
+package cn.afternode.commons.messaging;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Split payloads larger than a plugin message into chunk frames, and send a limited number of chunks per tick
+ * <br>
+ * On a chunked channel every message starts with a kind byte: single messages are framed by {@link #single(NByteBuf)},
+ * and chunk frames carry a VarLong transfer id, VarInt total length, VarInt chunk size, VarInt chunk index and chunk data.
+ * Transfers in progress take turns, so a large transfer does not delay smaller ones until it completes
+ * @param <T> Target type, such as a player or a server
+ * @see ChunkAssembler
+ */
+public class ChunkStreamer<T> {
+    /**
+     * Default chunk data size, a chunk frame fits in {@link MessageBatcher#DEFAULT_MAX_SIZE}
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 31 * 1024;
+
+    /**
+     * Default max chunks sent in a tick
+     */
+    public static final int DEFAULT_CHUNKS_PER_TICK = 4;
+
+    static final byte SINGLE = 0;
+    static final byte CHUNK = 1;
+
+    private final int chunkSize;
+    private final int chunksPerTick;
+    private final MessageSink<T> sink;
+
+    private final ArrayDeque<Transfer<T>> queue = new ArrayDeque<>();
+    private final AtomicLong ids = new AtomicLong(ThreadLocalRandom.current().nextLong());
+
+    /**
+     * Primary constructor
+     * @param chunkSize Max data size of a chunk
+     * @param chunksPerTick Max chunks sent in a {@link #tick()}
+     * @param sink Output of chunk frames
+     * @throws IllegalArgumentException chunkSize or chunksPerTick is not positive
+     */
+    public ChunkStreamer(int chunkSize, int chunksPerTick, MessageSink<T> sink) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("Chunk size %s is not positive".formatted(chunkSize));
+        if (chunksPerTick <= 0)
+            throw new IllegalArgumentException("Chunks per tick %s is not positive".formatted(chunksPerTick));
+        this.chunkSize = chunkSize;
+        this.chunksPerTick = chunksPerTick;
+        this.sink = sink;
+    }
+
+    /**
+     * Frame a message sent without chunking on a chunked channel
+     * @param message Message, reader index is not moved
+     * @return Framed copy, must be closed
+     */
+    public static NByteBuf single(NByteBuf message) {
+        ByteBuf src = message.direct();
+        NByteBuf framed = NByteBuf.pooled();
+        framed.direct().writeByte(SINGLE).writeBytes(src, src.readerIndex(), src.readableBytes());
+        return framed;
+    }
+
+    /**
+     * Queue a copy of readable bytes of payload, reader index is not moved
+     * @param target Target
+     * @param payload Payload
+     * @return Future completed when the last chunk is sent, or exceptionally with the error of sink
+     */
+    public CompletableFuture<Void> submit(T target, NByteBuf payload) {
+        ByteBuf src = payload.direct();
+        byte[] data = new byte[src.readableBytes()];
+        src.getBytes(src.readerIndex(), data);
+
+        Transfer<T> transfer = new Transfer<>(target, ids.incrementAndGet(), data);
+        synchronized (this) {
+            queue.add(transfer);
+        }
+        return transfer.future;
+    }
+
+    /**
+     * Send next chunks of queued transfers, one chunk of each transfer in turn
+     * @return Count of chunks sent
+     */
+    public synchronized int tick() {
+        int count = 0;
+        Transfer<T> transfer;
+        while (count < chunksPerTick && (transfer = queue.poll()) != null) {
+            int len = Math.min(chunkSize, transfer.data.length - transfer.offset);
+            count++;
+            try (NByteBuf frame = NByteBuf.pooled()) {
+                frame.direct().writeByte(CHUNK);
+                frame.writeVarLong(transfer.id);
+                frame.writeVarInt(transfer.data.length);
+                frame.writeVarInt(chunkSize);
+                frame.writeVarInt(transfer.offset / chunkSize);
+                frame.direct().writeBytes(transfer.data, transfer.offset, len);
+                sink.send(transfer.target, frame);
+            } catch (Exception ex) {
+                transfer.future.completeExceptionally(ex);
+                continue;
+            }
+
+            transfer.offset += len;
+            if (transfer.offset < transfer.data.length) {
+                queue.add(transfer);
+            } else {
+                transfer.future.complete(null);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Check if any transfer is in progress
+     * @return Has queued transfers
+     */
+    public synchronized boolean hasPending() {
+        return !queue.isEmpty();
+    }
+
+    /**
+     * Cancel all queued transfers, such as when the channel is closed
+     * @param cause Cause
+     */
+    public synchronized void failAll(Throwable cause) {
+        Transfer<T> transfer;
+        while ((transfer = queue.poll()) != null)
+            transfer.future.completeExceptionally(cause);
+    }
+
+    private static class Transfer<T> {
+        private final T target;
+        private final long id;
+        private final byte[] data;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private int offset = 0;
+
+        private Transfer(T target, long id, byte[] data) {
+            this.target = target;
+            this.id = id;
+            this.data = data;
+        }
+    }
+}
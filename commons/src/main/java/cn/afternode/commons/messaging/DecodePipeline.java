@@ -0,0 +1,138 @@
+package cn.afternode.commons.messaging;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Decode incoming messages on workers and deliver the results on a single thread, such as server main thread
+ * <br>
+ * Decode tasks produce a delivery action, queued in submission order. Actions are run by {@link #drain()},
+ * a delivery waits for all earlier ones so the order of messages is kept even with multiple workers
+ * <br>
+ * The queue is bounded, {@link DropPolicy} decides which message is dropped when it is full
+ */
+public class DecodePipeline {
+    private final Executor executor;
+    private final ArrayBlockingQueue<CompletableFuture<Runnable>> queue;
+    private final int maxPerDrain;
+    private final DropPolicy policy;
+    private final Consumer<Throwable> errorHandler;
+
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Primary constructor
+     * @param executor Executor of decode tasks
+     * @param capacity Max messages decoding or waiting for delivery
+     * @param maxPerDrain Max deliveries in one {@link #drain()}, rest are left for next drain
+     * @param policy Policy when queue is full
+     * @param errorHandler Handler of decode and delivery errors, called on draining thread
+     * @throws IllegalArgumentException capacity or maxPerDrain is not positive
+     */
+    public DecodePipeline(Executor executor, int capacity, int maxPerDrain, DropPolicy policy, Consumer<Throwable> errorHandler) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity %s is not positive".formatted(capacity));
+        if (maxPerDrain <= 0)
+            throw new IllegalArgumentException("Max deliveries per drain %s is not positive".formatted(maxPerDrain));
+        this.executor = executor;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxPerDrain = maxPerDrain;
+        this.policy = policy;
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Submit a decode task
+     * @param decode Decode task, returns the delivery action or null for nothing to deliver
+     * @return False if this message was dropped
+     */
+    public boolean submit(Callable<Runnable> decode) {
+        CompletableFuture<Runnable> slot = new CompletableFuture<>();
+        if (!queue.offer(slot)) {
+            if (policy == DropPolicy.DROP_NEWEST || !this.dropOldest() || !queue.offer(slot)) {
+                dropped.increment();
+                return false;
+            }
+        }
+
+        executor.execute(() -> {
+            // Dropped before started
+            if (slot.isDone())
+                return;
+            try {
+                slot.complete(decode.call());
+            } catch (Throwable t) {
+                slot.completeExceptionally(t);
+            }
+        });
+        return true;
+    }
+
+    private synchronized boolean dropOldest() {
+        CompletableFuture<Runnable> oldest = queue.poll();
+        if (oldest == null)
+            return false;
+        oldest.cancel(false);
+        dropped.increment();
+        return true;
+    }
+
+    /**
+     * Run decoded deliveries in submission order, stop at the first one still decoding
+     * @return Count of deliveries run or failed
+     */
+    public synchronized int drain() {
+        int count = 0;
+        CompletableFuture<Runnable> head;
+        while (count < maxPerDrain && (head = queue.peek()) != null && head.isDone()) {
+            queue.poll();
+            count++;
+
+            try {
+                Runnable delivery = head.join();
+                if (delivery != null)
+                    delivery.run();
+            } catch (CompletionException ex) {
+                errorHandler.accept(ex.getCause());
+            } catch (RuntimeException ex) {
+                errorHandler.accept(ex);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get count of messages decoding or waiting for delivery
+     * @return Count
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Get count of dropped messages
+     * @return Count
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Policy when the queue is full
+     */
+    public enum DropPolicy {
+        /**
+         * Drop incoming message
+         */
+        DROP_NEWEST,
+        /**
+         * Drop the oldest message not delivered yet, for channels where only the latest state matters
+         */
+        DROP_OLDEST
+    }
+}
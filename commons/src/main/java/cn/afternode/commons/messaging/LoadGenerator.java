@@ -0,0 +1,122 @@
+package cn.afternode.commons.messaging;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Push messages at a fixed rate across simulated players, for benchmarks and regression tests with {@link LoopbackTransport}
+ * <br>
+ * Messages are sent to players in round-robin order. Missed messages are caught up on next tick,
+ * so the average rate is kept even if the sink is slower than a tick
+ * @param <P> Player type
+ */
+public class LoadGenerator<P> implements Closeable {
+    /**
+     * Default tick interval in milliseconds
+     */
+    public static final long DEFAULT_TICK_MILLIS = 10;
+
+    private final List<P> players;
+    private final int messagesPerSecond;
+    private final Consumer<NByteBuf> payload;
+    private final MessageSink<P> sink;
+
+    private final LongAdder errors = new LongAdder();
+    private long startNanos;
+    private long sent = 0;
+    private ScheduledFuture<?> task = null;
+
+    /**
+     * Primary constructor
+     * @param players Simulated players
+     * @param messagesPerSecond Messages sent in a second across all players
+     * @param payload Writer of message content, called for each message
+     * @param sink Output, such as send method of a channel context
+     * @throws IllegalArgumentException players is empty, or messagesPerSecond is not positive
+     */
+    public LoadGenerator(List<P> players, int messagesPerSecond, Consumer<NByteBuf> payload, MessageSink<P> sink) {
+        if (players.isEmpty())
+            throw new IllegalArgumentException("No players to simulate");
+        if (messagesPerSecond <= 0)
+            throw new IllegalArgumentException("Messages per second %s is not positive".formatted(messagesPerSecond));
+        this.players = List.copyOf(players);
+        this.messagesPerSecond = messagesPerSecond;
+        this.payload = payload;
+        this.sink = sink;
+    }
+
+    /**
+     * Start sending with {@link #DEFAULT_TICK_MILLIS}
+     * @param scheduler Scheduler of ticks
+     * @see #start(ScheduledExecutorService, long)
+     */
+    public void start(ScheduledExecutorService scheduler) {
+        this.start(scheduler, DEFAULT_TICK_MILLIS);
+    }
+
+    /**
+     * Start sending
+     * @param scheduler Scheduler of ticks
+     * @param tickMillis Tick interval in milliseconds
+     * @throws IllegalStateException Already started
+     */
+    public synchronized void start(ScheduledExecutorService scheduler, long tickMillis) {
+        if (task != null)
+            throw new IllegalStateException("Load generator already started");
+        startNanos = System.nanoTime();
+        task = scheduler.scheduleAtFixedRate(this::tick, 0, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send messages due since start
+     * @return Count of messages sent in this tick, 0 if not started
+     */
+    public synchronized int tick() {
+        if (task == null)
+            return 0;
+        long due = (System.nanoTime() - startNanos) / 1000 * messagesPerSecond / 1_000_000L;
+        int count = 0;
+        for (; sent < due; sent++, count++) {
+            P player = players.get((int) (sent % players.size()));
+            try (NByteBuf buf = NByteBuf.pooled()) {
+                payload.accept(buf);
+                sink.send(player, buf);
+            } catch (Exception ex) {
+                errors.increment();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get count of messages sent, including failed ones
+     * @return Count
+     */
+    public synchronized long sent() {
+        return sent;
+    }
+
+    /**
+     * Get count of messages failed in payload writer or sink
+     * @return Count
+     */
+    public long errors() {
+        return errors.sum();
+    }
+
+    /**
+     * Stop sending, a running tick is completed
+     */
+    @Override
+    public synchronized void close() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package cn.afternode.commons.messaging;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram with power of two buckets
+ * <br>
+ * Bucket i counts values in [2^(i-1), 2^i - 1], bucket 0 counts zeros. Percentiles are exact to a factor of 2,
+ * which is enough to tell message sizes or latencies apart by order of magnitude
+ */
+public class LogHistogram {
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+    /**
+     * Create an empty histogram
+     */
+    public LogHistogram() {
+        for (int i = 0; i < BUCKETS; i++)
+            buckets[i] = new LongAdder();
+    }
+
+    /**
+     * Record a value, negative values are recorded as 0
+     * @param value Value
+     */
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        buckets[BUCKETS - Long.numberOfLeadingZeros(value)].increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Take a snapshot, counters recorded concurrently may be partially included
+     * @return Snapshot
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        return new Snapshot(count, sum.sum(), max.get(), counts);
+    }
+
+    /**
+     * Histogram snapshot
+     * @param count Count of values
+     * @param sum Sum of values
+     * @param max Max value
+     * @param buckets Counts of buckets
+     */
+    public record Snapshot(long count, long sum, long max, long[] buckets) {
+        /**
+         * Get mean value
+         * @return Mean, or 0 if empty
+         */
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Get upper bound of the bucket containing specified percentile
+         * @param percentile Percentile in [0, 100]
+         * @return Upper bound, never greater than max
+         * @throws IllegalArgumentException percentile out of range
+         */
+        public long percentile(double percentile) {
+            if (percentile < 0 || percentile > 100)
+                throw new IllegalArgumentException("Percentile %s out of range".formatted(percentile));
+            if (count == 0)
+                return 0;
+
+            long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank)
+                    return Math.min(max, i == 0 ? 0 : (1L << i) - 1);
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package cn.afternode.commons.messaging;
+
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * In-JVM transport delivering plugin messages to the receiving side of another channel context directly
+ * <br>
+ * Connects channel contexts of different platforms without a real proxy, for tests and load simulation.
+ * For example, backend messages to a player arrive at the proxy context as sent by the matching proxied player:
+ * <pre>{@code
+ * backend.setTransport(new LoopbackTransport<>(proxiedPlayers::get, proxy::receive));
+ * }</pre>
+ * Messages are copied as if sent over network
+ * @param <T> Target type on sending side
+ * @param <S> Sender type on receiving side
+ */
+public class LoopbackTransport<T, S> implements MessageTransport<T> {
+    private final Function<T, S> senders;
+    private final BiConsumer<S, byte[]> receiver;
+    private final Executor executor;
+    private final int maxSize;
+
+    /**
+     * Create a transport delivering on sending thread without size limit
+     * @param senders Mapping from target to sender seen by receiver
+     * @param receiver Receiving side, such as receive method of a channel context
+     */
+    public LoopbackTransport(Function<T, S> senders, BiConsumer<S, byte[]> receiver) {
+        this(senders, receiver, Runnable::run, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Primary constructor
+     * @param senders Mapping from target to sender seen by receiver
+     * @param receiver Receiving side, such as receive method of a channel context
+     * @param executor Executor of deliveries, such as a single thread standing for main thread of receiver
+     * @param maxSize Max plugin message size, 32766 for serverbound messages
+     * @throws IllegalArgumentException maxSize is not positive
+     */
+    public LoopbackTransport(Function<T, S> senders, BiConsumer<S, byte[]> receiver, Executor executor, int maxSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("Max size %s is not positive".formatted(maxSize));
+        this.senders = senders;
+        this.receiver = receiver;
+        this.executor = executor;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Deliver a copy of data to receiver
+     * @param target Target
+     * @param data Plugin message, may be shared between targets and must not be modified
+     * @throws IllegalArgumentException Data is larger than max size
+     */
+    @Override
+    public void send(T target, byte[] data) {
+        if (data.length > maxSize)
+            throw new IllegalArgumentException("Plugin message of %s bytes exceeds %s".formatted(data.length, maxSize));
+        S sender = senders.apply(target);
+        byte[] copy = data.clone();
+        executor.execute(() -> receiver.accept(sender, copy));
+    }
+}
@@ -0,0 +1,129 @@
+package cn.afternode.commons.messaging;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Coalesce messages queued for the same target into batch frames
+ * <br>
+ * A batch is a sequence of VarInt length prefixed messages, split when reaching the max size.
+ * A message larger than max size is sent as a batch of its own
+ * @param <T> Target type, such as a player or a server
+ * @see #forEach(NByteBuf, Consumer)
+ */
+public class MessageBatcher<T> {
+    /**
+     * Default max batch size, leaves room for sign under the 32766 bytes limit of serverbound plugin messages
+     */
+    public static final int DEFAULT_MAX_SIZE = 32000;
+
+    private final int maxSize;
+    private final MessageSink<T> sink;
+
+    private Map<T, Pending> pending = new LinkedHashMap<>();
+
+    /**
+     * Primary constructor
+     * @param maxSize Max batch size in bytes
+     * @param sink Batch consumer, called on flushing thread
+     * @throws IllegalArgumentException maxSize is not positive
+     */
+    public MessageBatcher(int maxSize, MessageSink<T> sink) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("Max batch size %s is not positive".formatted(maxSize));
+        this.maxSize = maxSize;
+        this.sink = sink;
+    }
+
+    /**
+     * Queue a copy of readable bytes of message, reader index is not moved
+     * @param target Target
+     * @param message Message
+     * @return True if nothing was queued before, caller should schedule a flush
+     */
+    public synchronized boolean add(T target, NByteBuf message) {
+        boolean first = pending.isEmpty();
+        ByteBuf src = message.direct();
+        int len = src.readableBytes();
+
+        Pending p = pending.computeIfAbsent(target, t -> new Pending());
+        int entrySize = varIntSize(len) + len;
+        if (p.current != null && p.current.direct().readableBytes() + entrySize > maxSize) {
+            p.full.add(p.current);
+            p.current = null;
+        }
+        if (p.current == null)
+            p.current = NByteBuf.pooled();
+
+        p.current.writeVarInt(len);
+        p.current.direct().writeBytes(src, src.readerIndex(), len);
+        return first;
+    }
+
+    /**
+     * Send all queued batches to sink, in queued order of targets
+     * <br>
+     * Batches are released after sink returned, even if it throws
+     * @throws Exception First exception thrown by sink, remaining batches are still sent
+     */
+    public void flush() throws Exception {
+        Map<T, Pending> drained;
+        synchronized (this) {
+            if (pending.isEmpty())
+                return;
+            drained = pending;
+            pending = new LinkedHashMap<>();
+        }
+
+        Exception error = null;
+        for (Map.Entry<T, Pending> e : drained.entrySet()) {
+            Pending p = e.getValue();
+            p.full.add(p.current);
+            for (NByteBuf batch : p.full) {
+                try (batch) {
+                    sink.send(e.getKey(), batch);
+                } catch (Exception ex) {
+                    if (error == null)
+                        error = ex;
+                }
+            }
+        }
+        if (error != null)
+            throw error;
+    }
+
+    /**
+     * Check if any message is queued
+     * @return Has queued messages
+     */
+    public synchronized boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Read messages of a batch as views
+     * @param batch Batch
+     * @param action Action for each message
+     * @param <B> Buffer type
+     */
+    @SuppressWarnings("unchecked")
+    public static <B extends NByteBuf> void forEach(B batch, Consumer<B> action) {
+        ByteBuf src = batch.direct();
+        while (src.isReadable())
+            action.accept((B) batch.readSlice(batch.readVarInt()));
+    }
+
+    private static int varIntSize(int value) {
+        return (31 - Integer.numberOfLeadingZeros(value | 1)) / 7 + 1;
+    }
+
+    private static class Pending {
+        private final List<NByteBuf> full = new ArrayList<>(1);
+        private NByteBuf current;
+    }
+}
@@ -0,0 +1,16 @@
+package cn.afternode.commons.messaging;
+
+/**
+ * Platform specific output of a messaging channel
+ * @param <T> Target type, such as a player or a server
+ */
+@FunctionalInterface
+public interface MessageSink<T> {
+    /**
+     * Send readable bytes of message to target
+     * @param target Target
+     * @param message Message, may be released after returned
+     * @throws Exception Signing or sending error
+     */
+    void send(T target, NByteBuf message) throws Exception;
+}
@@ -0,0 +1,15 @@
+package cn.afternode.commons.messaging;
+
+/**
+ * Output of encoded plugin messages of a channel, such as platform plugin messaging or a {@link LoopbackTransport}
+ * @param <T> Target type, such as a player or a server
+ */
+@FunctionalInterface
+public interface MessageTransport<T> {
+    /**
+     * Send an encoded plugin message to target
+     * @param target Target
+     * @param data Plugin message, may be shared between targets and must not be modified
+     */
+    void send(T target, byte[] data);
+}
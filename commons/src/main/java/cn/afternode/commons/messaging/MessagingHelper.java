@@ -0,0 +1,331 @@
+package cn.afternode.commons.messaging;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Platform independent messaging helper with signing support
+ * <br>
+ * Combined frames are a sign block followed by a data block, identical on all platforms.
+ * The data block starts with sender id, sequence number and timestamp (3 longs) used by {@link ReplayFilter}
+ * <br>
+ * Keys can be rotated without restarting the network, see {@link #rotateKey(String)}
+ */
+public class MessagingHelper {
+    private static final int HEADER_SIZE = 24;
+
+    private volatile SecretKeySpec key;
+    private volatile SecretKeySpec secondaryKey;
+    private final ThreadLocal<CachedMac> macs = new ThreadLocal<>();
+    private final ThreadLocal<CachedMac> secondaryMacs = new ThreadLocal<>();
+    private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<>();
+
+    private final long senderId = new SecureRandom().nextLong();
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile ReplayFilter replayFilter = new ReplayFilter();
+    private final Map<String, ChannelMetrics> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * Check if signing is available
+     * @return Is signing available
+     */
+    public boolean signingAvailable() {
+        SecretKeySpec key = this.key;
+        return key != null && !key.isDestroyed();
+    }
+
+    /**
+     * Set signing key (HmacSHA256)
+     * <br>
+     * Cached Mac instances of all threads are initialized again with the new key on next use
+     * @param key HmacSHA256 key, the recommended size is 64 bytes
+     */
+    public void setKey(String key) {
+        this.key = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+    }
+
+    /**
+     * Set a key accepted in validation besides the signing key, never used for signing
+     * <br>
+     * A network-wide rotation is: set the new key as secondary key on all nodes, {@link #rotateKey(String)} to it on all nodes,
+     * then remove the secondary key. No combined frame is rejected during the rotation
+     * @param key HmacSHA256 key, or null to remove
+     */
+    public void setSecondaryKey(String key) {
+        this.secondaryKey = key == null ? null : new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+    }
+
+    /**
+     * Sign with a new key, and keep accepting the current signing key as secondary key
+     * @param key New HmacSHA256 key
+     * @see #setSecondaryKey(String)
+     */
+    public void rotateKey(String key) {
+        this.secondaryKey = this.key;
+        this.setKey(key);
+    }
+
+    /**
+     * Set replay filter of combined frames
+     * @param filter Filter, or null to disable replay protection
+     */
+    public void setReplayFilter(ReplayFilter filter) {
+        this.replayFilter = filter;
+    }
+
+    /**
+     * Get sender id written into combined frames, random for each helper instance
+     * @return Sender id
+     */
+    public long getSenderId() {
+        return senderId;
+    }
+
+    private Mac mac() throws NoSuchAlgorithmException, InvalidKeyException {
+        SecretKeySpec key = this.key;
+        if (key == null || key.isDestroyed())
+            throw new IllegalStateException("Signing not available");
+        return mac(key, macs);
+    }
+
+    // Mac of current thread initialized with specified key, created once per thread and key
+    private static Mac mac(SecretKeySpec key, ThreadLocal<CachedMac> cache) throws NoSuchAlgorithmException, InvalidKeyException {
+        CachedMac cached = cache.get();
+        if (cached == null || cached.key() != key) {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            cached = new CachedMac(key, mac);
+            cache.set(cached);
+        } else {
+            // Discard state left by an interrupted computation, no-op otherwise
+            cached.mac().reset();
+        }
+        return cached.mac();
+    }
+
+    private static void doFinal(Mac mac, byte[] out, int offset) {
+        try {
+            mac.doFinal(out, offset);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(Mac mac, ByteBuf src, int index, int len) {
+        if (src.hasArray()) {
+            mac.update(src.array(), src.arrayOffset() + index, len);
+        } else {
+            mac.update(src.nioBuffer(index, len));
+        }
+    }
+
+    /**
+     * Generate data sign
+     * @param data Data
+     * @return Sign
+     * @throws NoSuchAlgorithmException Mac.getInstance error
+     * @throws InvalidKeyException If the given key is inappropriate for initializing this MAC
+     * @throws IllegalStateException Signing not available
+     * @see #setKey(String)
+     * @see Mac#getInstance(String)
+     * @see Mac#init(Key)
+     */
+    public byte[] sign(byte[] data) throws NoSuchAlgorithmException, InvalidKeyException {
+        return mac().doFinal(data);
+    }
+
+    /**
+     * Generate sign of readable bytes without copying, reader index is not moved
+     * @param data Data
+     * @return Sign
+     * @throws NoSuchAlgorithmException Mac.getInstance error
+     * @throws InvalidKeyException If the given key is inappropriate for initializing this MAC
+     * @throws IllegalStateException Signing not available
+     */
+    public byte[] sign(NByteBuf data) throws NoSuchAlgorithmException, InvalidKeyException {
+        ByteBuf src = data.direct();
+        Mac mac = mac();
+        update(mac, src, src.readerIndex(), src.readableBytes());
+        return mac.doFinal();
+    }
+
+    /**
+     * Sign data with a new sequence number and current time, and combine to a byte array
+     * <br>
+     * Readable bytes of buf are copied only once into the result, and sign is computed over the result directly
+     * @param buf Data, reader index is not moved
+     * @return Combined sign and data
+     * @throws NoSuchAlgorithmException Mac.getInstance error
+     * @throws InvalidKeyException If the given key is inappropriate for initializing this MAC
+     * @see #sign(NByteBuf)
+     * @see #validateCombined(NByteBuf)
+     */
+    public byte[] combineSign(NByteBuf buf) throws NoSuchAlgorithmException, InvalidKeyException {
+        Mac mac = mac();
+        int signLen = mac.getMacLength();
+        ByteBuf src = buf.direct();
+        int len = HEADER_SIZE + src.readableBytes();
+        if (len > 0xFFFF)
+            throw new IllegalArgumentException("Data of %s bytes is too large to sign".formatted(src.readableBytes()));
+
+        byte[] out = new byte[4 + signLen + len];
+        int dataAt = 4 + signLen;
+        Unpooled.wrappedBuffer(out).writerIndex(0)
+                .writeShortLE(signLen)
+                .writerIndex(2 + signLen)
+                .writeShortLE(len)
+                .writeLong(senderId)
+                .writeLong(sequence.incrementAndGet())
+                .writeLong(System.currentTimeMillis())
+                .writeBytes(src, src.readerIndex(), src.readableBytes());
+
+        mac.update(out, dataAt, len);
+        doFinal(mac, out, 2);
+        return out;
+    }
+
+    /**
+     * Validate a sign in constant time
+     * @param sign Sign
+     * @param data Data
+     * @return If sign is valid
+     * @throws NoSuchAlgorithmException Mac.getInstance error
+     * @throws InvalidKeyException If the given key is inappropriate for initializing this MAC
+     */
+    public boolean validate(byte[] sign, byte[] data) throws InvalidKeyException, NoSuchAlgorithmException {
+        return MessageDigest.isEqual(sign, mac().doFinal(data));
+    }
+
+    /**
+     * Validate a sign over readable bytes of buffer without copying, reader index is not moved
+     * @param sign Sign
+     * @param data Data
+     * @return If sign is valid
+     * @throws NoSuchAlgorithmException Mac.getInstance error
+     * @throws InvalidKeyException If the given key is inappropriate for initializing this MAC
+     */
+    public boolean validate(byte[] sign, NByteBuf data) throws InvalidKeyException, NoSuchAlgorithmException {
+        ByteBuf src = data.direct();
+        return validate(sign, src, src.readerIndex(), src.readableBytes());
+    }
+
+    private boolean validate(byte[] sign, ByteBuf src, int index, int len) throws InvalidKeyException, NoSuchAlgorithmException {
+        Mac mac = mac();
+        update(mac, src, index, len);
+        return MessageDigest.isEqual(sign, mac.doFinal());
+    }
+
+    /**
+     * Validate combined signed data with signing key or secondary key, and check it with replay filter
+     * <br>
+     * Sign is computed and compared over source buffer directly, and the returned body is a read-only view of it
+     * @param buf Data
+     * @return Data body of the same type as buf, or null if sign is invalid or the frame is expired or replayed
+     * @throws NoSuchAlgorithmException Mac.getInstance error
+     * @throws InvalidKeyException If the given key is inappropriate for initializing this MAC
+     * @see #combineSign(NByteBuf)
+     * @see #validate(byte[], byte[])
+     */
+    public NByteBuf validateCombined(NByteBuf buf) throws NoSuchAlgorithmException, InvalidKeyException {
+        Mac mac = mac();
+        ByteBuf src = buf.direct();
+        // Truncated or garbage frames are rejected the same as invalid sign
+        if (src.readableBytes() < 2)
+            return null;
+        int signLen = src.readUnsignedShortLE();
+        int signAt = src.readerIndex();
+        if (src.readableBytes() < signLen + 2)
+            return null;
+        src.skipBytes(signLen);
+        int len = src.readUnsignedShortLE();
+        int dataAt = src.readerIndex();
+        if (len < HEADER_SIZE || len > src.readableBytes())
+            return null;
+
+        if (!verify(mac, src, signAt, signLen, dataAt, len)) {
+            SecretKeySpec secondary = this.secondaryKey;
+            if (secondary == null || secondary.isDestroyed() || !verify(mac(secondary, secondaryMacs), src, signAt, signLen, dataAt, len))
+                return null;
+        }
+
+        ReplayFilter filter = this.replayFilter;
+        if (filter != null && !filter.accept(src.getLong(dataAt), src.getLong(dataAt + 8), src.getLong(dataAt + 16)))
+            return null;
+        src.skipBytes(HEADER_SIZE);
+        return buf.readSlice(len - HEADER_SIZE);
+    }
+
+    // Compare sign in constant time without copying it out of the buffer, expected sign goes to a per-thread scratch array
+    private static boolean verify(Mac mac, ByteBuf src, int signAt, int signLen, int dataAt, int len) {
+        int macLen = mac.getMacLength();
+        if (signLen != macLen)
+            return false;
+        byte[] expected = SCRATCH.get();
+        if (expected == null || expected.length != macLen) {
+            expected = new byte[macLen];
+            SCRATCH.set(expected);
+        }
+        update(mac, src, dataAt, len);
+        doFinal(mac, expected, 0);
+        int diff = 0;
+        for (int i = 0; i < signLen; i++)
+            diff |= expected[i] ^ src.getByte(signAt + i);
+        return diff == 0;
+    }
+
+    /**
+     * Create metrics of a newly registered channel, replacing metrics of a channel registered with the same name
+     * @param channel Channel name
+     * @return Metrics
+     */
+    protected ChannelMetrics createMetrics(String channel) {
+        ChannelMetrics m = new ChannelMetrics(channel);
+        metrics.put(channel, m);
+        return m;
+    }
+
+    /**
+     * Remove metrics of a closed channel
+     * @param metrics Metrics
+     */
+    protected void removeMetrics(ChannelMetrics metrics) {
+        this.metrics.remove(metrics.getChannel(), metrics);
+    }
+
+    /**
+     * Get metrics of a registered channel
+     * @param channel Channel name
+     * @return Metrics, or null if not registered
+     */
+    public ChannelMetrics getMetrics(String channel) {
+        return metrics.get(channel);
+    }
+
+    /**
+     * Take metrics snapshots of all registered channels
+     * @return Snapshots
+     */
+    public List<ChannelMetrics.Snapshot> snapshotMetrics() {
+        List<ChannelMetrics.Snapshot> result = new ArrayList<>(metrics.size());
+        for (ChannelMetrics m : metrics.values())
+            result.add(m.snapshot());
+        return result;
+    }
+
+    private record CachedMac(SecretKeySpec key, Mac mac) {}
+}
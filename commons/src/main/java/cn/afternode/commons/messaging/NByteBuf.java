@@ -0,0 +1,560 @@
+package cn.afternode.commons.messaging;
+
+import cn.afternode.commons.binary.BinaryCodec;
+import cn.afternode.commons.binary.WrappedByteBuffer;
+import cn.afternode.commons.binary.WrappedByteBufferPool;
+import cn.afternode.commons.binary.compression.Compression;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Netty ByteBuf wrapper shared by all platforms
+ * <br>
+ * Shorts and integers are little-endian, long integers are big-endian, so frames are compatible between bukkit, bungee and velocity
+ * <br>
+ * Netty is not bundled, it's provided by server
+ */
+public class NByteBuf implements AutoCloseable {
+    private final ByteBuf src;
+    private final boolean owner;
+
+    /**
+     * Create with a copy of data
+     * @param data Data
+     * @see #wrap(byte[])
+     */
+    public NByteBuf(byte[] data) {
+        this(Unpooled.copiedBuffer(data));
+    }
+
+    public NByteBuf() {
+        this(Unpooled.buffer());
+    }
+
+    /**
+     * Wrap an existing netty ByteBuf, content is not copied
+     * <br>
+     * Ownership is taken, {@link #close()} will release the source
+     * @param src Source ByteBuf
+     */
+    public NByteBuf(ByteBuf src) {
+        this(src, true);
+    }
+
+    protected NByteBuf(ByteBuf src, boolean owner) {
+        this.src = src;
+        this.owner = owner;
+    }
+
+    /**
+     * Wrap inbound data without copying
+     * <br>
+     * Array must not be modified while this buffer is in use, and the buffer can not grow over its length
+     * @param data Data
+     * @return Fixed-size buffer backed by data
+     */
+    public static NByteBuf wrap(byte[] data) {
+        return new NByteBuf(Unpooled.wrappedBuffer(data));
+    }
+
+    /**
+     * Allocate a pooled heap buffer
+     * @return Buffer, must be closed after used
+     * @see #pooled(boolean)
+     */
+    public static NByteBuf pooled() {
+        return pooled(false);
+    }
+
+    /**
+     * Allocate a buffer from netty's shared pooled allocator
+     * @param direct Use direct memory
+     * @return Buffer, must be closed after used
+     */
+    public static NByteBuf pooled(boolean direct) {
+        return allocate(PooledByteBufAllocator.DEFAULT, direct);
+    }
+
+    /**
+     * Allocate a buffer from specified allocator
+     * @param allocator Allocator
+     * @param direct Use direct memory
+     * @return Buffer, must be closed after used
+     */
+    public static NByteBuf allocate(ByteBufAllocator allocator, boolean direct) {
+        return new NByteBuf(direct ? allocator.directBuffer() : allocator.heapBuffer());
+    }
+
+    // Bytes start
+
+    /**
+     * Read byte array
+     * @param dest Destination
+     */
+    public void read(byte[] dest) {
+        src.readBytes(dest);
+    }
+
+    /**
+     * Write byte array
+     * @param data Data
+     */
+    public void write(byte[] data) {
+        src.writeBytes(data);
+    }
+
+    /**
+     * Read byte array with specified size
+     * @param size Size
+     * @return Result
+     */
+    public byte[] read(int size) {
+        byte[] data = new byte[size];
+        src.readBytes(data);
+        return data;
+    }
+
+    /**
+     * Read byte array in a block
+     * @return Result
+     */
+    public byte[] readBlock() {
+        return read(this.src.readShortLE());
+    }
+
+    /**
+     * Write byte array in a block
+     * <br>
+     * @param data Block
+     */
+    public void writeBlock(byte[] data) {
+        this.src.writeShortLE(data.length);
+        this.src.writeBytes(data);
+    }
+
+    /**
+     * Read byte array in a large block
+     * @return Result
+     */
+    public byte[] readBlockL() {
+        return this.read(this.src.readIntLE());
+    }
+
+    /**
+     * Write byte array in a large block
+     * @param data Data
+     */
+    public void writeBlockL(byte[] data) {
+        this.src.writeIntLE(data.length);
+        this.src.writeBytes(data);
+    }
+
+    /**
+     * Write byte array in a large block, compressed if larger than threshold
+     * @param data Data
+     * @param compression Compression stage
+     * @see Compression#compress(byte[])
+     */
+    public void writeCompressedBlock(byte[] data, Compression compression) {
+        this.writeBlockL(compression.compress(data));
+    }
+
+    /**
+     * Read byte array written by {@link #writeCompressedBlock(byte[], Compression)}
+     * @param compression Compression stage
+     * @return Decompressed data
+     * @throws cn.afternode.commons.serialization.SerializationException Corrupted or too large data
+     */
+    public byte[] readCompressedBlock(Compression compression) {
+        return compression.decompress(this.readBlockL());
+    }
+    // Bytes end
+
+    // Array start
+
+    /**
+     * Write int array with length prefix, in a single transfer when possible
+     * @param arr Source array
+     */
+    public void writeIntArray(int[] arr) {
+        this.src.writeIntLE(arr.length);
+        this.src.ensureWritable(arr.length * 4);
+        int index = this.src.writerIndex();
+        if (this.src.nioBufferCount() == 1) {
+            this.src.nioBuffer(index, arr.length * 4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(arr);
+        } else {
+            for (int i = 0; i < arr.length; i++)
+                this.src.setIntLE(index + i * 4, arr[i]);
+        }
+        this.src.writerIndex(index + arr.length * 4);
+    }
+
+    /**
+     * Read int array with length prefix, in a single transfer
+     * @return Result
+     */
+    public int[] readIntArray() {
+        int[] arr = new int[this.src.readIntLE()];
+        this.src.nioBuffer(this.src.readerIndex(), arr.length * 4).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(arr);
+        this.src.skipBytes(arr.length * 4);
+        return arr;
+    }
+
+    /**
+     * Write long array with length prefix, in a single transfer when possible
+     * @param arr Source array
+     */
+    public void writeLongArray(long[] arr) {
+        this.src.writeIntLE(arr.length);
+        this.src.ensureWritable(arr.length * 8);
+        int index = this.src.writerIndex();
+        if (this.src.nioBufferCount() == 1) {
+            this.src.nioBuffer(index, arr.length * 8).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().put(arr);
+        } else {
+            for (int i = 0; i < arr.length; i++)
+                this.src.setLongLE(index + i * 8, arr[i]);
+        }
+        this.src.writerIndex(index + arr.length * 8);
+    }
+
+    /**
+     * Read long array with length prefix, in a single transfer
+     * @return Result
+     */
+    public long[] readLongArray() {
+        long[] arr = new long[this.src.readIntLE()];
+        this.src.nioBuffer(this.src.readerIndex(), arr.length * 8).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(arr);
+        this.src.skipBytes(arr.length * 8);
+        return arr;
+    }
+    // Array end
+
+    // Serialized start
+
+    /**
+     * Write value with a precomputed codec
+     * @param codec Codec
+     * @param value Value
+     * @param <T> Type
+     * @see cn.afternode.commons.binary.BinarySerializer#codec(Class)
+     */
+    public <T> void writeSerialized(BinaryCodec<T> codec, T value) {
+        WrappedByteBuffer bb = WrappedByteBufferPool.shared().acquire();
+        try {
+            codec.write(value, bb);
+            this.src.writeBytes(bb.array(), 0, bb.writeOffset());
+        } finally {
+            bb.release();
+        }
+    }
+
+    /**
+     * Read value with a precomputed codec, decoded from buffer directly
+     * @param codec Codec
+     * @return Result
+     * @param <T> Type
+     */
+    public <T> T readSerialized(BinaryCodec<T> codec) {
+        int index = this.src.readerIndex();
+        WrappedByteBuffer bb = new WrappedByteBuffer(this.src.nioBuffer(index, this.src.readableBytes()));
+        bb.writerOffset(bb.capacity());
+        T value = codec.read(bb);
+        this.src.readerIndex(index + bb.readerOffset());
+        return value;
+    }
+    // Serialized end
+
+    // Slice start
+
+    /**
+     * Read bytes as a read-only view without copying
+     * @param size Size
+     * @return View sharing content with this buffer, invalid after this buffer is closed
+     */
+    public NByteBuf readSlice(int size) {
+        return this.view(this.src.readSlice(size).asReadOnly());
+    }
+
+    /**
+     * Read a block as view without copying
+     * @return View of block content
+     * @see #readBlock()
+     */
+    public NByteBuf readBlockView() {
+        return this.readSlice(this.src.readShortLE());
+    }
+
+    /**
+     * Read a large block as view without copying
+     * @return View of block content
+     * @see #readBlockL()
+     */
+    public NByteBuf readBlockLView() {
+        return this.readSlice(this.src.readIntLE());
+    }
+
+    /**
+     * Create a read-only view of readable bytes, reader index is not moved
+     * @return View sharing content with this buffer, invalid after this buffer is closed
+     */
+    public NByteBuf slice() {
+        return this.view(this.src.slice().asReadOnly());
+    }
+
+    /**
+     * Create a non-owning view of the same type, platform buffers override this
+     * @param src Sliced source
+     * @return View
+     */
+    protected NByteBuf view(ByteBuf src) {
+        return new NByteBuf(src, false);
+    }
+    // Slice end
+
+    // Short start
+
+    /**
+     * Read short
+     * @return result
+     */
+    public short readShort() {
+        return this.src.readShortLE();
+    }
+
+    /**
+     * Write short
+     * @param data data
+     */
+    public void writeShort(short data) {
+        this.src.writeShortLE(data);
+    }
+    // Short end
+
+    // Integer start
+
+    /**
+     * Read integer
+     * @return result
+     */
+    public int readInt() {
+        return this.src.readIntLE();
+    }
+
+    /**
+     * Write integer
+     * @param data result
+     */
+    public void writeInt(int data) {
+        this.src.writeIntLE(data);
+    }
+    // Integer end
+
+    // Long start
+
+    /**
+     * Read long integer
+     * @return result
+     */
+    public long readLong() {
+        return this.src.readLong();
+    }
+
+    /**
+     * Write long integer
+     * @param data data
+     */
+    public void writeLong(long data) {
+        this.src.writeLong(data);
+    }
+    // Long end
+
+    // VarInt start
+
+    /**
+     * Read unsigned LEB128 VarInt
+     * @return result
+     * @throws IllegalStateException Malformed VarInt
+     */
+    public int readVarInt() {
+        int r = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = this.src.readByte();
+            r |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return r;
+        }
+        throw new IllegalStateException("Malformed VarInt");
+    }
+
+    /**
+     * Write integer as unsigned LEB128 VarInt (1 to 5 bytes)
+     * @param data data
+     */
+    public void writeVarInt(int data) {
+        while ((data & ~0x7F) != 0) {
+            this.src.writeByte((data & 0x7F) | 0x80);
+            data >>>= 7;
+        }
+        this.src.writeByte(data);
+    }
+
+    /**
+     * Read unsigned LEB128 VarLong
+     * @return result
+     * @throws IllegalStateException Malformed VarLong
+     */
+    public long readVarLong() {
+        long r = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = this.src.readByte();
+            r |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return r;
+        }
+        throw new IllegalStateException("Malformed VarLong");
+    }
+
+    /**
+     * Write long integer as unsigned LEB128 VarLong (1 to 10 bytes)
+     * @param data data
+     */
+    public void writeVarLong(long data) {
+        while ((data & ~0x7FL) != 0) {
+            this.src.writeByte((int) (data & 0x7F) | 0x80);
+            data >>>= 7;
+        }
+        this.src.writeByte((int) data);
+    }
+
+    /**
+     * Read ZigZag encoded signed integer
+     * @return result
+     */
+    public int readZigZagInt() {
+        int n = this.readVarInt();
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    /**
+     * Write signed integer with ZigZag encoding, small negative values stay small
+     * @param data data
+     */
+    public void writeZigZagInt(int data) {
+        this.writeVarInt((data << 1) ^ (data >> 31));
+    }
+
+    /**
+     * Read ZigZag encoded signed long integer
+     * @return result
+     */
+    public long readZigZagLong() {
+        long n = this.readVarLong();
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    /**
+     * Write signed long integer with ZigZag encoding
+     * @param data data
+     */
+    public void writeZigZagLong(long data) {
+        this.writeVarLong((data << 1) ^ (data >> 63));
+    }
+    // VarInt end
+
+    // String start
+
+    /**
+     * Read UTF-8 String, decoded from buffer directly
+     * @return result
+     */
+    public String readString() {
+        int len = this.src.readShortLE();
+        String r = this.src.toString(this.src.readerIndex(), len, StandardCharsets.UTF_8);
+        this.src.skipBytes(len);
+        return r;
+    }
+
+    /**
+     * Write UTF-8 string, encoded to buffer directly
+     * @param data data
+     */
+    public void writeString(String data) {
+        this.src.writeShortLE(ByteBufUtil.utf8Bytes(data));
+        this.src.writeCharSequence(data, StandardCharsets.UTF_8);
+    }
+    // String end
+
+    // Enum start
+    /**
+     * Write enumeration object (1 short integer)
+     * @param e object
+     */
+    public void writeEnum(Enum<?> e) {
+        this.src.writeShortLE(e.ordinal());
+    }
+
+    /**
+     * Read enumeration object (1 short integer)
+     * @param clazz Type
+     * @return result
+     * @param <T> Type
+     */
+    public <T extends Enum<?>> T readEnum(Class<T> clazz) {
+        return clazz.getEnumConstants()[this.readShort()];
+    }
+    // Enum end
+
+    // UUID start
+
+    /**
+     * Read UUID (2 long integers)
+     * @return result
+     */
+    public UUID readUUID() {
+        return new UUID(this.readLong(), this.readLong());
+    }
+
+    /**
+     * Write UUID (2 long integers)
+     * @param uuid object
+     */
+    public void writeUUID(UUID uuid) {
+        this.writeLong(uuid.getMostSignificantBits());
+        this.writeLong(uuid.getLeastSignificantBits());
+    }
+    // UUID end
+
+    /**
+     * Access to source netty ByteBuf directly
+     * @return source
+     */
+    public ByteBuf direct() {
+        return src;
+    }
+
+    /**
+     * Copy readable bytes to a new byte array
+     * @return result
+     */
+    public byte[] toArray() {
+        return ByteBufUtil.getBytes(src);
+    }
+
+    /**
+     * Release source buffer if this buffer owns it
+     * <br>
+     * Views created from this buffer do not own the source, closing them does nothing
+     */
+    @Override
+    public void close() {
+        if (owner && src.refCnt() > 0)
+            src.release();
+    }
+}
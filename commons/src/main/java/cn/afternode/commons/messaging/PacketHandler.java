@@ -0,0 +1,12 @@
+package cn.afternode.commons.messaging;
+
+/**
+ * Handler of a typed packet
+ * @param <S> Sender type
+ * @param <T> Packet type
+ * @see PacketRegistry#register(int, Class, PacketHandler)
+ */
+@FunctionalInterface
+public interface PacketHandler<S, T> {
+    void handle(S sender, T packet);
+}
@@ -0,0 +1,219 @@
+package cn.afternode.commons.messaging;
+
+import cn.afternode.commons.binary.BinaryCodec;
+import cn.afternode.commons.binary.BinarySerializer;
+import cn.afternode.commons.serialization.SerializationException;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of typed packets on a messaging channel
+ * <br>
+ * Packets are framed as a VarInt id followed by content written by the precomputed codec of its type,
+ * incoming packets are decoded and dispatched with an array lookup of the id
+ * <br>
+ * Registration is expected at startup, reading and dispatching are lock-free
+ * @param <S> Sender type of platform
+ * @see BinarySerializer#codec(Class)
+ */
+public class PacketRegistry<S> {
+    /**
+     * Max packet id
+     */
+    public static final int MAX_ID = 0xFFFF;
+
+    private final BinarySerializer serializer;
+    private final Map<Class<?>, Entry<S, ?>> types = new ConcurrentHashMap<>();
+    private volatile Entry<S, ?>[] entries = newEntries(0);
+
+    /**
+     * Create with a new default serializer
+     */
+    public PacketRegistry() {
+        this(new BinarySerializer());
+    }
+
+    /**
+     * Primary constructor
+     * @param serializer Serializer providing packet codecs
+     */
+    public PacketRegistry(BinarySerializer serializer) {
+        this.serializer = serializer;
+    }
+
+    /**
+     * Register an outgoing only packet type
+     * @param id Packet id
+     * @param type Packet type
+     * @return This registry
+     * @param <T> Packet type
+     * @see #register(int, Class, PacketHandler)
+     */
+    public <T> PacketRegistry<S> register(int id, Class<T> type) {
+        return register(id, type, null);
+    }
+
+    /**
+     * Register a packet type with its handler, the codec is computed immediately
+     * @param id Packet id, from 0 to {@link #MAX_ID}
+     * @param type Packet type
+     * @param handler Handler of incoming packets, null to ignore them
+     * @return This registry
+     * @param <T> Packet type
+     * @throws IllegalArgumentException Id out of range, or id or type already registered
+     * @throws SerializationException Type contains unsupported fields
+     */
+    public synchronized <T> PacketRegistry<S> register(int id, Class<T> type, PacketHandler<S, T> handler) {
+        if (id < 0 || id > MAX_ID)
+            throw new IllegalArgumentException("Packet id %s out of range".formatted(id));
+        Entry<S, ?>[] current = this.entries;
+        if (id < current.length && current[id] != null)
+            throw new IllegalArgumentException("Packet id %s already registered by %s".formatted(id, current[id].type().getName()));
+        if (types.containsKey(type))
+            throw new IllegalArgumentException("Type %s already registered".formatted(type.getName()));
+
+        Entry<S, T> entry = new Entry<>(id, type, serializer.codec(type), handler);
+        Entry<S, ?>[] next = Arrays.copyOf(current, Math.max(current.length, id + 1));
+        next[id] = entry;
+        types.put(type, entry);
+        this.entries = next;
+        return this;
+    }
+
+    /**
+     * Write a packet with its id
+     * @param packet Packet
+     * @param buf Target buffer
+     * @throws IllegalArgumentException Packet type not registered
+     */
+    @SuppressWarnings("unchecked")
+    public void write(Object packet, NByteBuf buf) {
+        Entry<S, Object> entry = (Entry<S, Object>) types.get(packet.getClass());
+        if (entry == null)
+            throw new IllegalArgumentException("Type %s is not registered".formatted(packet.getClass().getName()));
+        buf.writeVarInt(entry.id());
+        buf.writeSerialized(entry.codec(), packet);
+    }
+
+    /**
+     * Read a packet
+     * @param buf Source buffer
+     * @return Packet
+     * @throws SerializationException Unknown packet id
+     */
+    public Object read(NByteBuf buf) {
+        return entry(buf.readVarInt()).read(buf);
+    }
+
+    /**
+     * Read a packet, keeping its resolved type so it can be dispatched later without another lookup
+     * @param buf Source buffer
+     * @return Decoded packet
+     * @throws SerializationException Unknown packet id
+     */
+    public Decoded<S> decode(NByteBuf buf) {
+        Entry<S, ?> entry = entry(buf.readVarInt());
+        return new Decoded<>(entry, entry.read(buf));
+    }
+
+    /**
+     * Read a packet and pass it to the handler of its type
+     * @param sender Sender
+     * @param buf Source buffer
+     * @return False if the type has no handler, the content is not decoded in this case
+     * @throws SerializationException Unknown packet id
+     */
+    public boolean dispatch(S sender, NByteBuf buf) {
+        return entry(buf.readVarInt()).dispatch(sender, buf);
+    }
+
+    /**
+     * Pass a decoded packet to the handler of its type
+     * @param sender Sender
+     * @param packet Packet returned by {@link #read(NByteBuf)}
+     * @return False if the type has no handler
+     * @throws IllegalArgumentException Packet type not registered
+     */
+    @SuppressWarnings("unchecked")
+    public boolean handle(S sender, Object packet) {
+        Entry<S, Object> entry = (Entry<S, Object>) types.get(packet.getClass());
+        if (entry == null)
+            throw new IllegalArgumentException("Type %s is not registered".formatted(packet.getClass().getName()));
+        return entry.handle(sender, packet);
+    }
+
+    /**
+     * Get serializer providing packet codecs
+     * @return Serializer
+     */
+    public BinarySerializer getSerializer() {
+        return serializer;
+    }
+
+    private Entry<S, ?> entry(int id) {
+        Entry<S, ?>[] current = this.entries;
+        Entry<S, ?> entry = id >= 0 && id < current.length ? current[id] : null;
+        if (entry == null)
+            throw new SerializationException("Unknown packet id %s".formatted(id));
+        return entry;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S> Entry<S, ?>[] newEntries(int size) {
+        return (Entry<S, ?>[]) new Entry[size];
+    }
+
+    private record Entry<S, T>(int id, Class<T> type, BinaryCodec<T> codec, PacketHandler<S, T> handler) {
+        T read(NByteBuf buf) {
+            return buf.readSerialized(codec);
+        }
+
+        boolean dispatch(S sender, NByteBuf buf) {
+            if (handler == null)
+                return false;
+            handler.handle(sender, buf.readSerialized(codec));
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean handle(S sender, Object packet) {
+            if (handler == null)
+                return false;
+            handler.handle(sender, (T) packet);
+            return true;
+        }
+    }
+
+    /**
+     * Packet decoded by {@link #decode(NByteBuf)} with its resolved type
+     * @param <S> Sender type of platform
+     */
+    public static final class Decoded<S> {
+        private final Entry<S, ?> entry;
+        private final Object packet;
+
+        private Decoded(Entry<S, ?> entry, Object packet) {
+            this.entry = entry;
+            this.packet = packet;
+        }
+
+        /**
+         * Get decoded packet
+         * @return Packet
+         */
+        public Object packet() {
+            return packet;
+        }
+
+        /**
+         * Pass the packet to the handler of its type
+         * @param sender Sender
+         * @return False if the type has no handler
+         */
+        public boolean dispatch(S sender) {
+            return entry.handle(sender, packet);
+        }
+    }
+}
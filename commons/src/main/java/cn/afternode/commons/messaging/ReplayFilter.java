@@ -0,0 +1,151 @@
+package cn.afternode.commons.messaging;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Sliding window replay filter of signed frames
+ * <br>
+ * Each sender has a fixed-size bitset of recently seen sequence numbers ending at the highest one.
+ * Frames older than the window, already seen in the window, or with a timestamp too far from local clock are rejected,
+ * so clocks of all nodes must be roughly synchronized
+ * <br>
+ * All state is preallocated, checking a frame does not allocate. When the sender table is full,
+ * the sender not seen for the longest time is evicted
+ */
+public class ReplayFilter {
+    /**
+     * Default window size in sequence numbers
+     */
+    public static final int DEFAULT_WINDOW = 1024;
+
+    /**
+     * Default max senders tracked
+     */
+    public static final int DEFAULT_MAX_SENDERS = 256;
+
+    /**
+     * Default max difference between frame timestamp and local clock
+     */
+    public static final Duration DEFAULT_MAX_AGE = Duration.ofSeconds(30);
+
+    private final int window;
+    private final int words;
+    private final long maxAge;
+
+    private final long[] senders;
+    private final long[] highest;
+    private final long[] lastSeen;
+    private final long[] bits;
+    private int size = 0;
+
+    /**
+     * Create with {@link #DEFAULT_WINDOW}, {@link #DEFAULT_MAX_SENDERS} and {@link #DEFAULT_MAX_AGE}
+     */
+    public ReplayFilter() {
+        this(DEFAULT_WINDOW, DEFAULT_MAX_SENDERS, DEFAULT_MAX_AGE);
+    }
+
+    /**
+     * Primary constructor
+     * @param window Window size in sequence numbers, a power of two and at least 64
+     * @param maxSenders Max senders tracked
+     * @param maxAge Max difference between frame timestamp and local clock
+     * @throws IllegalArgumentException window is not a power of two or less than 64, or maxSenders is not positive
+     */
+    public ReplayFilter(int window, int maxSenders, Duration maxAge) {
+        if (window < 64 || Integer.bitCount(window) != 1)
+            throw new IllegalArgumentException("Window %s is not a power of two at least 64".formatted(window));
+        if (maxSenders <= 0)
+            throw new IllegalArgumentException("Max senders %s is not positive".formatted(maxSenders));
+        this.window = window;
+        this.words = window >>> 6;
+        this.maxAge = maxAge.toMillis();
+        this.senders = new long[maxSenders];
+        this.highest = new long[maxSenders];
+        this.lastSeen = new long[maxSenders];
+        this.bits = new long[maxSenders * words];
+    }
+
+    /**
+     * Check a frame and mark it as seen if accepted
+     * @param sender Sender id
+     * @param sequence Sequence number of frame
+     * @param timestamp Timestamp of frame in epoch milliseconds
+     * @return False if the frame is expired or replayed
+     */
+    public synchronized boolean accept(long sender, long sequence, long timestamp) {
+        long now = System.currentTimeMillis();
+        if (Math.abs(now - timestamp) > maxAge)
+            return false;
+
+        int slot = this.find(sender);
+        if (slot < 0) {
+            slot = this.allocate();
+            senders[slot] = sender;
+            highest[slot] = sequence;
+            Arrays.fill(bits, slot * words, (slot + 1) * words, 0);
+        } else if (sequence > highest[slot]) {
+            this.advance(slot, sequence);
+        } else if (highest[slot] - sequence >= window) {
+            return false;
+        } else if (this.isSet(slot, sequence)) {
+            return false;
+        }
+
+        this.set(slot, sequence);
+        lastSeen[slot] = now;
+        return true;
+    }
+
+    private int find(long sender) {
+        for (int i = 0; i < size; i++) {
+            if (senders[i] == sender)
+                return i;
+        }
+        return -1;
+    }
+
+    private int allocate() {
+        if (size < senders.length)
+            return size++;
+
+        int oldest = 0;
+        for (int i = 1; i < size; i++) {
+            if (lastSeen[i] < lastSeen[oldest])
+                oldest = i;
+        }
+        return oldest;
+    }
+
+    // Move window end to sequence, clearing bits of skipped sequence numbers
+    private void advance(int slot, long sequence) {
+        long delta = sequence - highest[slot];
+        if (delta >= window) {
+            Arrays.fill(bits, slot * words, (slot + 1) * words, 0);
+        } else {
+            for (long s = highest[slot] + 1; s < sequence; s++)
+                this.unset(slot, s);
+        }
+        highest[slot] = sequence;
+    }
+
+    private int bit(long sequence) {
+        return (int) (sequence & (window - 1));
+    }
+
+    private boolean isSet(int slot, long sequence) {
+        int bit = bit(sequence);
+        return (bits[slot * words + (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    private void set(int slot, long sequence) {
+        int bit = bit(sequence);
+        bits[slot * words + (bit >>> 6)] |= 1L << bit;
+    }
+
+    private void unset(int slot, long sequence) {
+        int bit = bit(sequence);
+        bits[slot * words + (bit >>> 6)] &= ~(1L << bit);
+    }
+}
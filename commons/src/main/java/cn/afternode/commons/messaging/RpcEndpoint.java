@@ -0,0 +1,226 @@
+package cn.afternode.commons.messaging;
+
+import cn.afternode.commons.serialization.SerializationException;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request/response calls over a messaging channel
+ * <br>
+ * Frames are a kind byte and a VarLong correlation id, followed by a packet of {@link PacketRegistry} or an error message.
+ * Any number of requests may be in flight on the same connection, responses are matched by correlation id in any order
+ * and accepted only from the target of the request
+ * <br>
+ * Both request and response types must be registered in the packet registry on both sides
+ * @param <S> Sender type of platform
+ */
+public class RpcEndpoint<S> {
+    /**
+     * Default max pending requests
+     */
+    public static final int DEFAULT_MAX_PENDING = 1024;
+
+    private static final byte REQUEST = 0;
+    private static final byte RESPONSE = 1;
+    private static final byte ERROR = 2;
+
+    private static final int MAX_ERROR_LENGTH = 1024;
+
+    private final PacketRegistry<S> packets;
+    private final int maxPending;
+
+    private final Map<Class<?>, RpcHandler<S, Object, Object>> handlers = new ConcurrentHashMap<>();
+    private final Map<Long, Pending<S>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong ids = new AtomicLong();
+
+    /**
+     * Create with {@link #DEFAULT_MAX_PENDING}
+     * @param packets Packet registry of requests and responses
+     */
+    public RpcEndpoint(PacketRegistry<S> packets) {
+        this(packets, DEFAULT_MAX_PENDING);
+    }
+
+    /**
+     * Primary constructor
+     * @param packets Packet registry of requests and responses
+     * @param maxPending Max requests waiting for response, further requests fail immediately
+     * @throws IllegalArgumentException maxPending is not positive
+     */
+    public RpcEndpoint(PacketRegistry<S> packets, int maxPending) {
+        if (maxPending <= 0)
+            throw new IllegalArgumentException("Max pending requests %s is not positive".formatted(maxPending));
+        this.packets = packets;
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Register handler of a request type, replacing the previous one
+     * @param type Request type
+     * @param handler Handler
+     * @return This endpoint
+     * @param <Q> Request type
+     * @param <R> Response type
+     */
+    @SuppressWarnings("unchecked")
+    public <Q, R> RpcEndpoint<S> handle(Class<Q> type, RpcHandler<S, Q, R> handler) {
+        handlers.put(type, (RpcHandler<S, Object, Object>) (RpcHandler<S, ?, ?>) handler);
+        return this;
+    }
+
+    /**
+     * Send a request
+     * @param target Target
+     * @param request Request
+     * @param responseType Expected response type
+     * @param timeout Time to wait for response
+     * @param sink Output of channel
+     * @return Future of response. Completed exceptionally with {@link java.util.concurrent.TimeoutException} on timeout,
+     * {@link RpcException} on remote error, or {@link RejectedExecutionException} if too many requests are pending
+     * @param <R> Response type
+     */
+    public <R> CompletableFuture<R> request(S target, Object request, Class<R> responseType, Duration timeout, MessageSink<S> sink) {
+        if (inFlight.incrementAndGet() > maxPending) {
+            inFlight.decrementAndGet();
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Too many pending requests (%s)".formatted(maxPending)));
+        }
+
+        long id = ids.incrementAndGet();
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        pending.put(id, new Pending<>(target, future));
+        future.whenComplete((r, t) -> {
+            if (pending.remove(id) != null)
+                inFlight.decrementAndGet();
+        });
+        future.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+
+        try (NByteBuf frame = NByteBuf.pooled()) {
+            frame.direct().writeByte(REQUEST);
+            frame.writeVarLong(id);
+            packets.write(request, frame);
+            sink.send(target, frame);
+        } catch (Exception ex) {
+            future.completeExceptionally(ex);
+        }
+        return future.thenApply(responseType::cast);
+    }
+
+    /**
+     * Handle an incoming frame
+     * <br>
+     * Requests are passed to their handler on current thread, and the response is sent when the handler completes.
+     * Responses of timed out requests, or from a sender other than the target of the request, are dropped
+     * @param sender Sender
+     * @param frame Frame
+     * @param sink Output of channel for responses
+     * @throws SerializationException Malformed frame
+     */
+    public void receive(S sender, NByteBuf frame, MessageSink<S> sink) {
+        byte kind = frame.direct().readByte();
+        long id = frame.readVarLong();
+        switch (kind) {
+            case REQUEST -> this.handleRequest(sender, id, packets.read(frame), sink);
+            case RESPONSE -> {
+                CompletableFuture<Object> future = this.pending(sender, id);
+                if (future != null)
+                    future.complete(packets.read(frame));
+            }
+            case ERROR -> {
+                CompletableFuture<Object> future = this.pending(sender, id);
+                if (future != null)
+                    future.completeExceptionally(new RpcException(frame.readString()));
+            }
+            default -> throw new SerializationException("Unknown RPC frame kind %s".formatted(kind));
+        }
+    }
+
+    // Ids are sequential, so a response from anyone but the target is ignored
+    private CompletableFuture<Object> pending(S sender, long id) {
+        Pending<S> p = pending.get(id);
+        if (p == null || !Objects.equals(p.target(), sender))
+            return null;
+        return p.future();
+    }
+
+    private void handleRequest(S sender, long id, Object request, MessageSink<S> sink) {
+        RpcHandler<S, Object, Object> handler = handlers.get(request.getClass());
+        if (handler == null) {
+            this.reply(sender, id, null, new IllegalStateException("No handler for %s".formatted(request.getClass().getName())), sink);
+            return;
+        }
+
+        CompletionStage<Object> stage;
+        try {
+            stage = handler.handle(sender, request);
+        } catch (Exception ex) {
+            stage = CompletableFuture.failedFuture(ex);
+        }
+        if (stage == null)
+            stage = CompletableFuture.failedFuture(new IllegalStateException("Handler of %s returned null".formatted(request.getClass().getName())));
+        stage.whenComplete((response, error) -> this.reply(sender, id, response, error, sink));
+    }
+
+    private void reply(S sender, long id, Object response, Throwable error, MessageSink<S> sink) {
+        try (NByteBuf frame = NByteBuf.pooled()) {
+            if (error == null) {
+                try {
+                    frame.direct().writeByte(RESPONSE);
+                    frame.writeVarLong(id);
+                    packets.write(response, frame);
+                } catch (RuntimeException ex) {
+                    frame.direct().clear();
+                    error = ex;
+                }
+            }
+            if (error != null) {
+                if (error instanceof CompletionException && error.getCause() != null)
+                    error = error.getCause();
+                String message = error.toString();
+                frame.direct().writeByte(ERROR);
+                frame.writeVarLong(id);
+                frame.writeString(message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message);
+            }
+            sink.send(sender, frame);
+        } catch (Exception ex) {
+            // Requester will time out
+        }
+    }
+
+    /**
+     * Fail all pending requests, such as when the channel is closed
+     * @param cause Cause
+     */
+    public void failAll(Throwable cause) {
+        for (Pending<S> p : pending.values())
+            p.future().completeExceptionally(cause);
+    }
+
+    /**
+     * Get count of requests waiting for response
+     * @return Pending count
+     */
+    public int pendingCount() {
+        return inFlight.get();
+    }
+
+    /**
+     * Get packet registry of requests and responses
+     * @return Packet registry
+     */
+    public PacketRegistry<S> getPackets() {
+        return packets;
+    }
+
+    private record Pending<S>(S target, CompletableFuture<Object> future) {}
+}
@@ -0,0 +1,11 @@
+package cn.afternode.commons.messaging;
+
+/**
+ * Error reported by the remote handler of a request
+ * @see RpcEndpoint#request(Object, Object, Class, java.time.Duration, MessageSink)
+ */
+public class RpcException extends RuntimeException {
+    public RpcException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,22 @@
+package cn.afternode.commons.messaging;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Handler of a request type
+ * @param <S> Sender type
+ * @param <Q> Request type
+ * @param <R> Response type
+ * @see RpcEndpoint#handle(Class, RpcHandler)
+ */
+@FunctionalInterface
+public interface RpcHandler<S, Q, R> {
+    /**
+     * Handle request
+     * @param sender Sender
+     * @param request Request
+     * @return Response, completed later for asynchronous work
+     * @throws Exception Reported to requester as {@link RpcException}
+     */
+    CompletionStage<R> handle(S sender, Q request) throws Exception;
+}
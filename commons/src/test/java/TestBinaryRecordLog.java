@@ -0,0 +1,66 @@
+import cn.afternode.commons.binary.BinaryRecordLog;
+import cn.afternode.commons.binary.BinarySerializer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBinaryRecordLog {
+    public record StateChange(String player, int level, long time) {}
+
+    @Test
+    public void testRecovery() throws IOException {
+        BinarySerializer serializer = new BinarySerializer(true);
+        Path file = Files.createTempFile("records", ".log");
+        try {
+            List<StateChange> changes = new ArrayList<>();
+            long first = -1;
+            try (BinaryRecordLog log = BinaryRecordLog.open(file, 50)) {
+                for (int i = 0; i < 2000; i++) {
+                    StateChange c = new StateChange("player_" + (i % 20), i, 1700000000000L + i);
+                    changes.add(c);
+                    long pos = log.append(serializer, c);
+                    if (first < 0)
+                        first = pos;
+                }
+                List<StateChange> read = new ArrayList<>();
+                log.forEach(serializer, StateChange.class, read::add);
+                assertEquals(changes, read);
+            }
+
+            // Torn tail: header and partial content of an interrupted append
+            long size = Files.size(file);
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ch.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 5, 6}));
+            }
+
+            try (BinaryRecordLog log = BinaryRecordLog.open(file, 0)) {
+                assertEquals(10, log.recoveredTruncation());
+                assertEquals(size, log.size());
+                long pos = log.append(serializer, new StateChange("late", 1, 2));
+                assertEquals(new StateChange("late", 1, 2), serializer.deserialize(StateChange.class, log.read(pos)));
+                assertEquals(changes.get(0), serializer.deserialize(StateChange.class, log.read(first)));
+            }
+
+            // Corrupted content truncates from the broken record
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.write(ByteBuffer.wrap(new byte[]{(byte) 0xFF}), size - 2);
+            }
+            try (BinaryRecordLog log = BinaryRecordLog.open(file, 0)) {
+                List<StateChange> read = new ArrayList<>();
+                log.forEach(serializer, StateChange.class, read::add);
+                assertEquals(changes.subList(0, 1999), read);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+import cn.afternode.commons.binary.BinaryBatch;
+import cn.afternode.commons.binary.BinarySerialize;
+import cn.afternode.commons.binary.BinarySerializer;
+import cn.afternode.commons.binary.BinaryStreamReader;
+import cn.afternode.commons.binary.BinaryStreamWriter;
+import cn.afternode.commons.binary.WrappedByteBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestBinarySerializer {
+    public enum Rank { MEMBER, VIP, ADMIN }
+
+    public record Position(String world, double x, double y, double z) {}
+
+    @BinarySerialize(version = 2)
+    public static class PlayerState {
+        UUID id;
+        String name;
+        int level;
+        long lastSeen;
+        boolean online;
+        float health;
+        Integer balance;
+        Rank rank;
+        int[] blocks;
+        String[] tags;
+        List<String> friends;
+        Map<String, Integer> stats;
+        Set<Rank> history;
+        Position position;
+        PlayerState pet;
+
+        @BinarySerialize.Exclude
+        String cache = "keep";
+    }
+
+    @BinarySerialize(version = 1, tagged = true)
+    public static class HomeV1 {
+        @BinarySerialize.Tag(1) String name;
+        @BinarySerialize.Tag(2) int x;
+        @BinarySerialize.Tag(3) String removed;
+    }
+
+    @BinarySerialize(version = 2, tagged = true)
+    public static class HomeV2 {
+        @BinarySerialize.Tag(1) String name;
+        @BinarySerialize.Tag(2) int x;
+        @BinarySerialize.Tag(4) List<String> members = new ArrayList<>();
+        @BinarySerialize.Tag(5) boolean migrated;
+    }
+
+    @BinarySerialize(tagged = true)
+    public record Point(@BinarySerialize.Tag(2) long y, @BinarySerialize.Tag(1) int x) {}
+
+    @Test
+    public void testRoundTrip() {
+        PlayerState src = sample();
+
+        BinarySerializer serializer = new BinarySerializer();
+        WrappedByteBuffer bb = serializer.serialize(src);
+        assertSample(src, serializer.deserialize(PlayerState.class, bb));
+        assertEquals(bb.writeOffset(), bb.readerOffset());
+    }
+
+    @Test
+    public void testCompact() {
+        PlayerState src = sample();
+
+        BinarySerializer compact = new BinarySerializer(true);
+        WrappedByteBuffer bb = compact.serialize(src);
+        assertSample(src, compact.deserialize(PlayerState.class, bb));
+        assertTrue(bb.writeOffset() < new BinarySerializer().serialize(src).writeOffset());
+    }
+
+    @Test
+    public void testTagged() {
+        for (boolean compact : new boolean[]{false, true}) {
+            BinarySerializer serializer = new BinarySerializer(compact);
+            serializer.registerMigration(HomeV2.class, (short) 1, home -> {
+                home.migrated = true;
+                return home;
+            });
+
+            HomeV1 v1 = new HomeV1();
+            v1.name = "base";
+            v1.x = -42;
+            v1.removed = "gone";
+            HomeV2 upgraded = serializer.deserialize(HomeV2.class, serializer.serialize(v1));
+            assertEquals("base", upgraded.name);
+            assertEquals(-42, upgraded.x);
+            assertTrue(upgraded.members.isEmpty());
+            assertTrue(upgraded.migrated);
+
+            upgraded.members.add("H3xadecimal");
+            WrappedByteBuffer bb = serializer.serialize(upgraded);
+            HomeV1 downgraded = serializer.deserialize(HomeV1.class, bb);
+            assertEquals("base", downgraded.name);
+            assertEquals(-42, downgraded.x);
+            assertNull(downgraded.removed);
+            assertEquals(bb.writeOffset(), bb.readerOffset());
+
+            assertEquals(new Point(7, 3), serializer.deserialize(Point.class, serializer.serialize(new Point(7, 3))));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> new BinarySerializer().registerMigration(PlayerState.class, (short) 1, s -> s));
+    }
+
+    @Test
+    public void testBatch() {
+        BinarySerializer serializer = new BinarySerializer(true);
+        List<Position> positions = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            positions.add(new Position("world", i, i * 2, i * 3));
+
+        WrappedByteBuffer bb = WrappedByteBuffer.growable();
+        bb.writeInt(7);
+        serializer.serializeAll(positions, bb);
+        bb.writeInt(8);
+
+        assertEquals(7, bb.readInt());
+        BinaryBatch<Position> batch = serializer.batch(Position.class, bb);
+        assertEquals(100, batch.size());
+        assertEquals(positions.get(57), batch.get(57));
+        assertEquals(positions.get(3), batch.get(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> batch.get(100));
+
+        bb.readerOffset(4);
+        assertEquals(positions, serializer.deserializeAll(Position.class, bb));
+        assertEquals(8, bb.readInt());
+        assertTrue(serializer.deserializeAll(Position.class, serializer.serializeAll(List.of())).isEmpty());
+    }
+
+    @Test
+    public void testStream() throws IOException {
+        BinarySerializer serializer = new BinarySerializer(true);
+        List<Position> positions = new ArrayList<>();
+        for (int i = 0; i < 5000; i++)
+            positions.add(new Position("world_" + (i % 3), i, i * 0.5, -i));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BinaryStreamWriter writer = new BinaryStreamWriter(serializer, out, 512)) {
+            writer.writeAll(positions);
+            writer.write(sample());
+            assertEquals(5001, writer.records());
+        }
+
+        List<Position> read = new ArrayList<>();
+        try (BinaryStreamReader reader = new BinaryStreamReader(serializer, new ByteArrayInputStream(out.toByteArray()), 100)) {
+            for (int i = 0; i < positions.size(); i++)
+                read.add(reader.read(Position.class));
+            assertSample(sample(), reader.read(PlayerState.class));
+            assertFalse(reader.hasNext());
+        }
+        assertEquals(positions, read);
+
+        Path file = Files.createTempFile("bstream", ".bin");
+        try {
+            try (BinaryStreamWriter writer = serializer.writer(FileChannel.open(file, StandardOpenOption.WRITE))) {
+                writer.writeAll(positions);
+            }
+            List<Position> fromChannel = new ArrayList<>();
+            try (BinaryStreamReader reader = serializer.reader(FileChannel.open(file))) {
+                reader.readAll(Position.class, fromChannel::add);
+            }
+            assertEquals(positions, fromChannel);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static PlayerState sample() {
+        PlayerState src = new PlayerState();
+        src.id = new UUID(114514, 1919810);
+        src.name = "H3xadecimal";
+        src.level = 42;
+        src.lastSeen = 1700000000000L;
+        src.online = true;
+        src.health = 19.5f;
+        src.balance = null;
+        src.rank = Rank.VIP;
+        src.blocks = new int[]{1, 2, 3, 65535};
+        src.tags = new String[]{"a", "b"};
+        src.friends = List.of("alice", "bob");
+        src.stats = Map.of("kills", 10, "deaths", 2);
+        src.history = EnumSet.of(Rank.MEMBER, Rank.VIP);
+        src.position = new Position("world", 1.5, 64, -3.25);
+        src.pet = new PlayerState();
+        src.pet.name = "pet";
+        src.pet.rank = Rank.MEMBER;
+        return src;
+    }
+
+    private static void assertSample(PlayerState src, PlayerState out) {
+        assertEquals(src.id, out.id);
+        assertEquals(src.name, out.name);
+        assertEquals(src.level, out.level);
+        assertEquals(src.lastSeen, out.lastSeen);
+        assertTrue(out.online);
+        assertEquals(src.health, out.health);
+        assertNull(out.balance);
+        assertEquals(src.rank, out.rank);
+        assertArrayEquals(src.blocks, out.blocks);
+        assertArrayEquals(src.tags, out.tags);
+        assertEquals(src.friends, out.friends);
+        assertEquals(src.stats, out.stats);
+        assertEquals(src.history, out.history);
+        assertEquals(src.position, out.position);
+        assertEquals("pet", out.pet.name);
+        assertNull(out.pet.pet);
+    }
+}
@@ -0,0 +1,43 @@
+import cn.afternode.commons.messaging.ChannelMetrics;
+import cn.afternode.commons.messaging.LogHistogram;
+import cn.afternode.commons.messaging.MessagingHelper;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestChannelMetrics {
+    @Test
+    public void testMetrics() {
+        LogHistogram histogram = new LogHistogram();
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i);
+        LogHistogram.Snapshot hs = histogram.snapshot();
+        assertEquals(100, hs.count());
+        assertEquals(5050, hs.sum());
+        assertEquals(100, hs.max());
+        assertEquals(63, hs.percentile(50));
+        assertEquals(100, hs.percentile(99));
+        assertEquals(0, new LogHistogram().snapshot().percentile(99));
+
+        MessagingHelper helper = new MessagingHelper() {
+            {
+                ChannelMetrics m = this.createMetrics("test:a");
+                m.recordSent(10);
+                m.recordSent(20);
+                m.recordReceived(5);
+                m.recordRejected();
+                m.recordHandled(1500);
+                this.removeMetrics(this.createMetrics("test:b"));
+            }
+        };
+        assertNull(helper.getMetrics("test:b"));
+        ChannelMetrics.Snapshot s = helper.snapshotMetrics().get(0);
+        assertEquals("test:a", s.channel());
+        assertEquals(2, s.messagesSent());
+        assertEquals(30, s.bytesSent());
+        assertEquals(1, s.messagesReceived());
+        assertEquals(5, s.bytesReceived());
+        assertEquals(1, s.rejected());
+        assertEquals(1500, s.handlerNanos().max());
+    }
+}
@@ -0,0 +1,69 @@
+import cn.afternode.commons.messaging.ChunkAssembler;
+import cn.afternode.commons.messaging.ChunkStreamer;
+import cn.afternode.commons.messaging.NByteBuf;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestChunkedTransfer {
+    @Test
+    public void testChunking() throws Exception {
+        byte[] large = new byte[100_000];
+        new Random(42).nextBytes(large);
+
+        List<byte[]> frames = new ArrayList<>();
+        ChunkStreamer<String> streamer = new ChunkStreamer<>(30_000, 3, (target, frame) -> frames.add(frame.toArray()));
+        CompletableFuture<Void> first = streamer.submit("a", NByteBuf.wrap(large));
+        CompletableFuture<Void> second = streamer.submit("b", NByteBuf.wrap(new byte[]{1, 2, 3}));
+
+        // Transfers take turns, the small one completes in the first tick
+        assertEquals(3, streamer.tick());
+        assertTrue(second.isDone());
+        assertFalse(first.isDone());
+        while (streamer.hasPending())
+            streamer.tick();
+        assertTrue(first.isDone());
+        assertEquals(5, frames.size());
+
+        ChunkAssembler<String> assembler = new ChunkAssembler<>();
+        List<byte[]> received = new ArrayList<>();
+        Collections.reverse(frames);
+        for (byte[] frame : frames) {
+            NByteBuf payload = assembler.accept("sender", NByteBuf.wrap(frame));
+            if (payload != null)
+                received.add(payload.toArray());
+        }
+        assertEquals(2, received.size());
+        assertArrayEquals(new byte[]{1, 2, 3}, received.get(0));
+        assertArrayEquals(large, received.get(1));
+        assertEquals(0, assembler.pendingBytes());
+
+        try (NByteBuf single = ChunkStreamer.single(NByteBuf.wrap(new byte[]{9}))) {
+            assertArrayEquals(new byte[]{9}, assembler.accept("sender", single).toArray());
+        }
+
+        // Duplicated chunks never complete a transfer with holes
+        ChunkAssembler<String> duplicated = new ChunkAssembler<>();
+        for (int i = 0; i < 4; i++)
+            assertNull(duplicated.accept("sender", NByteBuf.wrap(frames.get(0))));
+        assertEquals(1, duplicated.pendingCount());
+
+        // Exceeding pending memory, then timed out
+        ChunkAssembler<String> bounded = new ChunkAssembler<>(200_000, 150_000, Duration.ofMillis(20));
+        assertNull(bounded.accept("x", NByteBuf.wrap(frames.get(0))));
+        assertNull(bounded.accept("y", NByteBuf.wrap(frames.get(0))));
+        assertEquals(1, bounded.pendingCount());
+        assertEquals(1, bounded.dropped());
+        Thread.sleep(50);
+        assertNull(bounded.accept("z", NByteBuf.wrap(frames.get(1))));
+        assertEquals(2, bounded.dropped());
+        assertEquals(1, bounded.pendingCount());
+    }
+}
@@ -0,0 +1,66 @@
+import cn.afternode.commons.binary.WrappedByteBuffer;
+import cn.afternode.commons.binary.compression.Compression;
+import cn.afternode.commons.binary.compression.DeflateCompressor;
+import cn.afternode.commons.binary.compression.Lz4Compressor;
+import cn.afternode.commons.serialization.SerializationException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestCompression {
+    private static byte[] redundant(int size) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (sb.length() < size)
+            sb.append("{id:\"minecraft:diamond_sword\",Count:1b,tag:{Damage:").append(i++ % 7).append("}}");
+        return Arrays.copyOf(sb.toString().getBytes(StandardCharsets.UTF_8), size);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        byte[] random = new byte[5000];
+        new Random(114514).nextBytes(random);
+        byte[][] samples = {new byte[0], new byte[13], redundant(17), redundant(300), redundant(70000), random, new byte[100000]};
+
+        for (Compression c : new Compression[]{Compression.lz4(), Compression.deflate(), new Compression(new DeflateCompressor(1), 0)}) {
+            for (byte[] sample : samples) {
+                byte[] frame = c.compress(sample);
+                assertArrayEquals(sample, c.decompress(frame));
+                assertTrue(frame.length <= sample.length + 10);
+            }
+            assertTrue(c.compress(redundant(70000)).length < 70000 / 4);
+        }
+
+        // Frames are readable by compression of other methods
+        assertArrayEquals(redundant(4096), Compression.deflate().decompress(Compression.lz4().compress(redundant(4096))));
+    }
+
+    @Test
+    public void testBuffer() {
+        Compression c = new Compression(Lz4Compressor.INSTANCE, 64);
+        WrappedByteBuffer src = WrappedByteBuffer.direct(16, 1 << 20);
+        for (int i = 0; i < 1000; i++)
+            src.writeUtf("player_" + (i % 10));
+
+        WrappedByteBuffer frames = WrappedByteBuffer.growable();
+        c.compress(src, frames);
+        frames.writeInt(42);
+
+        WrappedByteBuffer out = c.decompress(frames);
+        for (int i = 0; i < 1000; i++)
+            assertEquals("player_" + (i % 10), out.readUtf());
+        assertEquals(42, frames.readInt());
+
+        byte[] frame = c.compress(redundant(1000));
+        assertThrows(SerializationException.class, () -> c.decompress(Arrays.copyOf(frame, frame.length - 5)));
+
+        WrappedByteBuffer truncated = WrappedByteBuffer.growable();
+        truncated.writeBytes(Arrays.copyOf(frame, frame.length - 5));
+        assertTrue(truncated.capacity() > truncated.writeOffset());
+        assertThrows(SerializationException.class, () -> c.decompress(truncated));
+    }
+}
@@ -0,0 +1,53 @@
+import cn.afternode.commons.messaging.DecodePipeline;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestDecodePipeline {
+    @Test
+    public void testOrderAndDrop() throws Exception {
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        try {
+            List<Integer> delivered = new ArrayList<>();
+            List<Throwable> errors = new ArrayList<>();
+            DecodePipeline pipeline = new DecodePipeline(workers, 4, 2, DecodePipeline.DropPolicy.DROP_OLDEST, errors::add);
+
+            // Hold the first decode so later ones complete earlier
+            CountDownLatch release = new CountDownLatch(1);
+            pipeline.submit(() -> {
+                release.await();
+                return () -> delivered.add(0);
+            });
+            for (int i = 1; i < 4; i++) {
+                int n = i;
+                pipeline.submit(() -> n == 2 ? null : () -> delivered.add(n));
+            }
+            Thread.sleep(50);
+            assertEquals(0, pipeline.drain());
+
+            // Full, the held message is dropped
+            assertTrue(pipeline.submit(() -> {
+                throw new IllegalStateException("bad message");
+            }));
+            assertEquals(1, pipeline.dropped());
+            release.countDown();
+
+            workers.shutdown();
+            assertTrue(workers.awaitTermination(5, TimeUnit.SECONDS));
+            assertEquals(2, pipeline.drain());
+            assertEquals(2, pipeline.drain());
+            assertEquals(List.of(1, 3), delivered);
+            assertEquals(1, errors.size());
+            assertEquals(0, pipeline.size());
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+}
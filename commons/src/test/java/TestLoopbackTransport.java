@@ -0,0 +1,67 @@
+import cn.afternode.commons.messaging.ChannelMetrics;
+import cn.afternode.commons.messaging.LoadGenerator;
+import cn.afternode.commons.messaging.LoopbackTransport;
+import cn.afternode.commons.messaging.MessagingHelper;
+import cn.afternode.commons.messaging.NByteBuf;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLoopbackTransport {
+    @Test
+    public void testLoad() throws Exception {
+        MessagingHelper backend = new MessagingHelper();
+        MessagingHelper proxy = new MessagingHelper();
+        backend.setKey("secret");
+        proxy.setKey("secret");
+
+        ChannelMetrics metrics = new ChannelMetrics("test:load");
+        Map<String, Integer> received = new ConcurrentHashMap<>();
+        LoopbackTransport<Integer, String> transport = new LoopbackTransport<>(
+                id -> "player" + id,
+                (player, data) -> {
+                    metrics.recordReceived(data.length);
+                    try {
+                        NByteBuf body = proxy.validateCombined(NByteBuf.wrap(data));
+                        assertEquals(player, body.readString());
+                        received.merge(player, 1, Integer::sum);
+                    } catch (Exception ex) {
+                        metrics.recordError();
+                    }
+                },
+                Runnable::run,
+                32766
+        );
+        assertThrows(IllegalArgumentException.class, () -> transport.send(0, new byte[32767]));
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try (LoadGenerator<Integer> generator = new LoadGenerator<>(
+                List.of(0, 1, 2, 3),
+                2000,
+                buf -> {},
+                (id, buf) -> {
+                    buf.writeString("player" + id);
+                    transport.send(id, backend.combineSign(buf));
+                })) {
+            generator.start(scheduler, 5);
+            Thread.sleep(200);
+            generator.close();
+
+            long sent = generator.sent();
+            assertTrue(sent > 0);
+            assertEquals(0, generator.errors());
+            assertEquals(sent, metrics.snapshot().messagesReceived());
+            assertEquals(0, metrics.snapshot().errors());
+            assertEquals(sent, received.values().stream().mapToLong(Integer::longValue).sum());
+            assertEquals(Math.min(sent, 4), received.size());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+}
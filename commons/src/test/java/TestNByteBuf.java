@@ -0,0 +1,141 @@
+import cn.afternode.commons.messaging.MessageBatcher;
+import cn.afternode.commons.messaging.MessagingHelper;
+import cn.afternode.commons.messaging.NByteBuf;
+import cn.afternode.commons.messaging.PacketRegistry;
+import cn.afternode.commons.messaging.ReplayFilter;
+import cn.afternode.commons.serialization.SerializationException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestNByteBuf {
+    @Test
+    public void testWireFormat() {
+        try (NByteBuf bb = NByteBuf.pooled()) {
+            bb.writeShort((short) 1);
+            bb.writeInt(2);
+            bb.writeLong(3);
+            assertArrayEquals(new byte[]{1, 0, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 3}, bb.toArray());
+        }
+    }
+
+    @Test
+    public void testSigned() throws Exception {
+        MessagingHelper helper = new MessagingHelper();
+        helper.setKey("secret");
+        UUID id = new UUID(114514, 1919810);
+
+        NByteBuf body = new NByteBuf();
+        body.writeString("hello");
+        body.writeUUID(id);
+        byte[] combined = helper.combineSign(body);
+
+        NByteBuf read = helper.validateCombined(NByteBuf.wrap(combined));
+        assertEquals("hello", read.readString());
+        assertEquals(id, read.readUUID());
+        assertNull(helper.validateCombined(NByteBuf.wrap(combined)));
+
+        assertEquals(0, body.direct().readerIndex());
+        assertArrayEquals(helper.sign(body.toArray()), helper.sign(body));
+
+        combined[combined.length - 1] ^= 1;
+        assertNull(helper.validateCombined(NByteBuf.wrap(combined)));
+        assertNull(helper.validateCombined(NByteBuf.wrap(new byte[1])));
+        assertNull(helper.validateCombined(NByteBuf.wrap(Arrays.copyOf(combined, 20))));
+        assertNull(helper.validateCombined(NByteBuf.wrap(new byte[]{(byte) 0xFF, (byte) 0xFF, 0, 0})));
+
+        byte[] signedByOld = helper.combineSign(body);
+        helper.setKey("rotated");
+        assertNull(helper.validateCombined(NByteBuf.wrap(signedByOld)));
+        assertEquals("hello", helper.validateCombined(NByteBuf.wrap(helper.combineSign(body))).readString());
+
+        MessagingHelper other = new MessagingHelper();
+        other.setKey("next");
+        helper.setSecondaryKey("next");
+        assertEquals("hello", helper.validateCombined(NByteBuf.wrap(other.combineSign(body))).readString());
+
+        byte[] beforeRotation = helper.combineSign(body);
+        byte[] stale = helper.combineSign(body);
+        helper.rotateKey("next");
+        assertEquals("hello", helper.validateCombined(NByteBuf.wrap(beforeRotation)).readString());
+        helper.setSecondaryKey(null);
+        assertNull(helper.validateCombined(NByteBuf.wrap(stale)));
+        assertEquals("hello", helper.validateCombined(NByteBuf.wrap(other.combineSign(body))).readString());
+    }
+
+    @Test
+    public void testReplayFilter() {
+        ReplayFilter filter = new ReplayFilter(64, 2, Duration.ofSeconds(30));
+        long now = System.currentTimeMillis();
+        assertTrue(filter.accept(1, 100, now));
+        assertFalse(filter.accept(1, 100, now));
+        assertTrue(filter.accept(1, 98, now));
+        assertTrue(filter.accept(1, 150, now));
+        assertFalse(filter.accept(1, 86, now));
+        assertTrue(filter.accept(1, 99, now));
+        assertFalse(filter.accept(1, 98, now));
+        assertFalse(filter.accept(1, 151, now - 60_000));
+
+        assertTrue(filter.accept(2, 1, now));
+        assertTrue(filter.accept(3, 1, now));
+        assertTrue(filter.accept(1, 1, now));
+    }
+
+    public record Teleport(UUID player, String server, int x, int z) {}
+
+    public record Kick(UUID player, String reason) {}
+
+    @Test
+    public void testPackets() {
+        List<Object> received = new ArrayList<>();
+        PacketRegistry<String> packets = new PacketRegistry<String>()
+                .register(0, Teleport.class, (sender, packet) -> received.add(packet))
+                .register(300, Kick.class);
+        assertThrows(IllegalArgumentException.class, () -> packets.register(0, Kick.class));
+
+        Teleport teleport = new Teleport(new UUID(1, 2), "lobby", -30, 12);
+        Kick kick = new Kick(new UUID(3, 4), "bye");
+        try (NByteBuf bb = NByteBuf.pooled()) {
+            packets.write(teleport, bb);
+            packets.write(kick, bb);
+            packets.write(teleport, bb);
+            bb.writeVarInt(7);
+
+            assertTrue(packets.dispatch("sender", bb));
+            assertEquals(List.of(teleport), received);
+            PacketRegistry.Decoded<String> decoded = packets.decode(bb);
+            assertEquals(kick, decoded.packet());
+            assertFalse(decoded.dispatch("sender"));
+            assertTrue(packets.decode(bb).dispatch("sender"));
+            assertEquals(List.of(teleport, teleport), received);
+            assertThrows(SerializationException.class, () -> packets.read(bb));
+        }
+    }
+
+    @Test
+    public void testBatching() throws Exception {
+        List<byte[]> frames = new ArrayList<>();
+        MessageBatcher<String> batcher = new MessageBatcher<>(16, (target, batch) -> frames.add(batch.toArray()));
+        for (int i = 0; i < 5; i++) {
+            try (NByteBuf message = NByteBuf.pooled()) {
+                message.writeInt(i);
+                assertEquals(i == 0, batcher.add("server", message));
+            }
+        }
+        batcher.flush();
+        assertFalse(batcher.hasPending());
+
+        // 5 bytes per message, 3 fit in a 16 bytes batch
+        assertEquals(2, frames.size());
+        List<Integer> received = new ArrayList<>();
+        for (byte[] frame : frames)
+            MessageBatcher.forEach(NByteBuf.wrap(frame), message -> received.add(message.readInt()));
+        assertEquals(List.of(0, 1, 2, 3, 4), received);
+    }
+}
@@ -0,0 +1,71 @@
+import cn.afternode.commons.messaging.MessageSink;
+import cn.afternode.commons.messaging.PacketRegistry;
+import cn.afternode.commons.messaging.RpcEndpoint;
+import cn.afternode.commons.messaging.RpcException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestRpcEndpoint {
+    public record BalanceQuery(UUID player) {}
+
+    public record Balance(UUID player, long amount) {}
+
+    private static PacketRegistry<String> packets() {
+        return new PacketRegistry<String>()
+                .register(0, BalanceQuery.class)
+                .register(1, Balance.class);
+    }
+
+    @Test
+    public void testRequest() throws Exception {
+        RpcEndpoint<String> proxy = new RpcEndpoint<>(packets());
+        RpcEndpoint<String> backend = new RpcEndpoint<>(packets(), 2);
+        proxy.handle(BalanceQuery.class, (sender, query) -> {
+            if (query.player().getMostSignificantBits() < 0)
+                throw new IllegalArgumentException("unknown player");
+            if (query.player().getMostSignificantBits() == 0)
+                return null;
+            return CompletableFuture.completedFuture(new Balance(query.player(), 100));
+        });
+
+        // Loopback, responses go straight back to backend
+        MessageSink<String> toBackend = (target, frame) -> backend.receive("proxy", frame, null);
+        MessageSink<String> toProxy = (target, frame) -> proxy.receive("backend", frame, toBackend);
+
+        UUID id = new UUID(1, 2);
+        assertEquals(new Balance(id, 100), backend.request("proxy", new BalanceQuery(id), Balance.class, Duration.ofSeconds(5), toProxy).get());
+        ExecutionException remote = assertThrows(ExecutionException.class,
+                () -> backend.request("proxy", new BalanceQuery(new UUID(-1, 0)), Balance.class, Duration.ofSeconds(5), toProxy).get());
+        assertInstanceOf(RpcException.class, remote.getCause());
+        ExecutionException nullStage = assertThrows(ExecutionException.class,
+                () -> backend.request("proxy", new BalanceQuery(new UUID(0, 1)), Balance.class, Duration.ofSeconds(5), toProxy).get());
+        assertInstanceOf(RpcException.class, nullStage.getCause());
+
+        // Responses from a sender other than the target are ignored
+        MessageSink<String> spoofed = (target, frame) -> proxy.receive("backend", frame, (t, f) -> backend.receive("intruder", f, null));
+        ExecutionException ignored = assertThrows(ExecutionException.class,
+                () -> backend.request("proxy", new BalanceQuery(id), Balance.class, Duration.ofMillis(50), spoofed).get());
+        assertInstanceOf(TimeoutException.class, ignored.getCause());
+
+        // Requests sent nowhere stay pending until timeout
+        MessageSink<String> lost = (target, frame) -> {};
+        CompletableFuture<Balance> first = backend.request("proxy", new BalanceQuery(id), Balance.class, Duration.ofMillis(50), lost);
+        backend.request("proxy", new BalanceQuery(id), Balance.class, Duration.ofSeconds(5), lost);
+        ExecutionException rejected = assertThrows(ExecutionException.class,
+                () -> backend.request("proxy", new BalanceQuery(id), Balance.class, Duration.ofSeconds(5), lost).get());
+        assertInstanceOf(RejectedExecutionException.class, rejected.getCause());
+
+        ExecutionException timeout = assertThrows(ExecutionException.class, first::get);
+        assertInstanceOf(TimeoutException.class, timeout.getCause());
+        backend.failAll(new IllegalStateException("closed"));
+        assertEquals(0, backend.pendingCount());
+    }
+}
@@ -0,0 +1,151 @@
+import cn.afternode.commons.binary.IntList;
+import cn.afternode.commons.binary.LongList;
+import cn.afternode.commons.binary.MappedWrappedByteBuffer;
+import cn.afternode.commons.binary.Utf8InternTable;
+import cn.afternode.commons.binary.WrappedByteBuffer;
+import cn.afternode.commons.binary.WrappedByteBufferPool;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestWrappedByteBuffer {
+    @Test
+    public void testGrowable() {
+        WrappedByteBuffer bb = new WrappedByteBuffer(4, 1024);
+        UUID id = new UUID(114514, 1919810);
+        bb.writeShort((short) 7);
+        bb.writeUtf("hello world");
+        bb.writeUUID(id);
+        bb.writeInt(42);
+        assertTrue(bb.capacity() > 4);
+
+        assertEquals(7, bb.readShort());
+        assertEquals("hello world", bb.readUtf());
+        assertEquals(id, bb.readUUID());
+        assertEquals(42, bb.readInt());
+        assertEquals(bb.writeOffset(), bb.toArray().length);
+
+        assertThrows(BufferOverflowException.class, () -> bb.writeBytes(new byte[2048]));
+
+        // Only the encoded size is reserved
+        WrappedByteBuffer fixed = WrappedByteBuffer.direct(3);
+        fixed.writeVarInt(1);
+        fixed.writeVarLong(300);
+        assertEquals(3, fixed.writeOffset());
+        assertThrows(BufferOverflowException.class, () -> fixed.writeVarInt(1));
+    }
+
+    @Test
+    public void testPool() {
+        WrappedByteBufferPool pool = new WrappedByteBufferPool(16, 4096, 1024, 2);
+        WrappedByteBuffer bb = pool.acquire();
+        bb.writeInt(1);
+        bb.release();
+
+        WrappedByteBuffer again = pool.acquire();
+        assertSame(bb, again);
+        assertEquals(0, again.writeOffset());
+        again.writeBytes(new byte[2048]);
+        again.release();
+        assertNotSame(again, pool.acquire());
+    }
+
+    @Test
+    public void testUtf() {
+        String[] samples = {"", "world", "\u4e16\u754c", "emoji \uD83D\uDE00", "bad \uD800 surrogate"};
+        for (WrappedByteBuffer bb : new WrappedByteBuffer[]{WrappedByteBuffer.growable(), WrappedByteBuffer.direct(4, 1024)}) {
+            for (String s : samples) {
+                bb.writeUtf(s);
+                bb.writeVarUtf(s);
+            }
+            for (String s : samples) {
+                String expected = new String(s.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+                assertEquals(expected, bb.readUtf());
+                assertEquals(expected, bb.readVarUtf());
+            }
+        }
+
+        Utf8InternTable table = new Utf8InternTable();
+        WrappedByteBuffer bb = WrappedByteBuffer.growable();
+        bb.writeUtf("world_nether");
+        bb.writeUtf("world_nether");
+        assertSame(bb.readUtf(table), bb.readUtf(table));
+    }
+
+    @Test
+    public void testPrimitiveBulk() {
+        int[] blocks = new int[10000];
+        for (int i = 0; i < blocks.length; i++)
+            blocks[i] = i * 31;
+
+        for (WrappedByteBuffer bb : new WrappedByteBuffer[]{WrappedByteBuffer.growable(), WrappedByteBuffer.direct(8, 1 << 20)}) {
+            bb.writeIntArray(blocks);
+            bb.writeInts(blocks, 100, 3);
+            bb.writeIntList(IntList.of(7, 8, 9));
+            bb.writeLongList(LongList.of(Long.MIN_VALUE, Long.MAX_VALUE));
+            bb.writeDoubles(new double[]{0.5, 1.5}, 0, 2);
+
+            assertArrayEquals(blocks, bb.readIntArray());
+            int[] part = new int[5];
+            bb.readInts(part, 1, 3);
+            assertArrayEquals(new int[]{0, 3100, 3131, 3162, 0}, part);
+
+            IntList reused = new IntList(64);
+            int[] backing = reused.elements();
+            assertEquals(IntList.of(7, 8, 9), bb.readIntList(reused));
+            assertSame(backing, reused.elements());
+            assertEquals(LongList.of(Long.MIN_VALUE, Long.MAX_VALUE), bb.readLongList());
+
+            double[] doubles = new double[2];
+            bb.readDoubles(doubles, 0, 2);
+            assertArrayEquals(new double[]{0.5, 1.5}, doubles);
+        }
+    }
+
+    @Test
+    public void testSlice() {
+        WrappedByteBuffer bb = WrappedByteBuffer.growable();
+        bb.writeBlock(new byte[]{1, 2, 3});
+        WrappedByteBuffer inner = WrappedByteBuffer.growable();
+        inner.writeUtf("payload");
+        inner.writeInt(42);
+        bb.writeBlock(inner.toArray());
+
+        assertArrayEquals(new byte[]{1, 2, 3}, bb.readBlockView().toArray());
+        WrappedByteBuffer view = bb.readBlockView();
+        assertEquals(bb.writeOffset(), bb.readerOffset());
+        assertEquals("payload", view.readUtf());
+        assertEquals(42, view.readInt());
+        assertThrows(ReadOnlyBufferException.class, () -> view.writeInt(0, 0));
+
+        bb.resetReader();
+        assertEquals(bb.writeOffset(), bb.slice().capacity());
+        assertEquals(0, bb.readerOffset());
+    }
+
+    @Test
+    public void testMapped() throws IOException {
+        Path file = Files.createTempFile("wbb", ".bin");
+        try {
+            try (MappedWrappedByteBuffer bb = WrappedByteBuffer.mapped(file, 64)) {
+                bb.writeUtf("snapshot");
+                bb.writeLong(1919810L);
+            }
+            try (MappedWrappedByteBuffer bb = WrappedByteBuffer.mapped(file, 64)) {
+                assertFalse(bb.hasArray());
+                assertEquals("snapshot", bb.readUtf());
+                assertEquals(1919810L, bb.readLong());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package cn.afternode.commons.velocity.messaging;
+
+import com.velocitypowered.api.proxy.Player;
+
+public interface IMessageListener {
+    void onMessage(String channel, Player player, NVelocityByteBuf data);
+}
@@ -0,0 +1,431 @@
+package cn.afternode.commons.velocity.messaging;
+
+import cn.afternode.commons.messaging.ChannelMetrics;
+import cn.afternode.commons.messaging.ChunkAssembler;
+import cn.afternode.commons.messaging.ChunkStreamer;
+import cn.afternode.commons.messaging.LoopbackTransport;
+import cn.afternode.commons.messaging.MessageBatcher;
+import cn.afternode.commons.messaging.MessageTransport;
+import cn.afternode.commons.messaging.NByteBuf;
+import cn.afternode.commons.messaging.PacketRegistry;
+import cn.afternode.commons.messaging.RpcEndpoint;
+import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.connection.PluginMessageEvent;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ServerConnection;
+import com.velocitypowered.api.proxy.messages.ChannelMessageSink;
+import com.velocitypowered.api.proxy.messages.MinecraftChannelIdentifier;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import com.velocitypowered.api.scheduler.ScheduledTask;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class MessageChannelContext implements Closeable {
+    private final String channel;
+    private final MinecraftChannelIdentifier identifier;
+    private final VelocityMessagingHelper helper;
+    private final IMessageListener listener;
+    private final PacketRegistry<Player> packets;
+    private final RpcEndpoint<Player> rpc;
+    private final ChannelMetrics metrics;
+
+    private volatile MessageTransport<ChannelMessageSink> transport;
+
+    private volatile MessageBatcher<ChannelMessageSink> batcher = null;
+    private long flushDelay;
+
+    private volatile ChunkStreamer<ChannelMessageSink> streamer = null;
+    private volatile ChunkAssembler<Player> assembler = null;
+    private ScheduledTask streamTask = null;
+
+    private boolean closed = false;
+
+    MessageChannelContext(String channel, MinecraftChannelIdentifier identifier, VelocityMessagingHelper helper, IMessageListener listener, PacketRegistry<Player> packets, RpcEndpoint<Player> rpc, ChannelMetrics metrics) {
+        this.channel = channel;
+        this.identifier = identifier;
+        this.helper = helper;
+        this.listener = listener;
+        this.packets = packets;
+        this.rpc = rpc;
+        this.metrics = metrics;
+        this.setTransport(null);
+    }
+
+    @Subscribe
+    public void onPluginMessage(PluginMessageEvent event) {
+        if (!this.identifier.equals(event.getIdentifier()))
+            return;
+        if (closed)
+            return;
+
+        // Messages on this channel are never forwarded to the other side
+        event.setResult(PluginMessageEvent.ForwardResult.handled());
+        if (!(event.getSource() instanceof ServerConnection connection))
+            return;
+
+        this.receive(connection.getPlayer(), event.getData());
+    }
+
+    /**
+     * Handle a plugin message of this channel
+     * @param player Player
+     * @param message Plugin message
+     * @throws RuntimeException Error in validating, decoding or handling, with cause
+     * @see LoopbackTransport
+     */
+    public void receive(Player player, byte[] message) {
+        if (closed)
+            return;
+
+        metrics.recordReceived(message.length);
+        try {
+            NVelocityByteBuf buf = NVelocityByteBuf.wrap(message);
+            if (helper.signingAvailable()) {
+                buf = helper.validateCombined(buf);
+                if (buf == null)
+                    metrics.recordRejected();
+            }
+
+            long start = System.nanoTime();
+            try {
+                if (batcher == null || buf == null) {
+                    this.deliver(player, buf);
+                } else {
+                    MessageBatcher.forEach(buf, data -> this.deliver(player, data));
+                }
+            } finally {
+                metrics.recordHandled(System.nanoTime() - start);
+            }
+        } catch (Throwable t) {
+            metrics.recordError();
+            throw new RuntimeException("(%s) Error handling plugin message from %s".formatted(channel, player.getUsername()), t);
+        }
+    }
+
+    private void deliver(Player player, NVelocityByteBuf data) {
+        ChunkAssembler<Player> assembler = this.assembler;
+        if (assembler != null && data != null) {
+            data = assembler.accept(player, data);
+            if (data == null)
+                return;
+        }
+        if (rpc == null) {
+            listener.onMessage(channel, player, data);
+        } else if (data != null) {
+            rpc.receive(player, data, (target, frame) -> this.send(this.connection(target), frame));
+        }
+    }
+
+    /**
+     * Send message to channel through specified player
+     * <br>
+     * With batching enabled, the message is copied and queued until next flush
+     * @param player Player
+     * @param buf Data
+     * @throws NoSuchAlgorithmException Signing error
+     * @throws InvalidKeyException Signing error
+     * @throws IOException Using a closed channel, or player is not connected to a server
+     * @see #enableBatching(long, int)
+     */
+    public void send(Player player, NVelocityByteBuf buf) throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+        if (closed)
+            throw new IOException("Using a closed channel");
+
+        this.send(this.connection(player), buf);
+    }
+
+    private ServerConnection connection(Player player) throws IOException {
+        return player.getCurrentServer().orElseThrow(() -> new IOException("%s is not connected to a server".formatted(player.getUsername())));
+    }
+
+    /**
+     * Send message to all servers with at least 1 player online
+     * <br>
+     * With batching enabled, the message is queued for each server until next flush
+     * @param buf Data
+     * @throws IOException Using a closed channel
+     * @throws NoSuchAlgorithmException Signing error
+     * @throws InvalidKeyException Signing error
+     */
+    public void sendAll(NVelocityByteBuf buf) throws IOException, NoSuchAlgorithmException, InvalidKeyException {
+        if (closed)
+            throw new IOException("Using a closed channel");
+
+        if (streamer == null) {
+            this.writeAll(buf);
+            return;
+        }
+        try (NByteBuf framed = ChunkStreamer.single(buf)) {
+            this.writeAll(framed);
+        }
+    }
+
+    private void writeAll(NByteBuf buf) throws NoSuchAlgorithmException, InvalidKeyException {
+        byte[] data = batcher == null ? this.encode(buf) : null;
+        for (RegisteredServer server : helper.getServer().getAllServers()) {
+            if (server.getPlayersConnected().isEmpty())
+                continue;
+            if (data != null) {
+                transport.send(server, data);
+                metrics.recordSent(data.length);
+            } else {
+                this.writeFrame(server, buf);
+            }
+        }
+    }
+
+    private void send(ChannelMessageSink sink, NByteBuf buf) throws NoSuchAlgorithmException, InvalidKeyException {
+        if (streamer == null) {
+            this.writeFrame(sink, buf);
+            return;
+        }
+        try (NByteBuf framed = ChunkStreamer.single(buf)) {
+            this.writeFrame(sink, framed);
+        }
+    }
+
+    private void writeFrame(ChannelMessageSink sink, NByteBuf buf) throws NoSuchAlgorithmException, InvalidKeyException {
+        MessageBatcher<ChannelMessageSink> batcher = this.batcher;
+        if (batcher == null) {
+            this.sendNow(sink, buf);
+        } else if (batcher.add(sink, buf)) {
+            helper.getServer().getScheduler().buildTask(helper.getPlugin(), this::flush).delay(flushDelay, TimeUnit.MILLISECONDS).schedule();
+        }
+    }
+
+    private void sendNow(ChannelMessageSink sink, NByteBuf buf) throws NoSuchAlgorithmException, InvalidKeyException {
+        byte[] data = this.encode(buf);
+        transport.send(sink, data);
+        metrics.recordSent(data.length);
+    }
+
+    /**
+     * Replace output of this channel, such as with a {@link LoopbackTransport} in tests and load simulation
+     * @param transport Transport to server connections or servers, or null for platform plugin messaging
+     */
+    public void setTransport(MessageTransport<ChannelMessageSink> transport) {
+        if (transport == null)
+            transport = (sink, data) -> sink.sendPluginMessage(this.identifier, data);
+        this.transport = transport;
+    }
+
+    private byte[] encode(NByteBuf buf) throws NoSuchAlgorithmException, InvalidKeyException {
+        if (helper.signingAvailable())
+            return helper.combineSign(buf);
+        return buf.toArray();
+    }
+
+    /**
+     * Coalesce messages sent within flush delay into one plugin message per server connection
+     * <br>
+     * Batches are signed as a whole, and both sides of the channel must enable batching
+     * <br>
+     * A rejected batch is passed to raw listeners once as null, same as a rejected message without batching
+     * @param flushDelay Delay in milliseconds from the first queued message to flush
+     * @param maxSize Max batch size in bytes, larger batches are split
+     * @throws IllegalArgumentException flushDelay is negative
+     * @see MessageBatcher
+     */
+    public void enableBatching(long flushDelay, int maxSize) {
+        if (flushDelay < 0)
+            throw new IllegalArgumentException("Flush delay %s is negative".formatted(flushDelay));
+        this.flush();
+        this.flushDelay = flushDelay;
+        this.batcher = new MessageBatcher<>(maxSize, this::sendNow);
+    }
+
+    /**
+     * Coalesce messages sent within 50ms (1 server tick) into one plugin message per server connection
+     * @see #enableBatching(long, int)
+     */
+    public void enableBatching() {
+        this.enableBatching(50, MessageBatcher.DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Send queued batches immediately, no-op if batching is disabled
+     * @throws RuntimeException Error in signing or sending, with cause
+     */
+    public void flush() {
+        MessageBatcher<ChannelMessageSink> batcher = this.batcher;
+        if (batcher == null)
+            return;
+        try {
+            batcher.flush();
+        } catch (Exception ex) {
+            throw new RuntimeException("(%s) Error flushing batched messages".formatted(channel), ex);
+        }
+    }
+
+    /**
+     * Allow sending payloads larger than a plugin message with {@link #sendLarge(Player, NVelocityByteBuf)}
+     * <br>
+     * All messages get a frame header, so both sides of the channel must enable chunking
+     * @param chunkSize Max data size of a chunk
+     * @param chunksPerTick Max chunks sent by this channel in a tick (50ms)
+     * @param assembler Reassembly of incoming payloads, with its memory limits and timeout
+     * @see ChunkStreamer
+     */
+    public void enableChunking(int chunkSize, int chunksPerTick, ChunkAssembler<Player> assembler) {
+        ChunkStreamer<ChannelMessageSink> streamer = new ChunkStreamer<>(chunkSize, chunksPerTick, this::writeFrame);
+        this.disableChunking();
+        this.assembler = assembler;
+        this.streamTask = helper.getServer().getScheduler().buildTask(helper.getPlugin(), streamer::tick).repeat(50, TimeUnit.MILLISECONDS).schedule();
+        this.streamer = streamer;
+    }
+
+    /**
+     * Allow sending payloads larger than a plugin message with default chunk size and limits
+     * @see #enableChunking(int, int, ChunkAssembler)
+     */
+    public void enableChunking() {
+        this.enableChunking(ChunkStreamer.DEFAULT_CHUNK_SIZE, ChunkStreamer.DEFAULT_CHUNKS_PER_TICK, new ChunkAssembler<>());
+    }
+
+    /**
+     * Stop chunking, payloads still sending fail and incoming transfers are dropped
+     */
+    public void disableChunking() {
+        ChunkStreamer<ChannelMessageSink> streamer = this.streamer;
+        this.streamer = null;
+        if (streamTask != null) {
+            streamTask.cancel();
+            streamTask = null;
+        }
+        if (streamer != null)
+            streamer.failAll(new IOException("Chunking of channel %s disabled".formatted(channel)));
+        if (assembler != null) {
+            assembler.clear();
+            assembler = null;
+        }
+    }
+
+    /**
+     * Send a payload of any size to the server of specified player, split into chunks sent over next ticks
+     * @param player Player
+     * @param buf Data, copied before returning
+     * @return Future completed when the last chunk is sent, or exceptionally on signing, sending error, closed channel or player not connected to a server
+     * @throws IllegalStateException Chunking is not enabled
+     * @see #enableChunking(int, int, ChunkAssembler)
+     */
+    public CompletableFuture<Void> sendLarge(Player player, NVelocityByteBuf buf) {
+        ChunkStreamer<ChannelMessageSink> streamer = this.streamer;
+        if (streamer == null)
+            throw new IllegalStateException("Channel %s has no chunking enabled".formatted(channel));
+        if (closed)
+            return CompletableFuture.failedFuture(new IOException("Using a closed channel"));
+        try {
+            return streamer.submit(this.connection(player), buf);
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    /**
+     * Send a typed packet to channel through specified player
+     * @param player Player
+     * @param packet Packet
+     * @throws NoSuchAlgorithmException Signing error
+     * @throws InvalidKeyException Signing error
+     * @throws IOException Using a closed channel
+     * @throws IllegalStateException Channel is not registered with a packet registry
+     * @see PacketRegistry#write(Object, NByteBuf)
+     */
+    public void sendPacket(Player player, Object packet) throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+        try (NVelocityByteBuf buf = this.encodePacket(packet)) {
+            this.send(player, buf);
+        }
+    }
+
+    /**
+     * Send a typed packet to all servers with at least 1 player online
+     * @param packet Packet
+     * @throws IOException Using a closed channel
+     * @throws NoSuchAlgorithmException Signing error
+     * @throws InvalidKeyException Signing error
+     * @throws IllegalStateException Channel is not registered with a packet registry
+     */
+    public void sendPacketAll(Object packet) throws IOException, NoSuchAlgorithmException, InvalidKeyException {
+        try (NVelocityByteBuf buf = this.encodePacket(packet)) {
+            this.sendAll(buf);
+        }
+    }
+
+    private NVelocityByteBuf encodePacket(Object packet) {
+        if (packets == null)
+            throw new IllegalStateException("Channel %s has no packet registry".formatted(channel));
+        NVelocityByteBuf buf = NVelocityByteBuf.pooled();
+        try {
+            packets.write(packet, buf);
+        } catch (RuntimeException ex) {
+            buf.close();
+            throw ex;
+        }
+        return buf;
+    }
+
+    /**
+     * Send a request to the server of specified player
+     * @param player Player
+     * @param request Request packet
+     * @param responseType Expected response type
+     * @param timeout Time to wait for response
+     * @return Future of response, completed exceptionally on timeout, remote error or closed channel
+     * @param <R> Response type
+     * @throws IllegalStateException Channel is not registered with an RPC endpoint
+     * @see RpcEndpoint#request(Object, Object, Class, Duration, cn.afternode.commons.messaging.MessageSink)
+     */
+    public <R> CompletableFuture<R> request(Player player, Object request, Class<R> responseType, Duration timeout) {
+        if (rpc == null)
+            throw new IllegalStateException("Channel %s has no RPC endpoint".formatted(channel));
+        if (closed)
+            return CompletableFuture.failedFuture(new IOException("Using a closed channel"));
+        return rpc.request(player, request, responseType, timeout, (target, frame) -> this.send(this.connection(target), frame));
+    }
+
+    /**
+     * Get packet registry of this channel
+     * @return Packet registry, or null if registered with a raw listener
+     */
+    public PacketRegistry<Player> getPackets() {
+        return packets;
+    }
+
+    /**
+     * Get RPC endpoint of this channel
+     * @return RPC endpoint, or null if not registered as an RPC channel
+     */
+    public RpcEndpoint<Player> getRpc() {
+        return rpc;
+    }
+
+    /**
+     * Get traffic metrics of this channel
+     * @return Metrics
+     * @see VelocityMessagingHelper#snapshotMetrics()
+     */
+    public ChannelMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+
+        this.disableChunking();
+        this.flush();
+        if (rpc != null)
+            rpc.failAll(new IOException("Channel %s closed".formatted(channel)));
+        helper.getServer().getChannelRegistrar().unregister(this.identifier);
+        helper.getServer().getEventManager().unregisterListener(helper.getPlugin(), this);
+        helper.unregister(this);
+        closed = true;
+    }
+}
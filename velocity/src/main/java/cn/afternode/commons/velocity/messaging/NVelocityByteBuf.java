@@ -0,0 +1,121 @@
+package cn.afternode.commons.velocity.messaging;
+
+import cn.afternode.commons.messaging.NByteBuf;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+
+/**
+ * Velocity buffer with player helpers over {@link NByteBuf}, frames are compatible with bukkit and bungee
+ * <br>
+ * No need to shade netty, it's provided by proxy server
+ */
+public class NVelocityByteBuf extends NByteBuf {
+    public NVelocityByteBuf(byte[] data) {
+        super(data);
+    }
+
+    public NVelocityByteBuf() {
+        super();
+    }
+
+    /**
+     * Wrap an existing netty ByteBuf, content is not copied
+     * <br>
+     * Ownership is taken, {@link #close()} will release the source
+     * @param src Source ByteBuf
+     */
+    public NVelocityByteBuf(ByteBuf src) {
+        super(src);
+    }
+
+    private NVelocityByteBuf(ByteBuf src, boolean owner) {
+        super(src, owner);
+    }
+
+    /**
+     * Wrap inbound data without copying
+     * @param data Data
+     * @return Fixed-size buffer backed by data
+     * @see NByteBuf#wrap(byte[])
+     */
+    public static NVelocityByteBuf wrap(byte[] data) {
+        return new NVelocityByteBuf(Unpooled.wrappedBuffer(data));
+    }
+
+    /**
+     * Allocate a pooled heap buffer
+     * @return Buffer, must be closed after used
+     */
+    public static NVelocityByteBuf pooled() {
+        return pooled(false);
+    }
+
+    /**
+     * Allocate a buffer from netty's shared pooled allocator
+     * @param direct Use direct memory
+     * @return Buffer, must be closed after used
+     */
+    public static NVelocityByteBuf pooled(boolean direct) {
+        return allocate(PooledByteBufAllocator.DEFAULT, direct);
+    }
+
+    /**
+     * Allocate a buffer from specified allocator
+     * @param allocator Allocator
+     * @param direct Use direct memory
+     * @return Buffer, must be closed after used
+     */
+    public static NVelocityByteBuf allocate(ByteBufAllocator allocator, boolean direct) {
+        return new NVelocityByteBuf(direct ? allocator.directBuffer() : allocator.heapBuffer());
+    }
+
+    // Slice start
+    @Override
+    public NVelocityByteBuf readSlice(int size) {
+        return (NVelocityByteBuf) super.readSlice(size);
+    }
+
+    @Override
+    public NVelocityByteBuf readBlockView() {
+        return (NVelocityByteBuf) super.readBlockView();
+    }
+
+    @Override
+    public NVelocityByteBuf readBlockLView() {
+        return (NVelocityByteBuf) super.readBlockLView();
+    }
+
+    @Override
+    public NVelocityByteBuf slice() {
+        return (NVelocityByteBuf) super.slice();
+    }
+
+    @Override
+    protected NVelocityByteBuf view(ByteBuf src) {
+        return new NVelocityByteBuf(src, false);
+    }
+    // Slice end
+
+    // Players start
+    /**
+     * Read player (UUID)
+     * @param server Proxy server
+     * @return result (online only), or null if not found
+     */
+    public Player readPlayer(ProxyServer server) {
+        return server.getPlayer(this.readUUID()).orElse(null);
+    }
+
+    /**
+     * Write player (UUID)
+     * @param player result
+     */
+    public void writePlayer(Player player) {
+        this.writeUUID(player.getUniqueId());
+    }
+    // Players end
+}
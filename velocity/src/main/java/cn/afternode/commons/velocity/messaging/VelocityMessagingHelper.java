@@ -0,0 +1,112 @@
+package cn.afternode.commons.velocity.messaging;
+
+import cn.afternode.commons.messaging.MessagingHelper;
+import cn.afternode.commons.messaging.NByteBuf;
+import cn.afternode.commons.messaging.PacketRegistry;
+import cn.afternode.commons.messaging.RpcEndpoint;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.messages.MinecraftChannelIdentifier;
+
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Messaging helper with signing support
+ * @see MessagingHelper
+ */
+public class VelocityMessagingHelper extends MessagingHelper {
+    private final Object plugin;
+    private final ProxyServer server;
+
+    /**
+     * Primary constructor
+     * @param plugin Context plugin instance
+     * @param server Proxy server
+     */
+    public VelocityMessagingHelper(Object plugin, ProxyServer server) {
+        this.plugin = plugin;
+        this.server = server;
+    }
+
+    /**
+     * Register an incoming and outgoing channel
+     * @param channel Channel name (namespace:name)
+     * @param listener Message listener
+     * @return Channel context
+     */
+    public MessageChannelContext register(String channel, IMessageListener listener) {
+        return register(channel, listener, null, null);
+    }
+
+    /**
+     * Register an incoming and outgoing channel carrying typed packets
+     * <br>
+     * Incoming packets are dispatched to handlers registered in packets, rejected frames are dropped
+     * @param channel Channel name (namespace:name)
+     * @param packets Packet registry
+     * @return Channel context
+     * @see MessageChannelContext#sendPacket(Player, Object)
+     */
+    public MessageChannelContext register(String channel, PacketRegistry<Player> packets) {
+        return register(channel, (ch, player, data) -> {
+            // Null for rejected frames
+            if (data != null)
+                packets.dispatch(player, data);
+        }, packets, null);
+    }
+
+    /**
+     * Register an incoming and outgoing channel for request/response calls
+     * <br>
+     * Both sides of the channel must register it as an RPC channel
+     * @param channel Channel name (namespace:name)
+     * @param rpc RPC endpoint
+     * @return Channel context
+     * @see MessageChannelContext#request(Player, Object, Class, java.time.Duration)
+     */
+    public MessageChannelContext register(String channel, RpcEndpoint<Player> rpc) {
+        return register(channel, null, null, rpc);
+    }
+
+    private MessageChannelContext register(String channel, IMessageListener listener, PacketRegistry<Player> packets, RpcEndpoint<Player> rpc) {
+        MinecraftChannelIdentifier identifier = MinecraftChannelIdentifier.from(channel);
+        MessageChannelContext context = new MessageChannelContext(channel, identifier, this, listener, packets, rpc, this.createMetrics(channel));
+        server.getChannelRegistrar().register(identifier);
+        server.getEventManager().register(plugin, context);
+        return context;
+    }
+
+    void unregister(MessageChannelContext context) {
+        this.removeMetrics(context.getMetrics());
+    }
+
+    /**
+     * Validate combined signed data
+     * @param buf Data
+     * @return Data body, or null if sign is invalid
+     * @throws NoSuchAlgorithmException Mac.getInstance error
+     * @throws InvalidKeyException If the given key is inappropriate for initializing this MAC
+     * @see MessagingHelper#validateCombined(NByteBuf)
+     */
+    public NVelocityByteBuf validateCombined(NVelocityByteBuf buf) throws NoSuchAlgorithmException, InvalidKeyException {
+        return (NVelocityByteBuf) super.validateCombined(buf);
+    }
+
+    /**
+     * Get context plugin
+     * @return Context plugin
+     */
+    public Object getPlugin() {
+        return plugin;
+    }
+
+    /**
+     * Get proxy server
+     * @return Proxy server
+     */
+    public ProxyServer getServer() {
+        return server;
+    }
+}